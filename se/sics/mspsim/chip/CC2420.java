@@ -39,6 +39,7 @@
 package se.sics.mspsim.chip;
 import se.sics.mspsim.core.EmulationLogger.WarningType;
 import se.sics.mspsim.core.IOPort;
+import se.sics.mspsim.core.Loggable;
 import se.sics.mspsim.core.MSP430Core;
 import se.sics.mspsim.core.TimeEvent;
 import se.sics.mspsim.core.USARTListener;
@@ -319,20 +320,19 @@ public class CC2420 extends Radio802154 implements USARTListener {
   private TimeEvent oscillatorEvent = new TimeEvent(0, "CC2420 OSC") {
     public void execute(long t) {
       status |= STATUS_XOSC16M_STABLE;
-      if (logLevel > INFO) log("Oscillator Stable Event.");
+      log(Loggable.DEBUG, "Oscillator Stable Event.");
       setState(RadioState.IDLE);
       if( (registers[REG_IOCFG1] & CCAMUX) == CCAMUX_XOSC16M_STABLE) {
         updateCCA();
       } else {
-        if(logLevel > INFO) log("CCAMUX != CCA_XOSC16M_STABLE! Not raising CCA");
+        log(Loggable.DEBUG, "CCAMUX != CCA_XOSC16M_STABLE! Not raising CCA");
       }
     }
   };
 
   private TimeEvent vregEvent = new TimeEvent(0, "CC2420 VREG") {
     public void execute(long t) {
-      if(logLevel > INFO) log("VREG Started at: " + t + " cyc: " +
-          cpu.cycles + " " + getTime());
+      log(Loggable.DEBUG, "VREG Started at: %d cyc: %d %d", t, cpu.cycles, getTime());
       on = true;
       setState(RadioState.POWER_DOWN);
       updateCCA();
@@ -432,7 +432,7 @@ public class CC2420 extends Radio802154 implements USARTListener {
   }
   
   private boolean setState(RadioState state) {
-    if(logLevel > INFO) log("State transition from " + stateMachine + " to " + state);
+    log(Loggable.DEBUG, "State transition from %s to %s", stateMachine, state);
     stateMachine = state;
     /* write to FSM state register */
     registers[REG_FSMSTATE] = state.getFSMState();
@@ -440,7 +440,7 @@ public class CC2420 extends Radio802154 implements USARTListener {
     switch(stateMachine) {
 
     case VREG_OFF:
-      if (logLevel > INFO) log("VREG Off.");
+      log(Loggable.DEBUG, "VREG Off.");
       flushRX();
       flushTX();
       status &= ~(STATUS_RSSI_VALID | STATUS_XOSC16M_STABLE);
@@ -571,9 +571,8 @@ public class CC2420 extends Radio802154 implements USARTListener {
   public void receivedByte(byte data) {
       // Received a byte from the "air"
 
-      if (logLevel > INFO)
-        log("RF Byte received: " + Utils.hex8(data) + " state: " + stateMachine + " noZeroes: " + zeroSymbols +
-              ((stateMachine == RadioState.RX_SFD_SEARCH || stateMachine == RadioState.RX_FRAME) ? "" : " *** Ignored"));
+      log(Loggable.DEBUG, "RF Byte received: %02x state: %s noZeroes: %d%s", data & 0xff, stateMachine, zeroSymbols,
+          (stateMachine == RadioState.RX_SFD_SEARCH || stateMachine == RadioState.RX_FRAME) ? "" : " *** Ignored");
 
       if(stateMachine == RadioState.RX_SFD_SEARCH) {
           // Look for the preamble (4 zero bytes) followed by the SFD byte 0x7A
@@ -585,7 +584,7 @@ public class CC2420 extends Radio802154 implements USARTListener {
               // and the current received byte == 0x7A (SFD), we're in sync.
               // In RX mode, SFD goes high when the SFD is received
               setSFD(true);
-              if (logLevel > INFO) log("RX: Preamble/SFD Synchronized.");
+              log(Loggable.DEBUG, "RX: Preamble/SFD Synchronized.");
               setState(RadioState.RX_FRAME);
           } else {
               /* if not four zeros and 0x7A then no zeroes... */
@@ -605,7 +604,7 @@ public class CC2420 extends Radio802154 implements USARTListener {
                       rxlen = data & 0xff;
                       //System.out.println("Starting to get packet at: " + rxfifoWritePos + " len = " + rxlen);
                       decodeAddress = addressDecode;
-                      if (logLevel > INFO) log("RX: Start frame length " + rxlen);
+                      log(Loggable.DEBUG, "RX: Start frame length %d", rxlen);
                       // FIFO pin goes high after length byte is written to RXFIFO
                       setFIFO(true);
                   } else if (rxread < rxlen - 1) {
@@ -665,13 +664,13 @@ public class CC2420 extends Radio802154 implements USARTListener {
                           && !decodeAddress && !frameRejected
                           && rxFIFO.length() > fifopThr) {
                       setFIFOP(true);
-                      if (logLevel > INFO) log("RX: FIFOP Threshold reached - setting FIFOP");
+                      log(Loggable.DEBUG, "RX: FIFOP Threshold reached - setting FIFOP");
                   }
               }
 
               if (rxread++ == rxlen) {
                   if (frameRejected) {
-                      if (logLevel > INFO) log("Frame rejected - setting SFD to false and RXWAIT\n");
+                      log(Loggable.DEBUG, "Frame rejected - setting SFD to false and RXWAIT\n");
                       setSFD(false);
                       setState(RadioState.RX_WAIT);
                       return;
@@ -684,8 +683,8 @@ public class CC2420 extends Radio802154 implements USARTListener {
                   crc += rxFIFO.get(-1); //memory[RAM_RXFIFO + ((rxfifoWritePos + 128 - 1) & 127)];
 
                   crcOk = crc == rxCrc.getCRCBitrev();
-                  if (logLevel > INFO && !crcOk) {
-                      log("CRC not OK: recv:" + Utils.hex16(crc) + " calc: " + Utils.hex16(rxCrc.getCRCBitrev()));
+                  if (!crcOk) {
+                      log(Loggable.DEBUG, "CRC not OK: recv:%04x calc: %04x", crc & 0xffff, rxCrc.getCRCBitrev() & 0xffff);
                   }
                   // Should take a RSSI value as input or use a set-RSSI value...
                   rxFIFO.set(-2, registers[REG_RSSI] & 0xff); 
@@ -700,10 +699,10 @@ public class CC2420 extends Radio802154 implements USARTListener {
                   if (rxFIFO.length() <= rxlen + 1) {
                       setFIFOP(true);
                   } else {
-                      if (logLevel > INFO) log("Did not set FIFOP rxfifoLen: " + rxFIFO.length() + " rxlen: " + rxlen);
+                      log(Loggable.DEBUG, "Did not set FIFOP rxfifoLen: %d rxlen: %d", rxFIFO.length(), rxlen);
                   }
                   setSFD(false);
-                  if (logLevel > INFO) log("RX: Complete: packetStart: " + rxFIFO.stateToString());
+                  log(Loggable.DEBUG, "RX: Complete: packetStart: %s", rxFIFO);
 
                   /* if either manual ack request (shouldAck) or autoack + ACK_REQ on package do ack! */
                   /* Autoack-mode + good CRC => autoack */
@@ -729,7 +728,7 @@ public class CC2420 extends Radio802154 implements USARTListener {
       switch(address) {
       case REG_IOCFG0:
           fifopThr = data & FIFOP_THR;
-          if (logLevel > INFO) log("IOCFG0: 0x" + Utils.hex16(oldValue) + " => 0x" + Utils.hex16(data));
+          log(Loggable.DEBUG, "IOCFG0: 0x%04x => 0x%04x", oldValue & 0xffff, data & 0xffff);
           if ((oldValue & POLARITY_MASK) != (data & POLARITY_MASK)) {
               // Polarity has changed - must update pins
               setFIFOP(currentFIFOP);
@@ -739,10 +738,8 @@ public class CC2420 extends Radio802154 implements USARTListener {
           }
           break;
       case REG_IOCFG1:
-          if (logLevel > INFO)
-            log("IOCFG1: SFDMUX "
-                          + ((registers[address] & SFDMUX) >> SFDMUX)
-                          + " CCAMUX: " + (registers[address] & CCAMUX));
+          log(Loggable.DEBUG, "IOCFG1: SFDMUX %d CCAMUX: %d",
+              (registers[address] & SFDMUX) >> SFDMUX, registers[address] & CCAMUX);
           updateCCA();
           break;
       case REG_MDMCTRL0:
@@ -767,11 +764,8 @@ public class CC2420 extends Radio802154 implements USARTListener {
 
   public void dataReceived(USARTSource source, int data) {
     int oldStatus = status;
-    if (logLevel > INFO) {
-      log("byte received: " + Utils.hex8(data) +
-          " (" + ((data >= ' ' && data <= 'Z') ? (char) data : '.') + ')' +
-          " CS: " + chipSelect + " SPI state: " + state + " StateMachine: " + stateMachine);
-    }
+    log(Loggable.DEBUG, "byte received: %02x (%c) CS: %b SPI state: %s StateMachine: %s",
+        data & 0xff, (data >= ' ' && data <= 'Z') ? (char) data : '.', chipSelect, state, stateMachine);
 
     if (!chipSelect) {
       // Chip is not selected
@@ -821,9 +815,7 @@ public class CC2420 extends Radio802154 implements USARTListener {
           usartDataValue |= data;
           // registers[usartDataAddress] = (registers[usartDataAddress] & 0xff00) | data;
 
-          if (logLevel > INFO) {
-            log("wrote to " + Utils.hex8(usartDataAddress) + " = " + usartDataValue);
-          }
+          log(Loggable.DEBUG, "wrote to %02x = %d", usartDataAddress & 0xff, usartDataValue);
           setReg(usartDataAddress, usartDataValue);
           /* register written - go back to waiting... */
           state = SpiState.WAITING;
@@ -835,24 +827,21 @@ public class CC2420 extends Radio802154 implements USARTListener {
           usartDataPos = 1;
         } else {
           source.byteReceived(registers[usartDataAddress] & 0xff);
-          if (logLevel > INFO) {
-            log("read from " + Utils.hex8(usartDataAddress) + " = "
-                + registers[usartDataAddress]);
-          }
+          log(Loggable.DEBUG, "read from %02x = %d", usartDataAddress & 0xff, registers[usartDataAddress]);
           state = SpiState.WAITING;
         }
         return;
         //break;
       case READ_RXFIFO: {
           int fifoData = rxFIFO.read(); 
-          if (logLevel > INFO) log("RXFIFO READ: " + rxFIFO.stateToString());
+          log(Loggable.DEBUG, "RXFIFO READ: %s", rxFIFO);
           source.byteReceived(fifoData);
 
           /* first check and clear FIFOP - since we now have read a byte! */
           if (currentFIFOP && !overflow) {
               /* FIFOP is lowered when rxFIFO is lower than or equal to fifopThr */
               if(rxFIFO.length() <= fifopThr) {
-                  if (logLevel > INFO) log("*** FIFOP cleared at: " + rxFIFO.stateToString());
+                  log(Loggable.DEBUG, "*** FIFOP cleared at: %s", rxFIFO);
                   setFIFOP(false);
               }
           }
@@ -860,22 +849,21 @@ public class CC2420 extends Radio802154 implements USARTListener {
           /* initiate read of another packet - update some variables to keep track of packet reading... */
           if (rxfifoReadLeft == 0) {
               rxfifoReadLeft = fifoData;
-              if (logLevel > INFO) log("Init read of packet - len: " + rxfifoReadLeft +
-                      " fifo: " + rxFIFO.stateToString());
+              log(Loggable.DEBUG, "Init read of packet - len: %d fifo: %s", rxfifoReadLeft, rxFIFO);
           } else if (--rxfifoReadLeft == 0) {
               /* check if we have another packet in buffer */
               if (rxFIFO.length() > 0) {
                   /* check if the packet is complete or longer than fifopThr */
                   if (rxFIFO.length() > rxFIFO.peek(0) ||
                           (rxFIFO.length() > fifopThr && !decodeAddress && !frameRejected)) {
-                      if (logLevel > INFO) log("More in FIFO - FIFOP = 1! plen: " + rxFIFO.stateToString());
+                      log(Loggable.DEBUG, "More in FIFO - FIFOP = 1! plen: %s", rxFIFO);
                       if (!overflow) setFIFOP(true);
                   }
               }
           }
           // Set the FIFO pin low if there are no more bytes available in the RXFIFO.
           if (rxFIFO.length() == 0) {
-              if (logLevel > INFO) log("Setting FIFO to low (buffer empty)");
+              log(Loggable.DEBUG, "Setting FIFO to low (buffer empty)");
               setFIFO(false);
           }
       }
@@ -885,7 +873,7 @@ public class CC2420 extends Radio802154 implements USARTListener {
           txCursor = 0;
           txfifoFlush = false;
         }
-        if (logLevel > INFO) log("Writing data: " + data + " to tx: " + txCursor);
+        log(Loggable.DEBUG, "Writing data: %d to tx: %d", data, txCursor);
 
         if(txCursor == 0) {
           if ((data & 0xff) > 127) {
@@ -905,9 +893,7 @@ public class CC2420 extends Radio802154 implements USARTListener {
         if (usartDataPos == 0) {
           usartDataAddress |= (data << 1) & 0x180;
           ramRead = (data & FLAG_RAM_READ) != 0;
-          if (logLevel > INFO) {
-            log("Address: " + Utils.hex16(usartDataAddress) + " read: " + ramRead);
-          }
+          log(Loggable.DEBUG, "Address: %04x read: %b", usartDataAddress & 0xffff, ramRead);
           usartDataPos++;
         } else {
           if (!ramRead) {
@@ -916,10 +902,9 @@ public class CC2420 extends Radio802154 implements USARTListener {
               logger.logw(this, WarningType.EXECUTION, "CC2420: Warning - RAM position too big - wrapping!");
               usartDataAddress = 0;
             }
-            if (logLevel > INFO && usartDataAddress == RAM_PANID + 2) {
-              log("Pan ID set to: 0x" +
-                  Utils.hex8(memory[RAM_PANID]) +
-                  Utils.hex8(memory[RAM_PANID + 1]));
+            if (usartDataAddress == RAM_PANID + 2) {
+              log(Loggable.DEBUG, "Pan ID set to: 0x%02x%02x",
+                  memory[RAM_PANID] & 0xff, memory[RAM_PANID + 1] & 0xff);
             }
           } else {
             //log("Read RAM Addr: " + address + " Data: " + memory[address]);  
@@ -945,39 +930,33 @@ public class CC2420 extends Radio802154 implements USARTListener {
   // next data...
   private void strobe(int data) {
     // Resets, on/off of different things...
-    if (logLevel > INFO) {
-      log("Strobe on: " + Utils.hex8(data) + " => " + Reg.values()[data]);
-    }
+    log(Loggable.DEBUG, "Strobe on: %02x => %s", data & 0xff, Reg.values()[data]);
 
     if( (stateMachine == RadioState.POWER_DOWN) && (data != REG_SXOSCON) ) {
-      if (logLevel > INFO) log("Got command strobe: " + data + " in POWER_DOWN.  Ignoring.");
+      log(Loggable.DEBUG, "Got command strobe: %d in POWER_DOWN.  Ignoring.", data);
       return;
     }
 
     switch (data) {
     case REG_SNOP:
-      if (logLevel > INFO) log("SNOP => " + Utils.hex8(status) + " at " + cpu.cycles);
+      log(Loggable.DEBUG, "SNOP => %02x at %d", status & 0xff, cpu.cycles);
       break;
     case REG_SRXON:
       if(stateMachine == RadioState.IDLE) {
         setState(RadioState.RX_CALIBRATE);
         //updateActiveFrequency();
-        if (logLevel > INFO) {
-            log("Strobe RX-ON!!!");
-        }
+        log(Loggable.DEBUG, "Strobe RX-ON!!!");
       } else {
-        if (logLevel > INFO) log("WARNING: SRXON when not IDLE");
+        log(Loggable.DEBUG, "WARNING: SRXON when not IDLE");
       }
 
       break;
     case REG_SRFOFF:
-      if (logLevel > INFO) {
-        log("Strobe RXTX-OFF!!! at " + cpu.cycles);
-        if (stateMachine == RadioState.TX_ACK ||
-              stateMachine == RadioState.TX_FRAME ||
-              stateMachine == RadioState.RX_FRAME) {
-          log("WARNING: turning off RXTX during " + stateMachine);
-        }
+      log(Loggable.DEBUG, "Strobe RXTX-OFF!!! at %d", cpu.cycles);
+      if (stateMachine == RadioState.TX_ACK ||
+            stateMachine == RadioState.TX_FRAME ||
+            stateMachine == RadioState.RX_FRAME) {
+        log(Loggable.DEBUG, "WARNING: turning off RXTX during %s", stateMachine);
       }
       setState(RadioState.IDLE);
       break;
@@ -995,7 +974,7 @@ public class CC2420 extends Radio802154 implements USARTListener {
           sendEvent("STXON", null);
         }
         // Starting up TX subsystem - indicate that we are in TX mode!
-        if (logLevel > INFO) log("Strobe STXON - transmit on! at " + cpu.cycles);
+        log(Loggable.DEBUG, "Strobe STXON - transmit on! at %d", cpu.cycles);
       }
       break;
     case REG_STXONCCA:
@@ -1014,9 +993,9 @@ public class CC2420 extends Radio802154 implements USARTListener {
         if(cca) {
           status |= STATUS_TX_ACTIVE;
           setState(RadioState.TX_CALIBRATE);
-          if (logLevel > INFO) log("Strobe STXONCCA - transmit on! at " + cpu.cycles);
+          log(Loggable.DEBUG, "Strobe STXONCCA - transmit on! at %d", cpu.cycles);
         }else{
-          if (logLevel > INFO) log("STXONCCA Ignored, CCA false");
+          log(Loggable.DEBUG, "STXONCCA Ignored, CCA false");
         }
       }
       break;
@@ -1024,7 +1003,7 @@ public class CC2420 extends Radio802154 implements USARTListener {
       flushRX();
       break;
     case REG_SFLUSHTX:
-      if (logLevel > INFO) log("Flushing TXFIFO");
+      log(Loggable.DEBUG, "Flushing TXFIFO");
       flushTX();
       break;
     case REG_SXOSCON:
@@ -1046,9 +1025,7 @@ public class CC2420 extends Radio802154 implements USARTListener {
         }
         break;
     default:
-      if (logLevel > INFO) {
-        log("Unknown strobe command: " + data);
-      }
+      log(Loggable.DEBUG, "Unknown strobe command: %d", data);
     break;
     }
   }
@@ -1069,7 +1046,7 @@ public class CC2420 extends Radio802154 implements USARTListener {
       }
     } else {
       if (rfListener != null) {
-        if (logLevel > INFO) log("transmitting byte: " + Utils.hex8(SHR[shrPos]));
+        log(Loggable.DEBUG, "transmitting byte: %02x", SHR[shrPos] & 0xff);
         rfListener.receivedByte(SHR[shrPos]);
       }
       shrPos++;
@@ -1092,14 +1069,14 @@ public class CC2420 extends Radio802154 implements USARTListener {
         logw(WarningType.EXECUTION, "**** Warning - packet size too large - repeating packet bytes txfifoPos: " + txfifoPos);
       }
       if (rfListener != null) {
-        if (logLevel > INFO) log("transmitting byte: " + Utils.hex8(memory[RAM_TXFIFO + (txfifoPos & 0x7f)] & 0xFF));
+        log(Loggable.DEBUG, "transmitting byte: %02x", memory[RAM_TXFIFO + (txfifoPos & 0x7f)] & 0xFF);
         rfListener.receivedByte((byte)(memory[RAM_TXFIFO + (txfifoPos & 0x7f)] & 0xFF));
       }
       txfifoPos++;
       // Two symbol periods to send a byte...
       cpu.scheduleTimeEventMillis(sendEvent, SYMBOL_PERIOD * 2);
     } else {
-      if (logLevel > INFO) log("Completed Transmission.");
+      log(Loggable.DEBUG, "Completed Transmission.");
       status &= ~STATUS_TX_ACTIVE;
       setSFD(false);
       if (overflow) {
@@ -1133,7 +1110,7 @@ public class CC2420 extends Radio802154 implements USARTListener {
               ackBuf[5] = txCrc.getCRCLow();
           }
           if (rfListener != null) {
-              if (logLevel > INFO) log("transmitting byte: " + Utils.hex8(memory[RAM_TXFIFO + (txfifoPos & 0x7f)] & 0xFF));
+              log(Loggable.DEBUG, "transmitting byte: %02x", memory[RAM_TXFIFO + (txfifoPos & 0x7f)] & 0xFF);
 
               rfListener.receivedByte((byte)(ackBuf[ackPos] & 0xFF));
           }
@@ -1141,7 +1118,7 @@ public class CC2420 extends Radio802154 implements USARTListener {
           // Two symbol periods to send a byte...
           cpu.scheduleTimeEventMillis(ackEvent, SYMBOL_PERIOD * 2);
       } else {
-          if (logLevel > INFO) log("Completed Transmission of ACK.");
+          log(Loggable.DEBUG, "Completed Transmission of ACK.");
           status &= ~STATUS_TX_ACTIVE;
           setSFD(false);
           setState(RadioState.RX_CALIBRATE);
@@ -1165,15 +1142,13 @@ public class CC2420 extends Radio802154 implements USARTListener {
   private void stopOscillator() {
     status &= ~STATUS_XOSC16M_STABLE;
     setState(RadioState.POWER_DOWN);
-    if (logLevel > INFO) log("Oscillator Off.");
+    log(Loggable.DEBUG, "Oscillator Off.");
     // Reset state
     setFIFOP(false);
   }
 
   private void flushRX() {
-    if (logLevel > INFO) {
-      log("Flushing RX len = " + rxFIFO.length());
-    }
+    log(Loggable.DEBUG, "Flushing RX len = %d", rxFIFO.length());
     rxFIFO.reset();
     setSFD(false);
     setFIFOP(false);
@@ -1213,7 +1188,7 @@ public class CC2420 extends Radio802154 implements USARTListener {
 
   private void setInternalCCA(boolean clear) {
     setCCA(clear);
-    if (logLevel > INFO) log("Internal CCA: " + clear);
+    log(Loggable.DEBUG, "Internal CCA: %b", clear);
   }
 
   private void setSFD(boolean sfd) {
@@ -1222,12 +1197,12 @@ public class CC2420 extends Radio802154 implements USARTListener {
       sfdPort.setPinState(sfdPin, sfd ? IOPort.PinState.LOW : IOPort.PinState.HI);
     else 
       sfdPort.setPinState(sfdPin, sfd ? IOPort.PinState.HI : IOPort.PinState.LOW);
-    if (logLevel > INFO) log("SFD: " + sfd + "  " + cpu.cycles);
+    log(Loggable.DEBUG, "SFD: %b  %d", sfd, cpu.cycles);
   }
 
   private void setCCA(boolean cca) {
     currentCCA = cca;
-    if (logLevel > INFO) log("Setting CCA to: " + cca);
+    log(Loggable.DEBUG, "Setting CCA to: %b", cca);
     if( (registers[REG_IOCFG0] & CCA_POLARITY) == CCA_POLARITY)
       ccaPort.setPinState(ccaPin, cca ? IOPort.PinState.LOW : IOPort.PinState.HI);
     else
@@ -1236,7 +1211,7 @@ public class CC2420 extends Radio802154 implements USARTListener {
 
   private void setFIFOP(boolean fifop) {
     currentFIFOP = fifop;
-    if (logLevel > INFO) log("Setting FIFOP to " + fifop);
+    log(Loggable.DEBUG, "Setting FIFOP to %b", fifop);
     if( (registers[REG_IOCFG0] & FIFOP_POLARITY) == FIFOP_POLARITY) {
       fifopPort.setPinState(fifopPin, fifop ? IOPort.PinState.LOW : IOPort.PinState.HI);
     } else {
@@ -1246,7 +1221,7 @@ public class CC2420 extends Radio802154 implements USARTListener {
 
   private void setFIFO(boolean fifo) {
     currentFIFO = fifo;
-    if (logLevel > INFO) log("Setting FIFO to " + fifo);
+    log(Loggable.DEBUG, "Setting FIFO to %b", fifo);
     if((registers[REG_IOCFG0] & FIFO_POLARITY) == FIFO_POLARITY) {
       fifoPort.setPinState(fifoPin, fifo ? IOPort.PinState.LOW : IOPort.PinState.HI);
     } else {
@@ -1255,7 +1230,7 @@ public class CC2420 extends Radio802154 implements USARTListener {
   }
 
   private void setRxOverflow() {
-    if (logLevel > INFO) log("RXFIFO Overflow! Read Pos: " + rxFIFO.stateToString());
+    log(Loggable.DEBUG, "RXFIFO Overflow! Read Pos: %s", rxFIFO);
     setFIFOP(true);
     setFIFO(false);
     setSFD(false);
@@ -1323,7 +1298,7 @@ public class CC2420 extends Radio802154 implements USARTListener {
         power = maxp;
     }
 
-    if (logLevel > INFO) log("external setRSSI to: " + power);
+    log(Loggable.DEBUG, "external setRSSI to: %d", power);
 
     rssi = power;
     registers[REG_RSSI] = (registers[REG_RSSI] & 0xFF00) | ((power - RSSI_OFFSET) & 0xFF);
@@ -1378,8 +1353,8 @@ public class CC2420 extends Radio802154 implements USARTListener {
       // 0.6ms maximum vreg startup from datasheet pg 13
       // but Z1 platform does not work with 0.1 so trying with lower...
       cpu.scheduleTimeEventMillis(vregEvent, 0.05);
-      if (logLevel > INFO) log("Scheduling vregEvent at: cyc = " + cpu.cycles +
-         " target: " + vregEvent.getTime() + " current: " + cpu.getTime());
+      log(Loggable.DEBUG, "Scheduling vregEvent at: cyc = %d target: %d current: %d",
+          cpu.cycles, vregEvent.getTime(), cpu.getTime());
     } else {
       on = false;
       setState(RadioState.VREG_OFF);
@@ -1392,17 +1367,13 @@ public class CC2420 extends Radio802154 implements USARTListener {
       if (state == SpiState.WRITE_REGISTER && usartDataPos == 1) {
           // Register write incomplete. Do a 8 bit register write.
           usartDataValue = (registers[usartDataAddress] & 0xff) | (usartDataValue & 0xff00);
-          if (logLevel > INFO) {
-              log("wrote 8 MSB to 0x" + Utils.hex8(usartDataAddress) + " = " + usartDataValue);
-          }
+          log(Loggable.DEBUG, "wrote 8 MSB to 0x%02x = %d", usartDataAddress & 0xff, usartDataValue);
           setReg(usartDataAddress, usartDataValue);
       }
       state = SpiState.WAITING;
     }
 
-    if (logLevel > INFO) {
-      log("setting chipSelect: " + chipSelect);
-    }
+    log(Loggable.DEBUG, "setting chipSelect: %b", chipSelect);
   }
 
   public boolean getChipSelect() {
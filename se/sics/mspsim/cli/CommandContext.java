@@ -2,6 +2,8 @@ package se.sics.mspsim.cli;
 import java.io.PrintStream;
 
 import se.sics.mspsim.core.MSP430Constants;
+import se.sics.mspsim.core.MSP430Core;
+import se.sics.mspsim.util.DataFileWriter;
 import se.sics.mspsim.util.MapTable;
 import se.sics.mspsim.util.Utils;
 
@@ -17,6 +19,13 @@ public class CommandContext {
   public PrintStream out;
   public PrintStream err;
   private CommandHandler commandHandler;
+  private LineQueue input;
+  private DataTargetCommand dataTarget;
+
+  // Emulation time when the line currently handled was written
+  private boolean hasLineTime;
+  private long lineCycles;
+  private double lineMillis;
   
   public CommandContext(CommandHandler ch, MapTable table, String commandLine, String[] args,
 			int pid, Command command, PrintStream out, PrintStream err) {
@@ -43,6 +52,55 @@ public class CommandContext {
     return command;
   }
 
+  // The queue this command reads its input from when it is a later
+  // stage in an asynchronous pipeline.
+  LineQueue getInput() {
+    return input;
+  }
+
+  void setInput(LineQueue input) {
+    this.input = input;
+  }
+
+  void setLineTime(long cycles, double millis) {
+    lineCycles = cycles;
+    lineMillis = millis;
+    hasLineTime = true;
+  }
+
+  boolean hasLineTime() {
+    return hasLineTime;
+  }
+
+  /**
+   * Returns the CPU cycles when the input line currently handled was
+   * written by the previous command. Later stages in asynchronous
+   * pipelines handle their input after it was written, on another thread.
+   * Otherwise the current cycles of the CPU are returned.
+   */
+  public long getLineCycles(MSP430Core cpu) {
+    return hasLineTime ? lineCycles : cpu.cycles;
+  }
+
+  /* Same as getLineCycles() but returns the time in milliseconds */
+  public double getLineTimeMillis(MSP430Core cpu) {
+    return hasLineTime ? lineMillis : cpu.getTimeMillis();
+  }
+
+  void setDataTarget(DataTargetCommand dataTarget) {
+    this.dataTarget = dataTarget;
+  }
+
+  /**
+   * Returns the binary data file when the output of this command is
+   * exported with the "export" command, otherwise null. Commands that
+   * support binary output write their records directly to the file
+   * instead of printing to out.
+   */
+  public DataFileWriter getDataOutput() {
+    return dataTarget != null ? dataTarget.getWriter() : null;
+  }
+
   // Called by CommandHandler to stop this command.
   void stopCommand() {
     if (!exited) {
@@ -4,7 +4,11 @@ import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Hashtable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import se.sics.mspsim.core.EmulationException;
+import se.sics.mspsim.core.MSP430Core;
 import se.sics.mspsim.util.ActiveComponent;
 import se.sics.mspsim.util.ComponentRegistry;
 import se.sics.mspsim.util.MapTable;
@@ -22,6 +26,11 @@ public class CommandHandler implements ActiveComponent, LineListener {
   private ArrayList<CommandContext[]> currentAsyncCommands = new ArrayList<CommandContext[]>();
   private int pidCounter = 0;
 
+  /* Stages after an asynchronous command are run by the pipeline executor */
+  private static ExecutorService pipelineExecutor;
+  private int pipelineCapacity = 4096;
+  private boolean pipelineBlockWhenFull = true;
+
   public CommandHandler(PrintStream out, PrintStream err) {
     this.out = out;
     this.err = err;
@@ -63,6 +72,13 @@ public class CommandHandler implements ActiveComponent, LineListener {
       CommandContext[] commands = new CommandContext[parts.length];
       boolean error = false;
       int pid = -1;
+      /* Stages up to the last synchronous stage get their input directly */
+      int lastSynchronous = 0;
+      for (int i = 1; i < cmds.length; i++) {
+        if (cmds[i] instanceof SynchronousLineListener) {
+          lastSynchronous = i;
+        }
+      }
       for (int i = 0; i < parts.length; i++) {
         String[] args = parts[i];
         Command cmd = cmds[i];
@@ -72,8 +88,19 @@ public class CommandHandler implements ActiveComponent, LineListener {
         commands[i] = new CommandContext(this, getMapTable(), commandLine, args, pid, cmd);
         
         if (i > 0) {
-          PrintStream po = new PrintStream(new LineOutputStream((LineListener) commands[i].getCommand()));
+          LineListener listener = (LineListener) commands[i].getCommand();
+          if (pid >= 0 && i > lastSynchronous) {
+            // Decouple the stage from the thread producing output
+            LineQueue queue = new LineQueue(commands[i - 1], commands[i], getCPU(),
+                getPipelineExecutor(), pipelineCapacity, pipelineBlockWhenFull);
+            commands[i].setInput(queue);
+            listener = queue;
+          }
+          PrintStream po = new PrintStream(new LineOutputStream(listener));
           commands[i - 1].setOutput(po, cErr);
+          if (cmd instanceof DataTargetCommand) {
+            commands[i - 1].setDataTarget((DataTargetCommand) cmd);
+          }
         }
         // Last element also needs output!
         if (i == parts.length - 1) {
@@ -129,6 +156,24 @@ public class CommandHandler implements ActiveComponent, LineListener {
     return -1;
   }
 
+  private MSP430Core getCPU() {
+    return registry != null ? registry.getComponent(MSP430Core.class) : null;
+  }
+
+  private static synchronized ExecutorService getPipelineExecutor() {
+    if (pipelineExecutor == null) {
+      pipelineExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        private int count = 0;
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "CLI pipeline " + (++count));
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+    return pipelineExecutor;
+  }
+
   // This will return an instance that can be configured -
   // which is basically not OK... TODO - fix this!!!
   private Command getCommand(String cmd)  {
@@ -251,8 +296,14 @@ public class CommandHandler implements ActiveComponent, LineListener {
         if (currentAsyncCommands.size() > 0) {
             context.out.println(" PID\tCommand");
             for (int i = 0; i < currentAsyncCommands.size(); i++) {
-                CommandContext cmd = currentAsyncCommands.get(i)[0];
-                context.out.println("  " + cmd);
+                CommandContext[] cmds = currentAsyncCommands.get(i);
+                long dropped = 0;
+                for (CommandContext c : cmds) {
+                  if (c.getInput() != null) {
+                    dropped += c.getInput().getDropped();
+                  }
+                }
+                context.out.println("  " + cmds[0] + (dropped > 0 ? "\t(" + dropped + " lines dropped)" : ""));
             }
         } else {
             context.out.println("No executing commands.");
@@ -261,6 +312,34 @@ public class CommandHandler implements ActiveComponent, LineListener {
       }
     });
 
+    registerCommand("pipeline", new BasicCommand("show or set the queue size and policy used between commands in asynchronous pipelines",
+        "[size] [block|drop]") {
+      public int executeCommand(CommandContext context) {
+        if (context.getArgumentCount() > 0) {
+          int size = context.getArgumentAsInt(0);
+          if (size <= 0) {
+            context.err.println("illegal queue size: " + context.getArgument(0));
+            return 1;
+          }
+          pipelineCapacity = size;
+          if (context.getArgumentCount() > 1) {
+            String policy = context.getArgument(1);
+            if ("block".equals(policy)) {
+              pipelineBlockWhenFull = true;
+            } else if ("drop".equals(policy)) {
+              pipelineBlockWhenFull = false;
+            } else {
+              context.err.println("unknown policy: " + policy);
+              return 1;
+            }
+          }
+        }
+        context.out.println("Pipeline queue size " + pipelineCapacity + " lines, "
+            + (pipelineBlockWhenFull ? "blocks" : "drops lines") + " when full");
+        return 0;
+      }
+    });
+
     registerCommand("kill", new BasicCommand("kill a currently executing command", "<process>") {
       public int executeCommand(CommandContext context) {
         int pid = context.getArgumentAsInt(0);
@@ -296,14 +375,29 @@ public class CommandHandler implements ActiveComponent, LineListener {
 
   private boolean exitCommands(CommandContext[] contexts) {
       if (contexts != null) {
-          for (int i = 0; i < contexts.length; i++) {
-              contexts[i].stopCommand();
-          }
+          stopCommands(contexts, 0);
           return true;
       }
       return false;
   }
 
+  // Stops the commands in order. A command reading from a queue is
+  // stopped when all lines from the previous command have been delivered.
+  private void stopCommands(final CommandContext[] contexts, int index) {
+      for (int i = index; i < contexts.length; i++) {
+          contexts[i].stopCommand();
+          final int next = i + 1;
+          if (next < contexts.length && contexts[next].getInput() != null) {
+              contexts[next].getInput().close(new Runnable() {
+                  public void run() {
+                      stopCommands(contexts, next);
+                  }
+              });
+              return;
+          }
+      }
+  }
+
   public void lineRead(String line) {
     executeCommand(line, null);
   }
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2026, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ * This file is part of MSPSim.
+ *
+ * -----------------------------------------------------------------
+ * DataFileTarget
+ *
+ * Created : 19 oct 2026
+ */
+
+package se.sics.mspsim.cli;
+
+import java.io.IOException;
+import java.util.Hashtable;
+
+import se.sics.mspsim.core.MSP430Core;
+import se.sics.mspsim.util.DataFileWriter;
+
+/**
+ * Target that writes binary data records. Commands that support binary
+ * output write directly to the data file and other text lines are
+ * written as text records.
+ */
+public class DataFileTarget extends Target {
+
+    private final DataFileWriter writer;
+    private final MSP430Core cpu;
+
+    public DataFileTarget(Hashtable<String,Target> targets, String name, DataFileWriter writer, MSP430Core cpu) {
+        super(targets, name, true);
+        this.writer = writer;
+        this.cpu = cpu;
+    }
+
+    public DataFileWriter getWriter() {
+        return writer;
+    }
+
+    @Override
+    public String getStatus() {
+        return super.getStatus() + " \t" + writer.getRecordCount() + " records";
+    }
+
+    protected void handleLine(CommandContext context, String line) {
+        try {
+            /* Use the time the line was written, not when it is handled */
+            long cycles = cpu != null ? context.getLineCycles(cpu) : 0;
+            writer.write(writer.getSourceId(context.getCommandLine()), cycles, line);
+        } catch (IOException e) {
+            e.printStackTrace(context.err);
+        }
+    }
+
+    protected void closeTarget() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
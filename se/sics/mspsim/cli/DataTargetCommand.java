@@ -0,0 +1,67 @@
+package se.sics.mspsim.cli;
+
+import java.io.IOException;
+import java.util.Hashtable;
+
+import se.sics.mspsim.core.MSP430Core;
+import se.sics.mspsim.util.DataFileWriter;
+
+public class DataTargetCommand extends BasicLineCommand {
+
+  private final Hashtable<String,Target> fileTargets;
+  private final MSP430Core cpu;
+
+  private DataFileTarget target;
+  private CommandContext context;
+
+  public DataTargetCommand(Hashtable<String,Target> fileTargets, MSP430Core cpu) {
+    super("export data records to a binary file", "<filename>");
+    this.fileTargets = fileTargets;
+    this.cpu = cpu;
+  }
+
+  public int executeCommand(CommandContext context) {
+    this.context = context;
+    String fileName = context.getArgument(0);
+    synchronized (fileTargets) {
+      Target ft = fileTargets.get(fileName);
+      if (ft instanceof DataFileTarget) {
+        target = (DataFileTarget) ft;
+      } else if (ft != null) {
+        context.err.println("File already opened as text file: " + fileName);
+        return -1;
+      } else {
+        try {
+          target = new DataFileTarget(fileTargets, fileName, new DataFileWriter(fileName), cpu);
+        } catch (IOException e) {
+          e.printStackTrace(context.err);
+          return -1;
+        }
+      }
+    }
+    if (context.getPID() >= 0) {
+      target.addContext(context);
+    }
+    return 0;
+  }
+
+  /* Used by the previous command in the pipeline to write records directly */
+  public DataFileWriter getWriter() {
+    return target != null ? target.getWriter() : null;
+  }
+
+  public void lineRead(String line) {
+    target.lineRead(context, line);
+  }
+
+  public void stopCommand(CommandContext context) {
+    if (target != null) {
+      target.removeContext(context);
+      try {
+        target.getWriter().flush();
+      } catch (IOException e) {
+        e.printStackTrace(context.err);
+      }
+    }
+  }
+}
@@ -33,10 +33,13 @@
  * Created : Mon Feb 11 2008
  */
 package se.sics.mspsim.cli;
+import java.io.IOException;
+
 import se.sics.mspsim.core.DbgInstruction;
 import se.sics.mspsim.core.DisAsm;
 import se.sics.mspsim.core.EmulationException;
 import se.sics.mspsim.core.EmulationLogger.WarningType;
+import se.sics.mspsim.core.EventProfiler;
 import se.sics.mspsim.core.LogListener;
 import se.sics.mspsim.core.Loggable;
 import se.sics.mspsim.core.MSP430;
@@ -45,12 +48,16 @@ import se.sics.mspsim.core.Memory;
 import se.sics.mspsim.core.Memory.AccessMode;
 import se.sics.mspsim.core.Memory.AccessType;
 import se.sics.mspsim.core.MemoryMonitor;
+import se.sics.mspsim.core.MemoryWatchRange;
 import se.sics.mspsim.core.RegisterMonitor;
 import se.sics.mspsim.core.TimeEvent;
+import se.sics.mspsim.core.TimedLogListener;
 import se.sics.mspsim.platform.GenericNode;
 import se.sics.mspsim.util.ComponentRegistry;
+import se.sics.mspsim.util.DataFileWriter;
 import se.sics.mspsim.util.DebugInfo;
 import se.sics.mspsim.util.ELF;
+import se.sics.mspsim.util.ELFDebug;
 import se.sics.mspsim.util.GDBStubs;
 import se.sics.mspsim.util.MapEntry;
 import se.sics.mspsim.util.Utils;
@@ -100,12 +107,16 @@ public class DebugCommands implements CommandBundle {
       });
 
       ch.registerCommand("watch",
-          new BasicAsyncCommand("add a write/read watch to a given address or symbol", "<address or symbol> [length] [char | hex | break]") {
+          new BasicAsyncCommand("add a write/read watch to a given address or symbol",
+              "<address or symbol> [length] [char | hex | break] [read | write] [value=v] [mask=m]") {
         int mode = 0;
         int address = 0;
         int length = 1;
-        MemoryMonitor monitor;
+        MemoryWatchRange range;
         public int executeCommand(final CommandContext context) {
+          int access = MemoryWatchRange.ALL;
+          int value = 0;
+          int valueMask = 0;
           address = context.getArgumentAsAddress(0);
           if (address < 0) {
             context.err.println("unknown symbol: " + context.getArgument(0));
@@ -115,13 +126,41 @@ public class DebugCommands implements CommandBundle {
               for (int i = 1; i < context.getArgumentCount(); i++) {
                   String modeStr = context.getArgument(i);
                   if (Character.isDigit(modeStr.charAt(0))) {
-                      length = Integer.parseInt(modeStr);
+                      // Decimal unless given with an explicit 0x prefix
+                      if (modeStr.startsWith("0x") || modeStr.startsWith("0X")) {
+                          length = Integer.parseInt(modeStr.substring(2), 16);
+                      } else {
+                          length = Integer.parseInt(modeStr);
+                      }
                   } else if ("char".equals(modeStr)) {
                       mode = Utils.ASCII_UNMODIFIED; // 4
                   } else if ("break".equals(modeStr)) {
                       mode = 10;
                   } else if ("hex".equals(modeStr)) {
                       mode = Utils.HEX; // 2
+                  } else if ("read".equals(modeStr)) {
+                      access = MemoryWatchRange.READ | MemoryWatchRange.EXECUTE | MemoryWatchRange.ARG;
+                  } else if ("write".equals(modeStr)) {
+                      access = MemoryWatchRange.WRITE;
+                  } else if (modeStr.startsWith("value=") || modeStr.startsWith("mask=")) {
+                      int v;
+                      try {
+                          v = Integer.decode(modeStr.substring(modeStr.indexOf('=') + 1));
+                      } catch (NumberFormatException e) {
+                          context.err.println("illegal number: " + modeStr);
+                          return -1;
+                      }
+                      if (modeStr.startsWith("value=")) {
+                          value = v;
+                          if (valueMask == 0) {
+                              valueMask = 0xffff;
+                          }
+                      } else {
+                          valueMask = v;
+                      }
+                  } else {
+                      context.err.println("illegal argument: " + modeStr);
+                      return -1;
                   }
               }
           }
@@ -129,9 +168,29 @@ public class DebugCommands implements CommandBundle {
               context.err.println("please specify a length of at least one byte");
               return -1;
           }
-          monitor = new MemoryMonitor.Adapter() {
+          final boolean filtered = valueMask != 0;
+          final DataFileWriter dataOutput = context.getDataOutput();
+          final int sourceId;
+          try {
+              sourceId = dataOutput != null ? dataOutput.getSourceId("watch " + context.getArgument(0)) : 0;
+          } catch (IOException e) {
+              e.printStackTrace(context.err);
+              return -1;
+          }
+          MemoryMonitor monitor = new MemoryMonitor.Adapter() {
               private void cpuAction(AccessType type, int adr, int data) {
-                  if (mode == 0 || mode == 10) {
+                  if (dataOutput != null) {
+                      /* Records: address, value, pc and 0 for read or 1 for write */
+                      try {
+                          dataOutput.write(sourceId, cpu.cycles, adr, data, cpu.getPC(),
+                                  type == AccessType.WRITE ? 1 : 0);
+                      } catch (IOException e) {
+                          e.printStackTrace(context.err);
+                      }
+                      if (mode == 10) {
+                          cpu.triggBreakpoint();
+                      }
+                  } else if (mode == 0 || mode == 10) {
                       int pc = cpu.getPC();
                       String adrStr = getSymOrAddr(cpu, context, adr);
                       String pcStr = getSymOrAddrELF(cpu, getELF(), pc);
@@ -161,7 +220,16 @@ public class DebugCommands implements CommandBundle {
 
             @Override
             public void notifyReadBefore(int addr, AccessMode mode, AccessType type) {
-                cpuAction(AccessType.READ, addr, cpu.getMemory().get(addr, mode));
+                if (!filtered) {
+                    cpuAction(AccessType.READ, addr, cpu.getMemory().get(addr, mode));
+                }
+            }
+            @Override
+            public void notifyReadAfter(int addr, AccessMode mode, AccessType type) {
+                /* Reads matching a value filter are only reported after the read */
+                if (filtered) {
+                    cpuAction(AccessType.READ, addr, cpu.getMemory().get(addr, mode));
+                }
             }
             @Override
             public void notifyWriteBefore(int dstAddress, int data, AccessMode mode) {
@@ -169,8 +237,12 @@ public class DebugCommands implements CommandBundle {
             }
           };
 
-          for (int i = 0; i < length; i++) {
-              cpu.addWatchPoint(address + i, monitor);
+          try {
+              range = new MemoryWatchRange(address, length, access, value, valueMask, monitor);
+              cpu.addWatchRange(range);
+          } catch (IllegalArgumentException e) {
+              context.err.println(e.getMessage());
+              return -1;
           }
           if (length > 1) {
               context.err.println("Watch set at $" + cpu.getAddressAsString(address) + " - $" + cpu.getAddressAsString(address + length - 1));
@@ -181,8 +253,9 @@ public class DebugCommands implements CommandBundle {
         }
 
         public void stopCommand(CommandContext context) {
-            for (int i = 0; i < length; i++) {
-                cpu.removeWatchPoint(address + i, monitor);
+            if (range != null) {
+                cpu.removeWatchRange(range);
+                range = null;
             }
             context.exit(0);
         }
@@ -273,8 +346,33 @@ public class DebugCommands implements CommandBundle {
           }
       });
 
-      ch.registerCommand("line", new BasicCommand("print line number of address/symbol", "<address or symbol>") {
+      ch.registerCommand("line", new BasicCommand("print line number of address/symbol or addresses of file:line", "<address or symbol or file:line>") {
         public int executeCommand(final CommandContext context) {
+          String arg = context.getArgument(0);
+          int sep = arg.lastIndexOf(':');
+          if (sep > 0) {
+            ELFDebug debug = getELF() != null ? getELF().getDebug() : null;
+            if (debug == null) {
+              context.err.println("No debug information available");
+              return 1;
+            }
+            int line;
+            try {
+              line = Integer.parseInt(arg.substring(sep + 1));
+            } catch (NumberFormatException e) {
+              context.err.println("Illegal line number: " + arg);
+              return 1;
+            }
+            int[] addresses = debug.getLineAddresses(arg.substring(0, sep), line);
+            if (addresses.length == 0) {
+              context.err.println("No addresses found for: " + arg);
+              return 1;
+            }
+            for (int address : addresses) {
+              context.out.println(arg + " at $" + cpu.getAddressAsString(address));
+            }
+            return 0;
+          }
           int adr = context.getArgumentAsAddress(0);
           DebugInfo di = getELF().getDebugInfo(adr);
           if (di == null) {
@@ -592,7 +690,7 @@ public class DebugCommands implements CommandBundle {
             return 0;
           }});
 
-        ch.registerCommand("gdbstubs", new BasicCommand("open up a gdb stubs server for GDB remote debugging", "port") {
+        ch.registerCommand("gdbstubs", new BasicCommand("open up a gdb stubs server for GDB remote debugging - nodes using the same port are shown as threads", "port") {
           private GDBStubs stubs = null;
           public int executeCommand(CommandContext context) {
             if (stubs != null) {
@@ -600,7 +698,7 @@ public class DebugCommands implements CommandBundle {
             } else {
               int port = context.getArgumentAsInt(0);
               stubs = new GDBStubs();
-              stubs.setupServer(cpu, port);
+              stubs.setupServer(cpu, port, node != null ? node.getID() : "cpu");
             }
             return 0;
           }
@@ -636,7 +734,7 @@ public class DebugCommands implements CommandBundle {
                         return 1;
                     }
                 }
-                logListener = new LogListener() {
+                logListener = new TimedLogListener() {
 
                     boolean isLogging(Loggable source) {
                         for(Loggable log : logs) {
@@ -654,6 +752,20 @@ public class DebugCommands implements CommandBundle {
                         }
                     }
 
+                    @Override
+                    public void log(long cycles, Loggable source, String message) {
+                        if (isLogging(source)) {
+                            // Messages might be delivered later by an asynchronous logger
+                            long now = cpu.cycles;
+                            double millis = cpu.getTimeMillis();
+                            if (now > 0 && cycles < now) {
+                                millis = millis * cycles / now;
+                            }
+                            context.setLineTime(cycles, millis);
+                            context.out.println(source.getID() + ": " + message);
+                        }
+                    }
+
                     @Override
                     public void logw(Loggable source, WarningType type,
                             String message) throws EmulationException {
@@ -720,11 +832,48 @@ public class DebugCommands implements CommandBundle {
             }
         });
 
-        ch.registerCommand("events", new BasicCommand("print event queues", "") {
+        ch.registerCommand("events", new BasicCommand("print event queues or profile events",
+            "[profile on|off|reset] [top [count]]") {
             @Override
             public int executeCommand(CommandContext context) {
+              if (context.getArgumentCount() == 0) {
                 cpu.printEventQueues(context.out);
-              return 0;
+                return 0;
+              }
+              String cmd = context.getArgument(0);
+              EventProfiler profiler = cpu.getEventProfiler();
+              if ("profile".equals(cmd)) {
+                String op = context.getArgumentCount() > 1 ? context.getArgument(1) : "on";
+                if ("on".equals(op)) {
+                  if (profiler == null) {
+                    cpu.setEventProfiler(new EventProfiler());
+                  }
+                  context.out.println("Event profiling enabled.");
+                } else if ("off".equals(op)) {
+                  cpu.setEventProfiler(null);
+                  context.out.println("Event profiling disabled.");
+                } else if ("reset".equals(op)) {
+                  if (profiler != null) {
+                    profiler.reset();
+                  }
+                  context.out.println("Event profile cleared.");
+                } else {
+                  context.err.println("Unknown profile operation: " + op);
+                  return 1;
+                }
+                return 0;
+              }
+              if ("top".equals(cmd)) {
+                if (profiler == null) {
+                  context.err.println("Event profiling not enabled. Use 'events profile on' to enable.");
+                  return 1;
+                }
+                int count = context.getArgumentCount() > 1 ? context.getArgumentAsInt(1, 10) : 10;
+                profiler.print(context.out, count);
+                return 0;
+              }
+              context.err.println("Unknown argument: " + cmd);
+              return 1;
             }
           });
       }
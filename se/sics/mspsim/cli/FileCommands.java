@@ -2,6 +2,7 @@ package se.sics.mspsim.cli;
 
 import java.util.Hashtable;
 
+import se.sics.mspsim.core.MSP430;
 import se.sics.mspsim.util.ComponentRegistry;
 
 public class FileCommands implements CommandBundle {
@@ -20,6 +21,9 @@ public class FileCommands implements CommandBundle {
         handler.registerCommand("tee", new FileTargetCommand(fileTargets,
             "redirect to file and standard out", "<filename>", true, true));
 
+        handler.registerCommand("export", new DataTargetCommand(fileTargets,
+            registry.getComponent(MSP430.class)));
+
         handler.registerCommand("fclose", new BasicCommand("close the specified file", "<filename>") {
           public int executeCommand(CommandContext context) {
             String name = context.getArgument(0);
@@ -36,16 +40,16 @@ public class FileCommands implements CommandBundle {
 
         handler.registerCommand("files", new BasicCommand("list open files", "") {
           public int executeCommand(CommandContext context) {
-            FileTarget[] files = null;
+            Target[] files = null;
             synchronized (fileTargets) {
                 if (fileTargets.size() > 0) {
-                    files = fileTargets.values().toArray(new FileTarget[fileTargets.size()]);
+                    files = fileTargets.values().toArray(new Target[fileTargets.size()]);
                 }
             }
             if (files == null) {
               context.out.println("There are no open files.");
             } else {
-              for (FileTarget type : files) {
+              for (Target type : files) {
                 context.out.println(type.getStatus());
               }
             }
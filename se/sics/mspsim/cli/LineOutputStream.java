@@ -68,4 +68,26 @@ public class LineOutputStream extends OutputStream {
       line.append((char) c);
     }
   }
+
+  /* PrintStream writes complete strings - avoid one call per character */
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    int start = off;
+    for (int i = off, end = off + len; i < end; i++) {
+      int c = b[i];
+      if (c == '\n' || c == '\r') {
+        for (int j = start; j < i; j++) {
+          line.append((char) (b[j] & 0xff));
+        }
+        start = i + 1;
+        if (c == '\n') {
+          listener.lineRead(line.toString());
+          line.setLength(0);
+        }
+      }
+    }
+    for (int j = start, end = off + len; j < end; j++) {
+      line.append((char) (b[j] & 0xff));
+    }
+  }
 }
@@ -0,0 +1,187 @@
+/**
+ * Copyright (c) 2026, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ * This file is part of MSPSim.
+ *
+ * -----------------------------------------------------------------
+ * LineQueue
+ *
+ * Created : 19 oct 2026
+ */
+
+package se.sics.mspsim.cli;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import se.sics.mspsim.core.MSP430Core;
+
+/**
+ * Bounded queue between two stages in a command pipeline. Lines are
+ * delivered to the listener in order by a task on the executor so the
+ * producer, usually the emulation thread, never waits for a slow consumer
+ * unless the queue is full and the queue blocks when full.
+ *
+ * The emulation time when a line was written is queued with the line and
+ * is available to the consumer through CommandContext.getLineCycles().
+ */
+public class LineQueue implements LineListener, Runnable {
+
+  /* Lines delivered before the executor thread is given back */
+  private static final int BATCH_SIZE = 256;
+  /* Time to wait for space when blocking on a full queue */
+  private static final long FULL_WAIT_NANOS = 100000;
+
+  private static class Line {
+    final String text;
+    final long cycles;
+    final double millis;
+
+    Line(String text, long cycles, double millis) {
+      this.text = text;
+      this.cycles = cycles;
+      this.millis = millis;
+    }
+  }
+
+  private final CommandContext producer;
+  private final CommandContext consumer;
+  private final LineListener listener;
+  private final MSP430Core cpu;
+  private final Executor executor;
+  private final int capacity;
+  private final boolean blockWhenFull;
+
+  private final ConcurrentLinkedQueue<Line> lines = new ConcurrentLinkedQueue<Line>();
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicBoolean isScheduled = new AtomicBoolean();
+  private final AtomicLong dropped = new AtomicLong();
+
+  private volatile boolean isClosed;
+  private volatile Runnable closeTask;
+
+  public LineQueue(CommandContext producer, CommandContext consumer, MSP430Core cpu,
+      Executor executor, int capacity, boolean blockWhenFull) {
+    this.producer = producer;
+    this.consumer = consumer;
+    this.listener = (LineListener) consumer.getCommand();
+    this.cpu = cpu;
+    this.executor = executor;
+    this.capacity = capacity;
+    this.blockWhenFull = blockWhenFull;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public int size() {
+    return size.get();
+  }
+
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  public void lineRead(String line) {
+    if (isClosed) {
+      return;
+    }
+    while (true) {
+      int n = size.get();
+      if (n < capacity) {
+        if (size.compareAndSet(n, n + 1)) {
+          break;
+        }
+      } else if (!blockWhenFull || isClosed) {
+        dropped.incrementAndGet();
+        return;
+      } else {
+        LockSupport.parkNanos(FULL_WAIT_NANOS);
+      }
+    }
+    Line entry;
+    if (producer.hasLineTime()) {
+      /* The producer is itself a later stage - keep the original time */
+      entry = new Line(line, producer.getLineCycles(cpu), producer.getLineTimeMillis(cpu));
+    } else if (cpu != null) {
+      entry = new Line(line, cpu.cycles, cpu.getTimeMillis());
+    } else {
+      entry = new Line(line, -1, -1);
+    }
+    lines.add(entry);
+    schedule();
+  }
+
+  /**
+   * Closes the queue. The lines already queued are delivered before
+   * the task is run by the executor.
+   */
+  public void close(Runnable task) {
+    closeTask = task;
+    isClosed = true;
+    schedule();
+  }
+
+  private void schedule() {
+    if (isScheduled.compareAndSet(false, true)) {
+      executor.execute(this);
+    }
+  }
+
+  public void run() {
+    int count = 0;
+    Line line;
+    while (count < BATCH_SIZE && (line = lines.poll()) != null) {
+      size.decrementAndGet();
+      count++;
+      if (line.cycles >= 0) {
+        consumer.setLineTime(line.cycles, line.millis);
+      }
+      try {
+        listener.lineRead(line.text);
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+    }
+    if (isClosed && lines.isEmpty()) {
+      Runnable task = closeTask;
+      closeTask = null;
+      if (task != null) {
+        task.run();
+      }
+    }
+    isScheduled.set(false);
+    if (!lines.isEmpty() || (isClosed && closeTask != null)) {
+      schedule();
+    }
+  }
+
+}
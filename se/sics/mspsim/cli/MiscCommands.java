@@ -50,12 +50,17 @@ import java.util.regex.Pattern;
 import se.sics.mspsim.chip.RFListener;
 import se.sics.mspsim.chip.RFSource;
 import se.sics.mspsim.core.Chip;
+import se.sics.mspsim.core.ExecutionPacer;
+import se.sics.mspsim.core.IOUnit;
 import se.sics.mspsim.core.MSP430;
 import se.sics.mspsim.core.MSP430Constants;
 import se.sics.mspsim.core.TimeEvent;
+import se.sics.mspsim.core.USARTSource;
 import se.sics.mspsim.util.ComponentRegistry;
 import se.sics.mspsim.util.ConfigManager;
+import se.sics.mspsim.util.DataFileWriter;
 import se.sics.mspsim.util.PluginRepository;
+import se.sics.mspsim.util.SerialBridge;
 import se.sics.mspsim.util.ServiceComponent;
 import se.sics.mspsim.util.Utils;
 
@@ -100,10 +105,12 @@ public class MiscCommands implements CommandBundle {
     handler.registerCommand("timestamp", new BasicLineCommand("print lines prefixed with timestamp as milliseconds or CPU cycles", "[-c]") {
       private PrintStream out;
       private MSP430 cpu;
+      private CommandContext context;
       boolean useCycles;
       long startTime;
 
       public int executeCommand(CommandContext context) {
+        this.context = context;
         cpu = registry.getComponent(MSP430.class);
         if (cpu == null) {
           context.err.println("could not access the CPU.");
@@ -123,14 +130,15 @@ public class MiscCommands implements CommandBundle {
       }
       public void lineRead(String line) {
           if (useCycles) {
-              out.println(Long.toString(cpu.cycles) + ' ' + line);
+              out.println(Long.toString(context.getLineCycles(cpu)) + ' ' + line);
           } else {
-              out.println(Long.toString(startTime + (long)cpu.getTimeMillis()) + ' ' + line);
+              out.println(Long.toString(startTime + (long)context.getLineTimeMillis(cpu)) + ' ' + line);
           }
       }
     });
 
-    handler.registerCommand("speed", new BasicCommand("set the speed factor for the CPU", "[factor]") {
+    handler.registerCommand("speed", new BasicCommand("set the speed factor or execution mode for the CPU",
+        "[factor|realtime|unthrottled|budget percent]") {
       public int executeCommand(CommandContext context) {
         MSP430 cpu = registry.getComponent(MSP430.class);
         if (cpu == null) {
@@ -138,6 +146,22 @@ public class MiscCommands implements CommandBundle {
           return 1;
         } else if (context.getArgumentCount() == 0) {
           /* No speed specified. Simply show current speed. */
+        } else if ("realtime".equals(context.getArgument(0))) {
+          cpu.setExecutionMode(ExecutionPacer.Mode.REALTIME);
+        } else if ("unthrottled".equals(context.getArgument(0))) {
+          cpu.setExecutionMode(ExecutionPacer.Mode.UNTHROTTLED);
+        } else if ("budget".equals(context.getArgument(0))) {
+          if (context.getArgumentCount() < 2) {
+            context.err.println("no budget specified.");
+            return 1;
+          }
+          int percent = context.getArgumentAsInt(1);
+          if (percent > 0 && percent <= 100) {
+            cpu.setExecutionBudget(percent / 100.0);
+          } else {
+            context.err.println("Budget must be between 1 and 100 percent.");
+            return 1;
+          }
         } else {
           double rate = context.getArgumentAsDouble(0);
           if (rate > 0.0) {
@@ -147,8 +171,7 @@ public class MiscCommands implements CommandBundle {
             return 1;
           }
         }
-        double rate = cpu.getExecutionRate();
-        context.out.printf("Speed factor is set to %.2f\n", rate);
+        context.out.println("Speed is set to " + cpu.getExecutionInfo());
         return 0;
       }
     });
@@ -266,7 +289,7 @@ public class MiscCommands implements CommandBundle {
 
     handler.registerCommand("exec", new ExecCommand());
 
-    handler.registerCommand("trig", new BasicLineCommand("trigg command when getting input", "<command>") {
+    handler.registerCommand("trig", new ControlLineCommand("trigg command when getting input", "<command>") {
       String command = null;
       CommandContext context;
       public int executeCommand(CommandContext context) {
@@ -374,7 +397,7 @@ public class MiscCommands implements CommandBundle {
       }
     });
 
-    handler.registerCommand("rflistener", new BasicLineCommand("an rflistener", "<input|output> <rf-chip>") {
+    handler.registerCommand("rflistener", new ControlLineCommand("an rflistener", "<input|output> <rf-chip>") {
       CommandContext context;
       RFSource source;
       RFListener listener;
@@ -390,11 +413,33 @@ public class MiscCommands implements CommandBundle {
         if ("output".equals(inout)) {
           if (chip instanceof RFSource) {
             source = (RFSource) chip;
-            listener = new RFListener() {
-                public void receivedByte(byte data) {
-                    context.out.println(Utils.hex8(data));
-                }
-            };
+            final DataFileWriter dataOutput = context.getDataOutput();
+            if (dataOutput != null) {
+              final int sourceId;
+              try {
+                sourceId = dataOutput.getSourceId("rf " + chip.getID());
+              } catch (IOException e) {
+                e.printStackTrace(context.err);
+                return 1;
+              }
+              listener = new RFListener() {
+                  private final byte[] buffer = new byte[1];
+                  public void receivedByte(byte data) {
+                      buffer[0] = data;
+                      try {
+                          dataOutput.write(sourceId, cpu.cycles, buffer, 0, 1);
+                      } catch (IOException e) {
+                          e.printStackTrace(context.err);
+                      }
+                  }
+              };
+            } else {
+              listener = new RFListener() {
+                  public void receivedByte(byte data) {
+                      context.out.println(Utils.hex8(data));
+                  }
+              };
+            }
             source.addRFListener(listener);
           } else {
             context.err.println("Error: chip is not an RF source");
@@ -434,6 +479,48 @@ public class MiscCommands implements CommandBundle {
 
     });
 
+    handler.registerCommand("serialbridge", new BasicAsyncCommand("expose a UART as a TCP port on localhost", "<port> [uart]") {
+      SerialBridge.Port port;
+      public int executeCommand(CommandContext context) {
+        final MSP430 cpu = registry.getComponent(MSP430.class);
+        int portNumber = context.getArgumentAsInt(0);
+        USARTSource source;
+        String name;
+        if (context.getArgumentCount() > 1) {
+          name = context.getArgument(1);
+          IOUnit unit = cpu.getIOUnit(name);
+          if (!(unit instanceof USARTSource)) {
+            context.err.println("Error: could not find UART '" + name + '\'');
+            return 1;
+          }
+          source = (USARTSource) unit;
+        } else {
+          source = registry.getComponent(USARTSource.class, "serialio");
+          if (source == null) {
+            context.err.println("Error: no serial port found");
+            return 1;
+          }
+          name = source instanceof IOUnit ? ((IOUnit) source).getName() : "serialio";
+        }
+        try {
+          port = SerialBridge.getDefault().open(name, source, portNumber);
+        } catch (IOException e) {
+          context.err.println("Error: could not open port " + portNumber + ": " + e.getMessage());
+          return 1;
+        }
+        context.out.println("SerialBridge: " + name + " listening on port " + port.getPort());
+        return 0;
+      }
+
+      @Override
+      public void stopCommand(CommandContext context) {
+        if (port != null) {
+          port.close();
+          port = null;
+        }
+      }
+    });
+
     handler.registerCommand("sysinfo", new BasicCommand("show info about the MSPSim system", "[-registry] [-config]") {
         public int executeCommand(CommandContext context) {
             ConfigManager config = (ConfigManager) registry.getComponent("config");
@@ -490,4 +577,12 @@ public class MiscCommands implements CommandBundle {
     }
     return null;
   }
+
+  /* Line command that acts on the emulation and gets its input directly */
+  private static abstract class ControlLineCommand extends BasicLineCommand implements SynchronousLineListener {
+    public ControlLineCommand(String cmdHelp, String argHelp) {
+      super(cmdHelp, argHelp);
+    }
+  }
+
 }
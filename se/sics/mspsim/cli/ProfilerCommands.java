@@ -39,9 +39,11 @@
  */
 
 package se.sics.mspsim.cli;
+import java.io.IOException;
 import java.util.Properties;
 
 import se.sics.mspsim.core.Chip;
+import se.sics.mspsim.core.EmulationMetrics;
 import se.sics.mspsim.core.EventListener;
 import se.sics.mspsim.core.EventSource;
 import se.sics.mspsim.core.MSP430;
@@ -50,6 +52,7 @@ import se.sics.mspsim.profiler.SimpleProfiler;
 import se.sics.mspsim.ui.CPUHeatMap;
 import se.sics.mspsim.ui.WindowManager;
 import se.sics.mspsim.util.ComponentRegistry;
+import se.sics.mspsim.util.DataFileWriter;
 import se.sics.mspsim.util.StackMonitor;
 
 /**
@@ -188,11 +191,24 @@ public class ProfilerCommands implements CommandBundle {
                     return 1;
                 }
             }
-            eventListener = new EventListener() {
-                public void event(EventSource source, String event, Object data) {
-                    context.out.println("Event:" + source.getName() + ":" + event);
-                }
-            };
+            final DataFileWriter dataOutput = context.getDataOutput();
+            if (dataOutput != null) {
+                eventListener = new EventListener() {
+                    public void event(EventSource source, String event, Object data) {
+                        try {
+                            dataOutput.write(dataOutput.getSourceId(source.getName()), cpu.cycles, event);
+                        } catch (IOException e) {
+                            e.printStackTrace(context.err);
+                        }
+                    }
+                };
+            } else {
+                eventListener = new EventListener() {
+                    public void event(EventSource source, String event, Object data) {
+                        context.out.println("Event:" + source.getName() + ":" + event);
+                    }
+                };
+            }
             for (Chip chip : chips) {
                 chip.addEventListener(eventListener);
             }
@@ -278,6 +294,57 @@ public class ProfilerCommands implements CommandBundle {
             }
       });
       
+      ch.registerCommand("metrics", new BasicCommand("show emulation metrics",
+          "[-json] [on|off|reset] [-memory]") {
+        public int executeCommand(CommandContext context) {
+          boolean json = false;
+          boolean memory = false;
+          String cmd = null;
+          for (int i = 0; i < context.getArgumentCount(); i++) {
+            String value = context.getArgument(i);
+            if ("-json".equals(value)) {
+              json = true;
+            } else if ("-memory".equals(value)) {
+              memory = true;
+            } else if (value.startsWith("-") || cmd != null) {
+              context.err.println("Unknown argument: " + value);
+              return 1;
+            } else {
+              cmd = value;
+            }
+          }
+          EmulationMetrics metrics = cpu.getMetrics();
+          if ("on".equals(cmd)) {
+            if (metrics == null) {
+              metrics = new EmulationMetrics(cpu);
+              cpu.setMetrics(metrics);
+            }
+            metrics.setMemoryMonitoring(memory);
+            context.out.println("Metrics enabled" + (memory ? " with memory access counting." : "."));
+            return 0;
+          }
+          if (metrics == null) {
+            context.err.println("Metrics not enabled. Use 'metrics on' to enable.");
+            return 1;
+          }
+          if ("off".equals(cmd)) {
+            cpu.setMetrics(null);
+            context.out.println("Metrics disabled.");
+          } else if ("reset".equals(cmd)) {
+            metrics.reset();
+            context.out.println("Metrics reset.");
+          } else if (cmd != null) {
+            context.err.println("Unknown command: " + cmd);
+            return 1;
+          } else if (json) {
+            context.out.println(metrics.toJSON().toJSONString());
+          } else {
+            metrics.print(context.out);
+          }
+          return 0;
+        }
+      });
+
       ch.registerCommand("readmap", new BasicAsyncCommand("read map", "") {
           private CPUHeatMap hm;
 
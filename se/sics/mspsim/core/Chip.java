@@ -36,7 +36,7 @@
  */
 package se.sics.mspsim.core;
 import se.sics.mspsim.core.EmulationLogger.WarningType;
-import se.sics.mspsim.util.ArrayUtils;
+import se.sics.mspsim.util.ListenerArray;
 
 /**
  * @author Joakim Eriksson, SICS
@@ -52,8 +52,22 @@ public abstract class Chip implements Loggable, EventSource {
   protected final MSP430Core cpu;
 
   private OperatingModeListener[] omListeners;
+  private final ListenerArray<OperatingModeListener> omListenerArray =
+      new ListenerArray<OperatingModeListener>(OperatingModeListener.class) {
+    @Override
+    protected void publish(OperatingModeListener[] listeners) {
+      omListeners = listeners;
+    }
+  };
   private StateChangeListener stateListener;
   private ConfigurationChangeListener[] ccListeners;
+  private final ListenerArray<ConfigurationChangeListener> ccListenerArray =
+      new ListenerArray<ConfigurationChangeListener>(ConfigurationChangeListener.class) {
+    @Override
+    protected void publish(ConfigurationChangeListener[] listeners) {
+      ccListeners = listeners;
+    }
+  };
 
   private EventListener eventListener;
   protected boolean sendEvents = false;
@@ -81,12 +95,12 @@ public abstract class Chip implements Loggable, EventSource {
   public void notifyReset() {
   }
 
-  public synchronized void addOperatingModeListener(OperatingModeListener listener) {
-    omListeners = ArrayUtils.add(OperatingModeListener.class, omListeners, listener);
+  public void addOperatingModeListener(OperatingModeListener listener) {
+    omListenerArray.add(listener);
   }
   
-  public synchronized void removeOperatingModeListener(OperatingModeListener listener) {
-    omListeners = ArrayUtils.remove(omListeners, listener);
+  public void removeOperatingModeListener(OperatingModeListener listener) {
+    omListenerArray.remove(listener);
   }
 
   public synchronized void addStateChangeListener(StateChangeListener listener) {
@@ -97,12 +111,12 @@ public abstract class Chip implements Loggable, EventSource {
       stateListener = StateChangeListener.Proxy.INSTANCE.remove(stateListener, listener);
   }
 
-  public synchronized void addConfigurationChangeListener(ConfigurationChangeListener listener) {
-      ccListeners = ArrayUtils.add(ConfigurationChangeListener.class, ccListeners, listener);
+  public void addConfigurationChangeListener(ConfigurationChangeListener listener) {
+      ccListenerArray.add(listener);
   }
 
-  public synchronized void removeConfigurationChangeListener(ConfigurationChangeListener listener) {
-      ccListeners = ArrayUtils.remove(ccListeners, listener);
+  public void removeConfigurationChangeListener(ConfigurationChangeListener listener) {
+      ccListenerArray.remove(listener);
   }
 
   public int getMode() {
@@ -131,7 +145,7 @@ public abstract class Chip implements Loggable, EventSource {
   }
 
   public synchronized void removeEventListener(EventListener listener) {
-      eventListener = EventListener.Proxy.INSTANCE.add(eventListener, listener);
+      eventListener = EventListener.Proxy.INSTANCE.remove(eventListener, listener);
       sendEvents = eventListener != null;
   }
 
@@ -225,6 +239,66 @@ public abstract class Chip implements Loggable, EventSource {
       logger.log(this, msg);
   }
 
+  /* Logs a formatted message if the log level is at least the given level.
+   * Avoids building the message string when logging is off. */
+  protected void log(int level, String format, long arg0) {
+      if (logLevel >= level) {
+          EmulationLoggerAdapter.logFormat(logger, this, format, arg0, 0, 0);
+      }
+  }
+
+  protected void log(int level, String format, long arg0, long arg1) {
+      if (logLevel >= level) {
+          EmulationLoggerAdapter.logFormat(logger, this, format, arg0, arg1, 0);
+      }
+  }
+
+  protected void log(int level, String format, long arg0, long arg1, long arg2) {
+      if (logLevel >= level) {
+          EmulationLoggerAdapter.logFormat(logger, this, format, arg0, arg1, arg2);
+      }
+  }
+
+  /* For messages with arguments that are not integers */
+  protected void log(int level, String format, Object arg0) {
+      if (logLevel >= level) {
+          EmulationLoggerAdapter.logFormat(logger, this, format, arg0);
+      }
+  }
+
+  protected void log(int level, String format, Object arg0, Object arg1) {
+      if (logLevel >= level) {
+          EmulationLoggerAdapter.logFormat(logger, this, format, arg0, arg1);
+      }
+  }
+
+  protected void log(int level, String format, Object arg0, Object arg1, Object arg2) {
+      if (logLevel >= level) {
+          EmulationLoggerAdapter.logFormat(logger, this, format, arg0, arg1, arg2);
+      }
+  }
+
+  protected void log(int level, String format, Object arg0, Object arg1, Object arg2,
+          Object arg3) {
+      if (logLevel >= level) {
+          EmulationLoggerAdapter.logFormat(logger, this, format, arg0, arg1, arg2, arg3);
+      }
+  }
+
+  protected void log(int level, String format, Object arg0, Object arg1, Object arg2,
+          Object arg3, Object arg4) {
+      if (logLevel >= level) {
+          EmulationLoggerAdapter.logFormat(logger, this, format, arg0, arg1, arg2, arg3, arg4);
+      }
+  }
+
+  /* Logs the message as is if the log level is at least the given level */
+  protected void log(int level, String message) {
+      if (logLevel >= level) {
+          logger.log(this, message);
+      }
+  }
+
   /* warn about anything above severe - but what types are severe? */
   protected void logw(WarningType type, String msg) {
       logger.logw(this, type, msg);
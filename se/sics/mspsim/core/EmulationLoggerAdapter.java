@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2026, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ * This file is part of MSPSim.
+ *
+ * -----------------------------------------------------------------
+ * EmulationLoggerAdapter
+ *
+ * Created : 19 oct 2026
+ */
+
+package se.sics.mspsim.core;
+
+/**
+ * Base class for emulation loggers that adds logging of formatted messages
+ * to EmulationLogger. The default implementations format the message
+ * right away; subclasses can override them to avoid formatting messages
+ * that nobody listens to.
+ *
+ * Use the static logFormat() methods to log through any EmulationLogger.
+ */
+public abstract class EmulationLoggerAdapter implements EmulationLogger {
+
+  /* Log a message given as a java.util.Formatter format string with up to
+   * three integer arguments. The message is only formatted if needed. */
+  public void log(Loggable source, String format, long arg0, long arg1, long arg2) {
+    log(source, String.format(format, arg0, arg1, arg2));
+  }
+
+  /* Same as above for arguments that are not integers */
+  public void log(Loggable source, String format, Object... args) {
+    log(source, String.format(format, args));
+  }
+
+  public static void logFormat(EmulationLogger logger, Loggable source, String format,
+      long arg0, long arg1, long arg2) {
+    if (logger instanceof EmulationLoggerAdapter) {
+      ((EmulationLoggerAdapter) logger).log(source, format, arg0, arg1, arg2);
+    } else {
+      logger.log(source, String.format(format, arg0, arg1, arg2));
+    }
+  }
+
+  public static void logFormat(EmulationLogger logger, Loggable source, String format,
+      Object... args) {
+    if (logger instanceof EmulationLoggerAdapter) {
+      ((EmulationLoggerAdapter) logger).log(source, format, args);
+    } else {
+      logger.log(source, String.format(format, args));
+    }
+  }
+
+}
@@ -0,0 +1,329 @@
+/**
+ * Copyright (c) 2026, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ * This file is part of MSPSim.
+ *
+ * -----------------------------------------------------------------
+ * EmulationMetrics
+ *
+ * Created : 19 oct 2026
+ */
+
+package se.sics.mspsim.core;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import se.sics.json.JSONArray;
+import se.sics.json.JSONObject;
+import se.sics.mspsim.core.Memory.AccessMode;
+import se.sics.mspsim.core.Memory.AccessType;
+
+/**
+ * Counters for the emulation hot path. Enabled with MSP430Core.setMetrics().
+ *
+ * All counters are plain fields only updated from the emulation thread
+ * to avoid any synchronization in the CPU loop. Readers on other threads
+ * might see slightly stale values.
+ */
+public class EmulationMetrics implements SimEventListener {
+
+  public enum SegmentType { RAM, FLASH, INFOMEM, IO, NOMEM };
+
+  private static final SegmentType[] SEGMENT_TYPES = SegmentType.values();
+
+  private final MSP430Core cpu;
+
+  long instructions;
+  final long[] interrupts = new long[64];
+
+  private final Map<Class<?>, long[]> eventCounters = new IdentityHashMap<Class<?>, long[]>();
+  private Class<?> lastEventType;
+  private long[] lastEventCounter;
+
+  private final byte[] pageType;
+  private final long[] memoryReads = new long[SEGMENT_TYPES.length];
+  private final long[] memoryWrites = new long[SEGMENT_TYPES.length];
+  private final long[] memoryExecutes = new long[SEGMENT_TYPES.length];
+  private MemoryMonitor memoryMonitor;
+
+  private long startCycles;
+  private long startCpuCycles;
+  private double startMillis;
+  private long hostNanos;
+  private long runStartNanos = -1;
+
+  public EmulationMetrics(MSP430Core cpu) {
+    this.cpu = cpu;
+    pageType = new byte[cpu.MAX_MEM >> 8];
+    MSP430Config config = cpu.config;
+    for (int i = 0; i < pageType.length; i++) {
+      int address = i << 8;
+      SegmentType type;
+      if (config.isRAM(address) || config.isRAMMirror(address)) {
+        type = SegmentType.RAM;
+      } else if (config.isFlash(address)) {
+        type = SegmentType.FLASH;
+      } else if (config.isInfoMem(address)) {
+        type = SegmentType.INFOMEM;
+      } else if (config.isIO(address)) {
+        type = SegmentType.IO;
+      } else {
+        type = SegmentType.NOMEM;
+      }
+      pageType[i] = (byte) type.ordinal();
+    }
+    reset();
+  }
+
+  public synchronized void reset() {
+    instructions = 0;
+    for (int i = 0; i < interrupts.length; i++) {
+      interrupts[i] = 0;
+    }
+    for (long[] counter : eventCounters.values()) {
+      counter[0] = 0;
+    }
+    for (int i = 0; i < SEGMENT_TYPES.length; i++) {
+      memoryReads[i] = memoryWrites[i] = memoryExecutes[i] = 0;
+    }
+    startCycles = cpu.cycles;
+    startCpuCycles = cpu.cpuCycles;
+    startMillis = cpu.getTimeMillis();
+    hostNanos = 0;
+    if (runStartNanos >= 0) {
+      runStartNanos = System.nanoTime();
+    }
+  }
+
+  void eventExecuted(TimeEvent event) {
+    Class<?> type = event.getClass();
+    long[] counter;
+    if (type == lastEventType) {
+      counter = lastEventCounter;
+    } else {
+      counter = eventCounters.get(type);
+      if (counter == null) {
+        counter = new long[1];
+        synchronized (this) {
+          eventCounters.put(type, counter);
+        }
+      }
+      lastEventType = type;
+      lastEventCounter = counter;
+    }
+    counter[0]++;
+  }
+
+  void interruptServiced(int vector) {
+    interrupts[vector]++;
+  }
+
+  /* Memory access counting adds a global memory monitor and is therefore off by default */
+  public synchronized void setMemoryMonitoring(boolean enable) {
+    if (enable && memoryMonitor == null) {
+      memoryMonitor = new MemoryMonitor.Adapter() {
+        @Override
+        public void notifyReadBefore(int address, AccessMode mode, AccessType type) {
+          int page = address >> 8;
+          if (page < pageType.length) {
+            if (type == AccessType.EXECUTE) {
+              memoryExecutes[pageType[page]]++;
+            } else {
+              memoryReads[pageType[page]]++;
+            }
+          }
+        }
+        @Override
+        public void notifyWriteBefore(int address, int data, AccessMode mode) {
+          int page = address >> 8;
+          if (page < pageType.length) {
+            memoryWrites[pageType[page]]++;
+          }
+        }
+      };
+      cpu.addGlobalMonitor(memoryMonitor);
+    } else if (!enable && memoryMonitor != null) {
+      cpu.removeGlobalMonitor(memoryMonitor);
+      memoryMonitor = null;
+    }
+  }
+
+  public boolean isMemoryMonitoring() {
+    return memoryMonitor != null;
+  }
+
+  /* Called when the metrics are removed from the CPU */
+  void dispose() {
+    setMemoryMonitoring(false);
+  }
+
+  @Override
+  public synchronized void simChanged(SimEvent event) {
+    if (event.getType() == SimEvent.Type.START) {
+      runStartNanos = System.nanoTime();
+    } else if (runStartNanos >= 0) {
+      hostNanos += System.nanoTime() - runStartNanos;
+      runStartNanos = -1;
+    }
+  }
+
+  public long getInstructions() {
+    return instructions;
+  }
+
+  public long getInterruptCount(int vector) {
+    return interrupts[vector];
+  }
+
+  public long getCycles() {
+    return cpu.cycles - startCycles;
+  }
+
+  public long getLPMCycles() {
+    return getCycles() - (cpu.cpuCycles - startCpuCycles);
+  }
+
+  public double getSimulatedMillis() {
+    return cpu.getTimeMillis() - startMillis;
+  }
+
+  public synchronized long getHostNanos() {
+    long nanos = hostNanos;
+    if (runStartNanos >= 0) {
+      nanos += System.nanoTime() - runStartNanos;
+    }
+    return nanos;
+  }
+
+  /* Host time needed to simulate one second, or -1 if no time has been simulated */
+  public long getHostNanosPerSecond() {
+    double millis = getSimulatedMillis();
+    if (millis <= 0) {
+      return -1;
+    }
+    return (long) (getHostNanos() * 1000.0 / millis);
+  }
+
+  public long getMemoryReads(SegmentType type) {
+    return memoryReads[type.ordinal()];
+  }
+
+  public long getMemoryWrites(SegmentType type) {
+    return memoryWrites[type.ordinal()];
+  }
+
+  public long getMemoryExecutes(SegmentType type) {
+    return memoryExecutes[type.ordinal()];
+  }
+
+  /* Returns the event counts sorted with the most frequent event type first */
+  public synchronized Map.Entry<Class<?>, long[]>[] getEventCounts() {
+    ArrayList<Map.Entry<Class<?>, long[]>> list =
+        new ArrayList<Map.Entry<Class<?>, long[]>>(eventCounters.entrySet());
+    Collections.sort(list, new Comparator<Map.Entry<Class<?>, long[]>>() {
+      public int compare(Map.Entry<Class<?>, long[]> o1, Map.Entry<Class<?>, long[]> o2) {
+        long c1 = o1.getValue()[0];
+        long c2 = o2.getValue()[0];
+        return c1 > c2 ? -1 : (c1 < c2 ? 1 : 0);
+      }
+    });
+    @SuppressWarnings("unchecked")
+    Map.Entry<Class<?>, long[]>[] tmp = (Map.Entry<Class<?>, long[]>[]) new Map.Entry<?, ?>[list.size()];
+    return list.toArray(tmp);
+  }
+
+  public void print(PrintStream out) {
+    long cycles = getCycles();
+    out.println("Instructions:      " + instructions);
+    out.println("Cycles:            " + cycles);
+    out.printf("LPM cycles:        %d (%.2f%%)\n", getLPMCycles(),
+        cycles > 0 ? 100.0 * getLPMCycles() / cycles : 0.0);
+    out.printf("Simulated time:    %.3f ms\n", getSimulatedMillis());
+    out.printf("Host time:         %.3f ms\n", getHostNanos() / 1000000.0);
+    out.println("Host nanos/sim s:  " + getHostNanosPerSecond());
+    out.println("Interrupts:");
+    for (int i = interrupts.length - 1; i >= 0; i--) {
+      if (interrupts[i] > 0) {
+        out.printf("  %2d %12d\n", i, interrupts[i]);
+      }
+    }
+    out.println("Events:");
+    for (Map.Entry<Class<?>, long[]> e : getEventCounts()) {
+      if (e.getValue()[0] > 0) {
+        out.printf("  %-50s %12d\n", e.getKey().getName(), e.getValue()[0]);
+      }
+    }
+    if (isMemoryMonitoring()) {
+      out.printf("Memory:  %-8s %12s %12s %12s\n", "", "read", "write", "execute");
+      for (SegmentType type : SEGMENT_TYPES) {
+        int i = type.ordinal();
+        out.printf("         %-8s %12d %12d %12d\n", type, memoryReads[i], memoryWrites[i], memoryExecutes[i]);
+      }
+    }
+  }
+
+  public JSONObject toJSON() {
+    JSONObject json = new JSONObject();
+    json.put("instructions", instructions);
+    json.put("cycles", getCycles());
+    json.put("lpmCycles", getLPMCycles());
+    json.put("simulatedMillis", getSimulatedMillis());
+    json.put("hostNanos", getHostNanos());
+    json.put("hostNanosPerSecond", getHostNanosPerSecond());
+
+    JSONObject irq = new JSONObject();
+    for (int i = 0; i < interrupts.length; i++) {
+      if (interrupts[i] > 0) {
+        irq.put(Integer.toString(i), interrupts[i]);
+      }
+    }
+    json.put("interrupts", irq);
+
+    JSONObject events = new JSONObject();
+    for (Map.Entry<Class<?>, long[]> e : getEventCounts()) {
+      events.put(e.getKey().getName(), e.getValue()[0]);
+    }
+    json.put("events", events);
+
+    if (isMemoryMonitoring()) {
+      JSONArray memory = new JSONArray();
+      for (SegmentType type : SEGMENT_TYPES) {
+        int i = type.ordinal();
+        memory.add(new JSONObject().set("segment", type.name())
+            .set("read", memoryReads[i]).set("write", memoryWrites[i])
+            .set("execute", memoryExecutes[i]));
+      }
+      json.put("memory", memory);
+    }
+    return json;
+  }
+
+}
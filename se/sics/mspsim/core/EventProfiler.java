@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2026, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ * This file is part of MSPSim.
+ *
+ * -----------------------------------------------------------------
+ * EventProfiler
+ *
+ * Created : 19 oct 2026
+ */
+
+package se.sics.mspsim.core;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.WeakHashMap;
+
+/**
+ * Attributes the number of executions and the host time spent to each
+ * time event source. Events are grouped by their name or, for unnamed
+ * events, by their class. Enabled with MSP430Core.setEventProfiler().
+ */
+public class EventProfiler {
+
+  public static class Stat {
+    public final String name;
+    long count;
+    long nanos;
+    long maxNanos;
+
+    Stat(String name) {
+      this.name = name;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getNanos() {
+      return nanos;
+    }
+
+    public long getMaxNanos() {
+      return maxNanos;
+    }
+  }
+
+  private static final Comparator<Stat> TIME_ORDER = new Comparator<Stat>() {
+    public int compare(Stat s1, Stat s2) {
+      return s1.nanos > s2.nanos ? -1 : (s1.nanos < s2.nanos ? 1 : 0);
+    }
+  };
+
+  /* Weak keys to not keep events of stopped commands alive */
+  private final WeakHashMap<TimeEvent, Stat> eventStats = new WeakHashMap<TimeEvent, Stat>();
+  private final HashMap<String, Stat> stats = new HashMap<String, Stat>();
+  private TimeEvent lastEvent;
+  private Stat lastStat;
+
+  private long totalCount;
+  private long totalNanos;
+
+  void execute(TimeEvent event, long time) {
+    long start = System.nanoTime();
+    event.execute(time);
+    long elapsed = System.nanoTime() - start;
+
+    Stat stat;
+    if (event == lastEvent) {
+      stat = lastStat;
+    } else {
+      synchronized (this) {
+        stat = eventStats.get(event);
+        if (stat == null) {
+          String name = event.name != null ? event.name : event.getClass().getName();
+          stat = stats.get(name);
+          if (stat == null) {
+            stat = new Stat(name);
+            stats.put(name, stat);
+          }
+          eventStats.put(event, stat);
+        }
+      }
+      lastEvent = event;
+      lastStat = stat;
+    }
+    stat.count++;
+    stat.nanos += elapsed;
+    if (elapsed > stat.maxNanos) {
+      stat.maxNanos = elapsed;
+    }
+    totalCount++;
+    totalNanos += elapsed;
+  }
+
+  public synchronized void reset() {
+    for (Stat stat : stats.values()) {
+      stat.count = stat.nanos = stat.maxNanos = 0;
+    }
+    totalCount = totalNanos = 0;
+  }
+
+  public long getTotalCount() {
+    return totalCount;
+  }
+
+  public long getTotalNanos() {
+    return totalNanos;
+  }
+
+  /* Returns the event sources that have used most host time first */
+  public synchronized Stat[] getTopEvents(int max) {
+    Stat[] all = stats.values().toArray(new Stat[stats.size()]);
+    Arrays.sort(all, TIME_ORDER);
+    if (max >= 0 && max < all.length) {
+      all = Arrays.copyOf(all, max);
+    }
+    return all;
+  }
+
+  public void print(PrintStream out, int max) {
+    long total = totalNanos;
+    out.printf("%-40s %12s %12s %10s %10s %6s\n", "Event", "Count", "Time (us)", "Avg (ns)", "Max (ns)", "%");
+    for (Stat stat : getTopEvents(max)) {
+      if (stat.count == 0) {
+        continue;
+      }
+      out.printf("%-40s %12d %12d %10d %10d %6.2f\n", stat.name, stat.count,
+          stat.nanos / 1000, stat.nanos / stat.count, stat.maxNanos,
+          total > 0 ? 100.0 * stat.nanos / total : 0.0);
+    }
+    out.printf("Total: %d events in %d us\n", totalCount, total / 1000);
+  }
+
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2026, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ * This file is part of MSPSim.
+ *
+ * -----------------------------------------------------------------
+ * ExecutionPacer
+ *
+ * Created : 19 oct 2026
+ */
+
+package se.sics.mspsim.core;
+
+/**
+ * Paces the main CPU loop against the host clock.
+ *
+ * UNTHROTTLED runs as fast as possible. REALTIME keeps simulated time at
+ * a fixed factor of wall clock time and corrects accumulated drift using
+ * System.nanoTime(). BUDGET runs at full speed but sleeps so that the
+ * simulation thread only uses the given share of the wall clock time.
+ */
+public class ExecutionPacer {
+
+  public enum Mode { UNTHROTTLED, REALTIME, BUDGET };
+
+  /* Simulated time between two checks of the host clock */
+  private static final long CHECK_INTERVAL_NANOS = 1000000L;
+  /* Do not bother to sleep for less than this */
+  private static final long MIN_SLEEP_NANOS = 2000000L;
+  /* Give up catching up when being further behind than this (breakpoints, GC) */
+  private static final long MAX_LAG_NANOS = 500000000L;
+  /* Length of a full speed slice in budget mode */
+  private static final long BUDGET_SLICE_NANOS = 50000000L;
+
+  private final MSP430Core cpu;
+
+  /* Changed from the CLI while the CPU loop is running */
+  private volatile Mode mode = Mode.REALTIME;
+  private volatile double rate = 2.0;
+  private volatile double budget = 1.0;
+
+  private volatile long startNanos;
+  private volatile long startSimNanos;
+  private volatile long sliceNanos;
+
+  public ExecutionPacer(MSP430Core cpu) {
+    this.cpu = cpu;
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  public void setMode(Mode mode) {
+    if (mode == null) {
+      throw new IllegalArgumentException("no execution mode specified");
+    }
+    this.mode = mode;
+    reset();
+  }
+
+  public double getRate() {
+    return rate;
+  }
+
+  public void setRate(double rate) {
+    if (rate <= 0.0) {
+      throw new IllegalArgumentException("speed factor must be larger than zero: " + rate);
+    }
+    this.rate = rate;
+    reset();
+  }
+
+  public double getBudget() {
+    return budget;
+  }
+
+  public void setBudget(double budget) {
+    if (budget <= 0.0 || budget > 1.0) {
+      throw new IllegalArgumentException("budget must be in the range (0, 1]: " + budget);
+    }
+    this.budget = budget;
+    reset();
+  }
+
+  /* Restart drift calculation from the current host and simulated time */
+  public void reset() {
+    startNanos = sliceNanos = System.nanoTime();
+    startSimNanos = getSimNanos();
+  }
+
+  /**
+   * Called from the CPU loop when the cycle counter has passed the value
+   * returned by the previous call. Sleeps if needed.
+   *
+   * @param cycles the current cycle counter
+   * @return the cycle counter at which pace should be called again
+   */
+  public long pace(long cycles) {
+    switch (mode) {
+    case REALTIME: {
+      long now = System.nanoTime();
+      long target = startNanos + (long) ((getSimNanos() - startSimNanos) / rate);
+      long ahead = target - now;
+      if (ahead >= MIN_SLEEP_NANOS) {
+        sleep(ahead);
+      } else if (ahead < -MAX_LAG_NANOS) {
+        // Too far behind to catch up without a long burst
+        reset();
+      }
+      break;
+    }
+    case BUDGET: {
+      long busy = System.nanoTime() - sliceNanos;
+      if (busy >= BUDGET_SLICE_NANOS) {
+        if (budget < 1.0) {
+          sleep((long) (busy * (1.0 - budget) / budget));
+        }
+        sliceNanos = System.nanoTime();
+      }
+      break;
+    }
+    case UNTHROTTLED:
+      /* Only check now and then to pick up mode changes */
+      return cycles + cpu.dcoFrq;
+    }
+    return cycles + cpu.dcoFrq * CHECK_INTERVAL_NANOS / 1000000000L + 1;
+  }
+
+  private long getSimNanos() {
+    return (long) (cpu.getTimeMillis() * 1000000.0);
+  }
+
+  private static void sleep(long nanos) {
+    try {
+      Thread.sleep(nanos / 1000000L, (int) (nanos % 1000000L));
+    } catch (InterruptedException e) {
+      // Ignore
+    }
+  }
+
+  public String info() {
+    switch (mode) {
+    case REALTIME:
+      return String.format("real-time factor %.2f", rate);
+    case BUDGET:
+      return String.format("unthrottled with %d%% host CPU budget", (int) Math.round(budget * 100));
+    default:
+      return "unthrottled";
+    }
+  }
+
+}
@@ -41,6 +41,7 @@ public class GenericUSCI extends IOUnit implements DMATrigger, USARTSource {
     public static final int SWRST = 0x01;
     
     private USARTListener usartListener;
+    private volatile USARTStream[] streams;
 
     private int ubr0;
     private int ubr1;
@@ -155,6 +156,13 @@ public class GenericUSCI extends IOUnit implements DMATrigger, USARTSource {
     }
     
     private void handleTransmit(long cycles) {
+        if (transmitting && USARTStream.isOutputFull(streams)) {
+            /* host is not reading - hold the transmitter for another byte time */
+            nextTXReady = cycles + tickPerByte + 1;
+            cpu.scheduleCycleEvent(txTrigger, nextTXReady);
+            return;
+        }
+
         if (cpu.getMode() >= MSP430Core.MODE_LPM3) {
             System.out.println(getName() + " Warning: USART transmission during LPM!!! ");
         }
@@ -410,6 +418,12 @@ public class GenericUSCI extends IOUnit implements DMATrigger, USARTSource {
         usartListener = USARTListener.Proxy.INSTANCE.remove(usartListener, listener);
     }
 
+    public synchronized USARTStream openStream() {
+        USARTStream stream = new USARTStream(cpu, this);
+        streams = USARTStream.add(streams, stream);
+        return stream;
+    }
+
     /*  default behavior assumes UART/SPI config */
     public boolean isReceiveFlagCleared() {
         return (ifg & RXIFG) == 0;
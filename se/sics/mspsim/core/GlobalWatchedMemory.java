@@ -1,11 +1,23 @@
 package se.sics.mspsim.core;
+import se.sics.mspsim.util.ListenerArray;
 
 public class GlobalWatchedMemory implements Memory {
 
+    private final MSP430Core cpu;
     private final Memory wrappedMemory;
-    private MemoryMonitor monitor;
+    private MemoryMonitor[] monitors;
+    private final ListenerArray<MemoryMonitor> monitorListeners =
+            new ListenerArray<MemoryMonitor>(MemoryMonitor.class) {
+        @Override
+        protected void publish(MemoryMonitor[] listeners) {
+            monitors = listeners;
+            // Only route memory accesses through this memory while monitored
+            cpu.currentSegment = listeners != null ? GlobalWatchedMemory.this : wrappedMemory;
+        }
+    };
 
-    GlobalWatchedMemory(Memory wrapped) {
+    GlobalWatchedMemory(MSP430Core cpu, Memory wrapped) {
+        this.cpu = cpu;
         this.wrappedMemory = wrapped;
     }
 
@@ -14,26 +26,28 @@ public class GlobalWatchedMemory implements Memory {
     }
 
     public boolean hasGlobalMonitor() {
-        return monitor != null;
+        return !monitorListeners.isEmpty();
     }
 
-    public synchronized void addGlobalMonitor(MemoryMonitor mon) {
-        monitor = MemoryMonitor.Proxy.INSTANCE.add(monitor, mon);
+    public void addGlobalMonitor(MemoryMonitor mon) {
+        monitorListeners.add(mon);
     }
 
-    public synchronized void removeGlobalMonitor(MemoryMonitor mon) {
-        monitor = MemoryMonitor.Proxy.INSTANCE.remove(monitor, mon);
+    public void removeGlobalMonitor(MemoryMonitor mon) {
+        monitorListeners.remove(mon);
     }
 
     @Override
     public int read(int address, AccessMode mode, AccessType type) throws EmulationException {
-        final MemoryMonitor mon = monitor;
-        if (mon != null) {
-            mon.notifyReadBefore(address, mode, type);
-
+        final MemoryMonitor[] mons = monitors;
+        if (mons != null) {
+            for (int i = 0, n = mons.length; i < n; i++) {
+                mons[i].notifyReadBefore(address, mode, type);
+            }
             int val = wrappedMemory.read(address, mode, type);
-
-            mon.notifyReadAfter(address, mode, type);
+            for (int i = 0, n = mons.length; i < n; i++) {
+                mons[i].notifyReadAfter(address, mode, type);
+            }
             return val;
         }
         return wrappedMemory.read(address, mode, type);
@@ -41,11 +55,15 @@ public class GlobalWatchedMemory implements Memory {
 
     @Override
     public void write(int dstAddress, int data, AccessMode mode) throws EmulationException {
-        MemoryMonitor mon = monitor;
-        if (mon != null) {
-            mon.notifyWriteBefore(dstAddress, data, mode);
+        final MemoryMonitor[] mons = monitors;
+        if (mons != null) {
+            for (int i = 0, n = mons.length; i < n; i++) {
+                mons[i].notifyWriteBefore(dstAddress, data, mode);
+            }
             wrappedMemory.write(dstAddress, data, mode);
-            mon.notifyWriteAfter(dstAddress, data, mode);
+            for (int i = 0, n = mons.length; i < n; i++) {
+                mons[i].notifyWriteAfter(dstAddress, data, mode);
+            }
         } else {
             wrappedMemory.write(dstAddress, data, mode);
         }
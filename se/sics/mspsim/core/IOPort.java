@@ -39,6 +39,7 @@ package  se.sics.mspsim.core;
 import java.util.Arrays;
 
 import se.sics.mspsim.core.EmulationLogger.WarningType;
+import se.sics.mspsim.util.ListenerArray;
 import se.sics.mspsim.util.Utils;
 
 public class IOPort extends IOUnit {
@@ -61,7 +62,14 @@ public class IOPort extends IOUnit {
 
     private final PortReg[] portMap;
 
-    private PortListener portListener = null;
+    private PortListener[] portListeners;
+    private final ListenerArray<PortListener> portListenerArray =
+            new ListenerArray<PortListener>(PortListener.class) {
+        @Override
+        protected void publish(PortListener[] listeners) {
+            portListeners = listeners;
+        }
+    };
 
     /* Registers for Digital I/O */
 
@@ -162,12 +170,18 @@ public class IOPort extends IOUnit {
         return sel;
     }
 
-    public synchronized void addPortListener(PortListener newListener) {
-        portListener = PortListenerProxy.addPortListener(portListener, newListener);
+    public void addPortListener(PortListener newListener) {
+        portListenerArray.add(newListener);
+    }
+
+    public void removePortListener(PortListener oldListener) {
+        portListenerArray.remove(oldListener);
     }
 
-    public synchronized void removePortListener(PortListener oldListener) {
-        portListener = PortListenerProxy.removePortListener(portListener, oldListener);
+    private void notifyPortWrite(PortListener[] listeners, int value) {
+        for (int i = 0, n = listeners.length; i < n; i++) {
+            listeners[i].portWrite(this, value);
+        }
     }
 
     public void setTimerCapture(Timer timer, int pin) {
@@ -269,9 +283,9 @@ public class IOPort extends IOUnit {
         switch(function) {
         case OUT: {
             out = data;
-            PortListener listener = portListener;
-            if (listener != null) {
-            	listener.portWrite(this, out | (~dir) & 0xff);
+            PortListener[] listeners = portListeners;
+            if (listeners != null) {
+                notifyPortWrite(listeners, out | (~dir) & 0xff);
             }
             break;
         }
@@ -281,12 +295,12 @@ public class IOPort extends IOUnit {
             //          in = data;
         case DIR: {
             dir = data;
-            PortListener listener = portListener;
-            if (listener != null) {
+            PortListener[] listeners = portListeners;
+            if (listeners != null) {
                 // Any output configured pin (pin-bit = 0) should have 1 here?! 
                 //              if (name.equals("1"))
                 //                System.out.println(getName() + " write to IOPort via DIR reg: " + Utils.hex8(data));
-                listener.portWrite(this, out | (~dir) & 0xff);
+                notifyPortWrite(listeners, out | (~dir) & 0xff);
             }
             break;
         }
@@ -428,10 +442,10 @@ public class IOPort extends IOUnit {
         iv = 0;
         cpu.flagInterrupt(interrupt, this, (ifg & ie) > 0);
 
-        PortListener listener = portListener;
+        PortListener[] listeners = portListeners;
         int newValue = out | (~dir) & 0xff;
-        if (oldValue != newValue && listener != null) {
-            listener.portWrite(this, newValue);
+        if (oldValue != newValue && listeners != null) {
+            notifyPortWrite(listeners, newValue);
         }
     }
 
@@ -126,6 +126,25 @@ public abstract class IOUnit implements InterruptHandler, Loggable {
       logger.log(this, msg);
   }
 
+  /* See Chip.log(int, String, long) */
+  protected void log(int level, String format, long arg0) {
+      if (logLevel >= level) {
+          EmulationLoggerAdapter.logFormat(logger, this, format, arg0, 0, 0);
+      }
+  }
+
+  protected void log(int level, String format, long arg0, long arg1) {
+      if (logLevel >= level) {
+          EmulationLoggerAdapter.logFormat(logger, this, format, arg0, arg1, 0);
+      }
+  }
+
+  protected void log(int level, String format, long arg0, long arg1, long arg2) {
+      if (logLevel >= level) {
+          EmulationLoggerAdapter.logFormat(logger, this, format, arg0, arg1, arg2);
+      }
+  }
+
   protected void logw(WarningType type, String msg) {
       logger.logw(this, type, msg);
   }
@@ -41,6 +41,7 @@ import java.io.PrintStream;
 import se.sics.mspsim.profiler.SimpleProfiler;
 import se.sics.mspsim.util.ArrayUtils;
 import se.sics.mspsim.util.ComponentRegistry;
+import se.sics.mspsim.util.ConfigManager;
 import se.sics.mspsim.util.MapTable;
 
 public class MSP430 extends MSP430Core {
@@ -52,13 +53,13 @@ public class MSP430 extends MSP430Core {
   private boolean debug = false;
   private boolean running = false;
   private boolean isBreaking = false;
-  private double rate = 2.0;
+  private final ExecutionPacer pacer;
 
   // Debug time - measure cycles
   private long lastCycles = 0;
   private long lastCpuCycles = 0;
   private long time;
-  private long nextSleep = 0;
+  private volatile long nextSleep = 0;
   private long nextOut = 0;
 
   private double lastCPUPercent = 0d;
@@ -74,6 +75,7 @@ public class MSP430 extends MSP430Core {
   public MSP430(int type, ComponentRegistry registry, MSP430Config config) {
     super(type, registry, config);
     disAsm = new DisAsm();
+    pacer = new ExecutionPacer(this);
   }
 
   public double getCPUPercent() {
@@ -92,6 +94,8 @@ public class MSP430 extends MSP430Core {
     try {
         // ??? - power-up  should be executed?!
         time = System.currentTimeMillis();
+        pacer.reset();
+        nextSleep = 0;
         run();
     } finally {
         setRunning(false);
@@ -128,15 +132,9 @@ public class MSP430 extends MSP430Core {
 	}
       }
 
-      /* Just a test to see if it gets down to a reasonable speed */
+      /* Let the pacer keep the speed according to the execution mode */
       if (cycles > nextSleep) {
-	try {
-	  Thread.sleep(100);
-	} catch (Exception e) {
-	}
-	// Frequency = 100 * cycles ratio
-	// Ratio = Frq / 100
-	nextSleep = cycles + (long)(rate * dcoFrq / 10);
+        nextSleep = pacer.pace(cycles);
       }
 
 //       if ((instruction & 0xff80) == CALL) {
@@ -291,7 +289,7 @@ public class MSP430 extends MSP430Core {
         }
     }
 
-    if (cpuOff && !(interruptsEnabled && servicedInterrupt == -1 && interruptMax >= 0)) {
+    if (cpuOff && !interruptReady) {
       lastReturnedMicros = (1000000 * (nextEventCycles - cycles)) / dcoFrq;
     } else {
       lastReturnedMicros = 0;
@@ -402,6 +400,7 @@ public class MSP430 extends MSP430Core {
 
   public void setMap(MapTable map) {
     this.map = map;
+    unnamedFunctions.clear();
     /* When we got the map table we can also profile! */
     if (profiler == null) {
       setProfiler(new SimpleProfiler());
@@ -431,12 +430,80 @@ public class MSP430 extends MSP430Core {
     return running;
   }
 
+  public ExecutionPacer.Mode getExecutionMode() {
+    return pacer.getMode();
+  }
+
+  public void setExecutionMode(ExecutionPacer.Mode mode) {
+    pacer.setMode(mode);
+    nextSleep = 0;
+  }
+
   public double getExecutionRate() {
-    return rate;
+    return pacer.getRate();
   }
 
+  /* Sets the real-time factor and switches to real-time pacing */
   public void setExecutionRate(double rate) {
-    this.rate = rate;
+    pacer.setRate(rate);
+    pacer.setMode(ExecutionPacer.Mode.REALTIME);
+    nextSleep = 0;
+  }
+
+  public double getExecutionBudget() {
+    return pacer.getBudget();
+  }
+
+  /* Sets the share of host time to use and switches to budget pacing */
+  public void setExecutionBudget(double budget) {
+    pacer.setBudget(budget);
+    pacer.setMode(ExecutionPacer.Mode.BUDGET);
+    nextSleep = 0;
+  }
+
+  public String getExecutionInfo() {
+    return pacer.info();
+  }
+
+  /**
+   * Setup the execution pacing from the configuration:
+   *   speed       - unthrottled, realtime or budget
+   *   speedFactor - real-time factor (default 2.0)
+   *   speedBudget - percent of host time to use in budget mode (default 100)
+   */
+  public void configureExecution(ConfigManager config) {
+    double rate = config.getPropertyAsDouble("speedFactor", pacer.getRate());
+    if (rate > 0.0) {
+      pacer.setRate(rate);
+    }
+    int percent = config.getPropertyAsInt("speedBudget", (int) Math.round(pacer.getBudget() * 100));
+    if (percent > 0 && percent <= 100) {
+      pacer.setBudget(percent / 100.0);
+    }
+    String mode = config.getProperty("speed");
+    if (mode != null) {
+      try {
+        pacer.setMode(ExecutionPacer.Mode.valueOf(mode.toUpperCase()));
+      } catch (IllegalArgumentException e) {
+        System.err.println("config 'speed' has an unknown value '" + mode + '\'');
+      }
+    }
+    nextSleep = 0;
+  }
+
+  @Override
+  public void setMetrics(EmulationMetrics metrics) {
+    EmulationMetrics oldMetrics = this.metrics;
+    if (oldMetrics != null) {
+      removeSimEventListener(oldMetrics);
+    }
+    super.setMetrics(metrics);
+    if (metrics != null) {
+      addSimEventListener(metrics);
+      if (isRunning()) {
+        metrics.simChanged(new SimEvent(SimEvent.Type.START));
+      }
+    }
   }
 
   public synchronized void addSimEventListener(SimEventListener l) {
@@ -38,12 +38,16 @@
 package se.sics.mspsim.core;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import se.sics.mspsim.core.EmulationLogger.WarningType;
 import se.sics.mspsim.core.Memory.AccessMode;
 import se.sics.mspsim.core.Memory.AccessType;
 import se.sics.mspsim.util.ComponentRegistry;
 import se.sics.mspsim.util.DefaultEmulationLogger;
+import se.sics.mspsim.util.ListenerArray;
 import se.sics.mspsim.util.MapEntry;
 import se.sics.mspsim.util.MapTable;
 import se.sics.mspsim.util.Utils;
@@ -66,8 +70,10 @@ public class MSP430Core extends Chip implements MSP430Constants {
   // 16 registers of which some are "special" - PC, SP, etc.
   public final int[] reg = new int[16];
 
-  private final RegisterMonitor[] regWriteMonitors = new RegisterMonitor[16];
-  private final RegisterMonitor[] regReadMonitors = new RegisterMonitor[16];
+  private final RegisterMonitor[][] regWriteMonitors = new RegisterMonitor[16][];
+  private final RegisterMonitor[][] regReadMonitors = new RegisterMonitor[16][];
+  private final ListenerArray<RegisterMonitor>[] regWriteListeners = createRegisterListeners(regWriteMonitors);
+  private final ListenerArray<RegisterMonitor>[] regReadListeners = createRegisterListeners(regReadMonitors);
 
   // true => breakpoints can occur!
   boolean breakpointActive = true;
@@ -78,11 +84,15 @@ public class MSP430Core extends Chip implements MSP430Constants {
   boolean isStopping = false;
 
   private final Memory memorySegments[];
+  private final AtomicReferenceArray<WatchedMemory> watchedSegments;
+  private final GlobalWatchedMemory globalWatchedMemory;
   Memory currentSegment;
 
   public long cycles = 0;
   public long cpuCycles = 0;
   MapTable map;
+  /* Functions without symbols are kept per CPU as the map may be shared */
+  final HashMap<Integer, MapEntry> unnamedFunctions = new HashMap<Integer, MapEntry>();
   public final boolean MSP430XArch;
   public final MSP430Config config;
 
@@ -97,6 +107,10 @@ public class MSP430Core extends Chip implements MSP430Constants {
   public int MAX_INTERRUPT;
   
   protected int interruptMax = -1;
+  // Bit n is set when interrupt vector n is flagged (interruptSource has 64 entries)
+  private long pendingInterrupts;
+  // Set when an interrupt should be serviced before the next instruction
+  boolean interruptReady = false;
   // Op/instruction represents the last executed OP / instruction
   private int op;
   public int instruction;
@@ -125,6 +139,10 @@ public class MSP430Core extends Chip implements MSP430Constants {
   private EventQueue vTimeEventQueue = new EventQueue();
   private long nextVTimeEventCycles;
 
+  /* Tasks from other threads to be run by the emulation thread */
+  private final ConcurrentLinkedQueue<Runnable> hostTasks = new ConcurrentLinkedQueue<Runnable>();
+  private volatile boolean hasHostTasks;
+
   private EventQueue cycleEventQueue = new EventQueue();
   private long nextCycleEventCycles;
   
@@ -132,6 +150,8 @@ public class MSP430Core extends Chip implements MSP430Constants {
 
   final ComponentRegistry registry;
   Profiler profiler;
+  volatile EmulationMetrics metrics;
+  volatile EventProfiler eventProfiler;
 
   public MSP430Core(int type, ComponentRegistry registry, MSP430Config config) {
     super("MSP430", "MSP430 Core", null);
@@ -149,6 +169,7 @@ public class MSP430Core extends Chip implements MSP430Constants {
 
     memory = new int[MAX_MEM];
     memorySegments = new Memory[MAX_MEM >> 8];
+    watchedSegments = new AtomicReferenceArray<WatchedMemory>(memorySegments.length);
 
     flash = new Flash(this, memory,
             new FlashRange(config.mainFlashStart, config.mainFlashStart + config.mainFlashSize, 512, 64),
@@ -186,6 +207,8 @@ public class MSP430Core extends Chip implements MSP430Constants {
         }
     };
 
+    globalWatchedMemory = new GlobalWatchedMemory(this, currentSegment);
+
 //    System.out.println("Set up MSP430 Core with " + MAX_MEM + " bytes memory");
 
     /* this is for detecting writes/read to/from non-existing IO */
@@ -297,25 +320,35 @@ public class MSP430Core extends Chip implements MSP430Constants {
     profiler.setCPU(this);
   }
 
-  public synchronized void addGlobalMonitor(MemoryMonitor mon) {
-      GlobalWatchedMemory gwm;
-      if (currentSegment instanceof GlobalWatchedMemory) {
-          gwm = (GlobalWatchedMemory)currentSegment;
-      } else {
-          currentSegment = gwm = new GlobalWatchedMemory(currentSegment);
-      }
-      gwm.addGlobalMonitor(mon);
+  public EmulationMetrics getMetrics() {
+    return metrics;
   }
 
-  public synchronized void removeGlobalMonitor(MemoryMonitor mon) {
-      if (currentSegment instanceof GlobalWatchedMemory) {
-          GlobalWatchedMemory gwm = (GlobalWatchedMemory)currentSegment;
-          gwm.removeGlobalMonitor(mon);
-          if (!gwm.hasGlobalMonitor()) {
-              // No more monitors - switch back to normal memory
-              currentSegment = gwm.getWatchedMemory();
-          }
-      }
+  /* Enable hot path metrics, or disable them by setting null */
+  public void setMetrics(EmulationMetrics metrics) {
+    EmulationMetrics oldMetrics = this.metrics;
+    this.metrics = metrics;
+    if (oldMetrics != null && oldMetrics != metrics) {
+      oldMetrics.dispose();
+    }
+  }
+
+  public EventProfiler getEventProfiler() {
+    return eventProfiler;
+  }
+
+  /* Enable time event profiling, or disable it by setting null */
+  public void setEventProfiler(EventProfiler eventProfiler) {
+    this.eventProfiler = eventProfiler;
+  }
+
+  /* The global watched memory switches currentSegment when monitors are added or removed */
+  public void addGlobalMonitor(MemoryMonitor mon) {
+      globalWatchedMemory.addGlobalMonitor(mon);
+  }
+
+  public void removeGlobalMonitor(MemoryMonitor mon) {
+      globalWatchedMemory.removeGlobalMonitor(mon);
   }
 
   public ComponentRegistry getRegistry() {
@@ -401,49 +434,107 @@ public class MSP430Core extends Chip implements MSP430Constants {
       return false;
   }
 
-  public synchronized void addWatchPoint(int address, MemoryMonitor mon) {
-      int seg = address >> 8;
-      WatchedMemory wm;
-      if (memorySegments[seg] instanceof WatchedMemory) {
-          wm = (WatchedMemory) memorySegments[seg];
-      } else {
-          wm = new WatchedMemory(address & 0xfff00, memorySegments[seg]);
-          memorySegments[seg] = wm;
+  private WatchedMemory getWatchedSegment(int seg) {
+      WatchedMemory wm = watchedSegments.get(seg);
+      if (wm == null) {
+          wm = new WatchedMemory(seg << 8, memorySegments[seg]);
+          if (watchedSegments.compareAndSet(seg, null, wm)) {
+              // Only the thread installing the watched memory swaps the segment
+              memorySegments[seg] = wm;
+          } else {
+              // Another thread installed the watched memory first
+              wm = watchedSegments.get(seg);
+          }
       }
-      wm.addWatchPoint(address, mon);
+      return wm;
   }
 
-  public synchronized void removeWatchPoint(int address, MemoryMonitor mon) {
-      if (memorySegments[address >> 8] instanceof WatchedMemory) {
-          WatchedMemory wm = (WatchedMemory) memorySegments[address >> 8];
+  public void addWatchPoint(int address, MemoryMonitor mon) {
+      getWatchedSegment(address >> 8).addWatchPoint(address, mon);
+  }
+
+  public void removeWatchPoint(int address, MemoryMonitor mon) {
+      WatchedMemory wm = watchedSegments.get(address >> 8);
+      if (wm != null) {
           wm.removeWatchPoint(address, mon);
       }
   }
 
-  public synchronized void addRegisterMonitor(int r, RegisterMonitor mon) {
+  /* Registers the range with each memory segment it covers */
+  public void addWatchRange(MemoryWatchRange range) {
+      if (range.getStart() < 0 || range.getEnd() > MAX_MEM) {
+          throw new IllegalArgumentException("watch range outside memory: " + range.info());
+      }
+      for (int seg = range.getStart() >> 8, last = (range.getEnd() - 1) >> 8; seg <= last; seg++) {
+          getWatchedSegment(seg).addWatchRange(range);
+      }
+  }
+
+  public void removeWatchRange(MemoryWatchRange range) {
+      for (int seg = range.getStart() >> 8, last = (range.getEnd() - 1) >> 8; seg <= last; seg++) {
+          WatchedMemory wm = watchedSegments.get(seg);
+          if (wm != null) {
+              wm.removeWatchRange(range);
+          }
+      }
+  }
+
+  public MemoryWatchRange[] getWatchRanges() {
+      ArrayList<MemoryWatchRange> ranges = new ArrayList<MemoryWatchRange>();
+      for (int seg = 0, n = watchedSegments.length(); seg < n; seg++) {
+          WatchedMemory wm = watchedSegments.get(seg);
+          MemoryWatchRange[] r = wm == null ? null : wm.getWatchRanges();
+          if (r != null) {
+              for (MemoryWatchRange range : r) {
+                  // Ranges spanning several segments are listed once
+                  if (!ranges.contains(range)) {
+                      ranges.add(range);
+                  }
+              }
+          }
+      }
+      return ranges.toArray(new MemoryWatchRange[ranges.size()]);
+  }
+
+  public void addRegisterMonitor(int r, RegisterMonitor mon) {
       addRegisterWriteMonitor(r, mon);
       addRegisterReadMonitor(r, mon);
   }
 
-  public synchronized void removeRegisterMonitor(int r, RegisterMonitor mon) {
+  public void removeRegisterMonitor(int r, RegisterMonitor mon) {
       removeRegisterWriteMonitor(r, mon);
       removeRegisterReadMonitor(r, mon);
   }
 
-  public synchronized void addRegisterWriteMonitor(int r, RegisterMonitor mon) {
-      regWriteMonitors[r] = RegisterMonitor.Proxy.INSTANCE.add(regWriteMonitors[r], mon);
+  public void addRegisterWriteMonitor(int r, RegisterMonitor mon) {
+      regWriteListeners[r].add(mon);
+  }
+
+  public void removeRegisterWriteMonitor(int r, RegisterMonitor mon) {
+      regWriteListeners[r].remove(mon);
   }
 
-  public synchronized void removeRegisterWriteMonitor(int r, RegisterMonitor mon) {
-      regWriteMonitors[r] = RegisterMonitor.Proxy.INSTANCE.remove(regWriteMonitors[r], mon);
+  public void addRegisterReadMonitor(int r, RegisterMonitor mon) {
+      regReadListeners[r].add(mon);
   }
 
-  public synchronized void addRegisterReadMonitor(int r, RegisterMonitor mon) {
-      regReadMonitors[r] = RegisterMonitor.Proxy.INSTANCE.add(regReadMonitors[r], mon);
+  public void removeRegisterReadMonitor(int r, RegisterMonitor mon) {
+      regReadListeners[r].remove(mon);
   }
 
-  public synchronized void removeRegisterReadMonitor(int r, RegisterMonitor mon) {
-      regReadMonitors[r] = RegisterMonitor.Proxy.INSTANCE.remove(regReadMonitors[r], mon);
+  @SuppressWarnings("unchecked")
+  private static ListenerArray<RegisterMonitor>[] createRegisterListeners(final RegisterMonitor[][] monitors) {
+      ListenerArray<RegisterMonitor>[] listeners = (ListenerArray<RegisterMonitor>[]) new ListenerArray<?>[monitors.length];
+      for (int i = 0; i < listeners.length; i++) {
+          final int r = i;
+          listeners[i] = new ListenerArray<RegisterMonitor>(RegisterMonitor.class) {
+              @Override
+              protected void publish(RegisterMonitor[] mons) {
+                  monitors[r] = mons;
+              }
+          };
+      }
+      return listeners;
   }
 
   public void writeRegister(int r, int value) {
@@ -468,12 +559,16 @@ public class MSP430Core extends Chip implements MSP430Constants {
 //        new Throwable().printStackTrace();
 //    }
       
-      RegisterMonitor rwm = regWriteMonitors[r];
+      RegisterMonitor[] rwm = regWriteMonitors[r];
     if (rwm != null) {
         // TODO Add register access mode
-        rwm.notifyWriteBefore(r, value, AccessMode.WORD);
+        for (int i = 0, n = rwm.length; i < n; i++) {
+            rwm[i].notifyWriteBefore(r, value, AccessMode.WORD);
+        }
         reg[r] = value;
-        rwm.notifyWriteAfter(r, value, AccessMode.WORD);
+        for (int i = 0, n = rwm.length; i < n; i++) {
+            rwm[i].notifyWriteAfter(r, value, AccessMode.WORD);
+        }
     } else {
         reg[r] = value;
     }
@@ -486,6 +581,7 @@ public class MSP430Core extends Chip implements MSP430Constants {
       }
       boolean oldIE = interruptsEnabled;
       interruptsEnabled = ((value & GIE) == GIE);
+      interruptReady = interruptsEnabled && servicedInterrupt == -1 && interruptMax >= 0;
 
 //      if (debugInterrupts) System.out.println("Wrote to InterruptEnabled: " + interruptsEnabled + " was: " + oldIE);
       
@@ -523,12 +619,16 @@ public class MSP430Core extends Chip implements MSP430Constants {
 
   public int readRegister(int r) {
     int value;
-    RegisterMonitor rrm = regReadMonitors[r];
+    RegisterMonitor[] rrm = regReadMonitors[r];
     if (rrm != null) {
         // TODO Register access mode
-        rrm.notifyReadBefore(r, AccessMode.WORD);
+        for (int i = 0, n = rrm.length; i < n; i++) {
+            rrm[i].notifyReadBefore(r, AccessMode.WORD);
+        }
         value = reg[r];
-        rrm.notifyReadAfter(r, AccessMode.WORD);
+        for (int i = 0, n = rrm.length; i < n; i++) {
+            rrm[i].notifyReadAfter(r, AccessMode.WORD);
+        }
     } else {
         value = reg[r];
     }
@@ -542,12 +642,16 @@ public class MSP430Core extends Chip implements MSP430Constants {
       return CREG_VALUES[r - 2][m];
     }
     int value;
-    RegisterMonitor rrm = regReadMonitors[r];
+    RegisterMonitor[] rrm = regReadMonitors[r];
     if (rrm != null) {
         // TODO Register access mode
-        rrm.notifyReadBefore(r, AccessMode.WORD);
+        for (int i = 0, n = rrm.length; i < n; i++) {
+            rrm[i].notifyReadBefore(r, AccessMode.WORD);
+        }
         value = reg[r];
-        rrm.notifyReadAfter(r, AccessMode.WORD);
+        for (int i = 0, n = rrm.length; i < n; i++) {
+            rrm[i].notifyReadAfter(r, AccessMode.WORD);
+        }
     } else {
         value = reg[r];
     }
@@ -556,20 +660,28 @@ public class MSP430Core extends Chip implements MSP430Constants {
 
   public int incRegister(int r, int value) {
     int registerValue;
-    RegisterMonitor rm = regReadMonitors[r];
+    RegisterMonitor[] rm = regReadMonitors[r];
     if (rm != null) {
-        rm.notifyReadBefore(r, AccessMode.WORD);
+        for (int i = 0, n = rm.length; i < n; i++) {
+            rm[i].notifyReadBefore(r, AccessMode.WORD);
+        }
         registerValue = reg[r];
-        rm.notifyReadAfter(r, AccessMode.WORD);
+        for (int i = 0, n = rm.length; i < n; i++) {
+            rm[i].notifyReadAfter(r, AccessMode.WORD);
+        }
     } else {
         registerValue = reg[r];
     }
     rm = regWriteMonitors[r];
     registerValue += value;
     if (rm != null) {
-      rm.notifyWriteBefore(r, registerValue, AccessMode.WORD);
+      for (int i = 0, n = rm.length; i < n; i++) {
+        rm[i].notifyWriteBefore(r, registerValue, AccessMode.WORD);
+      }
       reg[r] = registerValue;
-      rm.notifyWriteAfter(r, registerValue, AccessMode.WORD);
+      for (int i = 0, n = rm.length; i < n; i++) {
+        rm[i].notifyWriteAfter(r, registerValue, AccessMode.WORD);
+      }
     } else {
       reg[r] = registerValue;
     }
@@ -620,7 +732,28 @@ public class MSP430Core extends Chip implements MSP430Constants {
       return 1000.0 * getTime() / bcs.getMaxDCOFrequency();
   }
   
+  /**
+   * Runs the task on the emulation thread the next time events are
+   * processed. Used by other threads to safely schedule events or to
+   * update the state of the emulated chips.
+   */
+  public void invokeLater(Runnable task) {
+    hostTasks.add(task);
+    hasHostTasks = true;
+  }
+
+  private void runHostTasks() {
+    hasHostTasks = false;
+    Runnable task;
+    while ((task = hostTasks.poll()) != null) {
+      task.run();
+    }
+  }
+
   private void executeEvents() {
+    if (hasHostTasks) {
+      runHostTasks();
+    }
     if (cycles >= nextVTimeEventCycles) {
       if (vTimeEventQueue.eventCount == 0) {
         nextVTimeEventCycles = cycles + 10000;
@@ -631,7 +764,16 @@ public class MSP430Core extends Chip implements MSP430Constants {
 //          System.out.println("VTimeEvent got delayed by: " + (now - te.time) + " at " +
 //              cycles + " target Time: " + te.time + " class: " + te.getClass().getName());
 //        }
-        te.execute(now);
+        EventProfiler ep = eventProfiler;
+        if (ep != null) {
+          ep.execute(te, now);
+        } else {
+          te.execute(now);
+        }
+        EmulationMetrics m = metrics;
+        if (m != null) {
+          m.eventExecuted(te);
+        }
         if (vTimeEventQueue.eventCount > 0) {
           nextVTimeEventCycles = convertVTime(vTimeEventQueue.nextTime);
         } else {
@@ -645,7 +787,16 @@ public class MSP430Core extends Chip implements MSP430Constants {
         nextCycleEventCycles = cycles + 10000;
       } else {
         TimeEvent te = cycleEventQueue.popFirst();
-        te.execute(cycles);
+        EventProfiler ep = eventProfiler;
+        if (ep != null) {
+          ep.execute(te, cycles);
+        } else {
+          te.execute(cycles);
+        }
+        EmulationMetrics m = metrics;
+        if (m != null) {
+          m.eventExecuted(te);
+        }
         if (cycleEventQueue.eventCount > 0) {
           nextCycleEventCycles = cycleEventQueue.nextTime;
         } else {
@@ -764,6 +915,7 @@ public class MSP430Core extends Chip implements MSP430Constants {
     }
     servicedInterruptUnit = null;
     servicedInterrupt = -1;
+    pendingInterrupts = 0;
     interruptMax = -1;
     writeRegister(SR, 0);
    
@@ -795,6 +947,12 @@ public class MSP430Core extends Chip implements MSP430Constants {
       boolean triggerIR) {
     if (triggerIR) {
       interruptSource[interrupt] = source;
+      if (source != null) {
+        pendingInterrupts |= 1L << interrupt;
+      } else {
+        /* Not kept pending after the next reevaluation (as for reset) */
+        pendingInterrupts &= ~(1L << interrupt);
+      }
 
       if (debugInterrupts) {
         if (source != null) {
@@ -813,23 +971,23 @@ public class MSP430Core extends Chip implements MSP430Constants {
         interruptsEnabled = true;
         servicedInterrupt = -1; /* Make sure this interrupt will be executed immediately */
       }
+      interruptReady = interruptsEnabled && servicedInterrupt == -1;
     } else {
       if (interruptSource[interrupt] == source) {
         if (debugInterrupts) {
           System.out.println("### Interrupt flagged OFF by " + source.getName() + " prio: " + interrupt);
         }
         interruptSource[interrupt] = null;
+        pendingInterrupts &= ~(1L << interrupt);
         reevaluateInterrupts();
       }
     }
   }
 
   private void reevaluateInterrupts() {
-    interruptMax = -1;
-    for (int i = 0; i < interruptSource.length; i++) {
-      if (interruptSource[i] != null)
-        interruptMax = i;
-    }
+    // Highest flagged vector or -1 if none
+    interruptMax = 63 - Long.numberOfLeadingZeros(pendingInterrupts);
+    interruptReady = interruptsEnabled && servicedInterrupt == -1 && interruptMax >= 0;
   }
 
   // returns the currently serviced interrupt (vector ID)
@@ -842,16 +1000,16 @@ public class MSP430Core extends Chip implements MSP430Constants {
   public void handlePendingInterrupts() {
     // By default no int. left to process...
     
-    reevaluateInterrupts();
-    
     servicedInterrupt = -1;
     servicedInterruptUnit = null;
+
+    reevaluateInterrupts();
   }  
 
   void profileCall(int dst, int pc) {
       MapEntry function = map.getEntry(dst);
       if (function == null) {
-          function = getFunction(map, dst);
+          function = getFunction(dst);
       }
       profiler.profileCall(function, cpuCycles, pc);
   }
@@ -925,6 +1083,11 @@ public class MSP430Core extends Chip implements MSP430Constants {
     servicedInterrupt = interruptMax;
     servicedInterruptUnit = interruptSource[servicedInterrupt];
 
+    EmulationMetrics m = metrics;
+    if (m != null) {
+      m.interruptServiced(servicedInterrupt);
+    }
+
     // Flag off this interrupt - for now - as soon as RETI is
     // executed things might change!
     reevaluateInterrupts();
@@ -966,7 +1129,7 @@ public class MSP430Core extends Chip implements MSP430Constants {
     // -------------------------------------------------------------------
     // Interrupt processing [after the last instruction was executed]
     // -------------------------------------------------------------------
-    if (interruptsEnabled && servicedInterrupt == -1 && interruptMax >= 0) {
+    if (interruptReady) {
       pc = serviceInterrupt(pc);
     }
 
@@ -985,7 +1148,7 @@ public class MSP430Core extends Chip implements MSP430Constants {
         executeEvents();
       }
 
-      if (interruptsEnabled && interruptMax > 0) {
+      if (interruptsEnabled && (pendingInterrupts & ~1L) != 0) {
           /* can not allow for jumping to nextEventCycles since that would jump too far */
           return -1;
       }
@@ -1005,38 +1168,10 @@ public class MSP430Core extends Chip implements MSP430Constants {
         // Signaled to stop the execution before performing the instruction
         return -2;
     }
-    int ext3_0 = 0;
-    int ext10_7 = 0;
-    int extSrc = 0;
-    int extDst = 0;
-    boolean repeatsInDstReg = false;
-    boolean wordx20 = false;
-
     /* check for extension words */
     if ((instruction & 0xf800) == 0x1800) {
         extWord = instruction;
-        ext3_0 = instruction & 0xf; /* bit 3 - 0 - either repeat count or dest 19-16 */
-        ext10_7 = (instruction >> 7) & 0xf; /* bit 10 - 7 - src 19-16 */
-        extSrc = ext10_7 << 16;
-        extDst = ext3_0 << 16;
         pc += 2;
-
-	// Bit 7 in the extension word indicates that the number of
-	// repeats is found in the register pointed to by ext3_0. If
-	// the bit is 0, ext3_0 contains the number of repeats. If the
-	// bit is 1, ext3_0 contains the register number that holds
-	// the number of repeats.
-	if ((instruction & 0x80) == 0x80) {
-	    repeatsInDstReg = true;
-	}
-	// Bit 6 indicates whether or not the data length mode should
-	// be 20 bits. A one means traditional MSP430 mode; a zero
-	// indicates 20 bit mode. (XXX: there is a reserved data
-	// length mode if this bit is zero and the MSP430 instruction
-	// that follows the extension word also has a zero bit data
-	// length mode.)
-	wordx20 = (instruction & 0x40) == 0;
-
 	instruction = currentSegment.read(pc, AccessMode.WORD, AccessType.EXECUTE);
         /*System.out.println("*** Extension word!!! " + Utils.hex16(extWord) +
                 "  read the instruction too: " + Utils.hex16(instruction) + " at " + Utils.hex16(pc - 2));*/
@@ -1045,83 +1180,139 @@ public class MSP430Core extends Chip implements MSP430Constants {
     }
     
     op = instruction >> 12;
-    int sp = 0;
-    int sr = 0;
-    int rval = 0; /* register value */
-    int repeats = 1; /* msp430X can repeat some instructions in some cases */
-    boolean zeroCarry = false; /* msp430X can zero carry in repeats */
-    boolean word = (instruction & 0x40) == 0;
-
-    /* NOTE: there is a mode when wordx20 = true & word = true that is resereved */
-    AccessMode mode = wordx20 ? AccessMode.WORD20 : (word ? AccessMode.WORD : AccessMode.BYTE);
-    
-    //if (mode == AccessMode.WORD20) System.out.println("WORD20 not really supported...");
-
-    // Destination vars
-    int dstRegister = 0;
-    int dstAddress = -1;
-    boolean dstRegMode = false;
-    int dst = -1;
-
-    boolean write = false;
-    boolean updateStatus = true;
 
     // When is PC increased  probably immediately (e.g. here)?
     pc += 2;
 
     writeRegister(PC, pc);
 
+    /* Each instruction format is executed by its own method to keep
+     * the methods small enough for the JIT to compile and inline well */
     switch (op) {
     case 0:
-        // MSP430X - additional instructions
-        op = instruction & 0xf0f0;
-        if (!MSP430XArch) 
-            throw new EmulationException("Executing MSP430X instruction but MCU is not a MSP430X");
+      executeAddressFormat(instruction, pc);
+      break;
+    case 1:
+      /* check if this is a MSP430X CALLA, PUSHM or POPM instruction */
+      if ((instruction & CALLA_MASK) > RETI) {
+        executeExtendedFormat(instruction, pc);
+      } else {
+        executeSingleOperand(instruction, pc);
+      }
+      break;
+    case 2:
+    case 3:
+      executeJump(instruction, pc);
+      break;
+    default:
+      executeDoubleOperand(instruction, pc);
+      break;
+    }
+
+    //System.out.println("CYCLES AFTER: " + cycles);
+
+    // -------------------------------------------------------------------
+    // Event processing (when CPU is awake)
+    // -------------------------------------------------------------------
+    while (cycles >= nextEventCycles) {
+      executeEvents();
+    }
+    
+    cpuCycles += cycles - startCycles;
+
+    EmulationMetrics m = metrics;
+    if (m != null) {
+      m.instructions++;
+    }
+    
+    /* return the address that was executed */
+    return pcBefore;
+  }
+
+  // -------------------------------------------------------------------
+  // Instruction formats
+  // -------------------------------------------------------------------
+
+  /* Writes the result to the destination and updates the zero and
+   * negative status flags */
+  private void completeInstruction(int dst, AccessMode mode, boolean write, boolean updateStatus,
+      boolean dstRegMode, int dstRegister, int dstAddress) throws EmulationException {
+    dst &= mode.mask;
+    if (write) {
+      if (dstRegMode) {
+	writeRegister(dstRegister, dst);
+      } else {
+        currentSegment.write(dstAddress, dst, mode);
+      }
+    }
+    if (updateStatus) {
+      // Update the Zero and Negative status!
+      // Carry and overflow must be set separately!
+      int sr = readRegister(SR);
+      sr = (sr & ~(ZERO | NEGATIVE)) |
+	((dst == 0) ? ZERO : 0) | ((dst & mode.msb) > 0 ? NEGATIVE : 0);
+      writeRegister(SR, sr);
+    }
+  }
+
+  // -------------------------------------------------------------------
+  //  MSP430X address instructions (MOVA, ADDA, CMPA, SUBA, RRxM)
+  // -------------------------------------------------------------------
+  private void executeAddressFormat(int instruction, int pc) throws EmulationException {
+    int dst = -1;
+    int sr = 0;
+    boolean updateStatus = true;
+    AccessMode mode;
+
+    // MSP430X - additional instructions
+    op = instruction & 0xf0f0;
+    if (!MSP430XArch) 
+        throw new EmulationException("Executing MSP430X instruction but MCU is not a MSP430X");
 //        System.out.println("Executing MSP430X instruction op:" + Utils.hex16(op) +
 //                " ins:" + Utils.hex16(instruction) + " PC = $" + getAddressAsString(pc - 2));
-        int src = 0;
-        /* data is either bit 19-16 or src register */
-        int srcData = (instruction & 0x0f00) >> 8;
-        int dstData = (instruction & 0x000f);
-        boolean rrword = true;
-        mode = AccessMode.WORD20;
-
-        switch(op) {
-        // 20 bit register write
-        case MOVA_IND:
-        	/* Read from address in src register (20-bit?), move to destination register (=20 bit). */
-        	writeRegister(dstData, currentSegment.read(readRegister(srcData), mode, AccessType.READ));
-        	updateStatus = false;
-        	cycles += 3;
-            break;
-        case MOVA_IND_AUTOINC:
-            if (profiler != null && instruction == 0x0110) {
-                profiler.profileReturn(cpuCycles);
-            }
-            writeRegister(PC, pc);
-            /* read from address in register */
-            src = readRegister(srcData);
+    int src = 0;
+    /* data is either bit 19-16 or src register */
+    int srcData = (instruction & 0x0f00) >> 8;
+    int dstData = (instruction & 0x000f);
+    boolean rrword = true;
+    mode = AccessMode.WORD20;
+
+    switch(op) {
+    // 20 bit register write
+    case MOVA_IND:
+    	/* Read from address in src register (20-bit?), move to destination register (=20 bit). */
+    	writeRegister(dstData, currentSegment.read(readRegister(srcData), mode, AccessType.READ));
+    	updateStatus = false;
+    	cycles += 3;
+        break;
+    case MOVA_IND_AUTOINC:
+        if (profiler != null && instruction == 0x0110) {
+            profiler.profileReturn(cpuCycles);
+        }
+        writeRegister(PC, pc);
+        /* read from address in register */
+        src = readRegister(srcData);
 //            System.out.println("Reading $" + getAddressAsString(src) +
 //                    " from register: " + srcData);
-            dst = currentSegment.read(src, mode, AccessType.READ);
+        dst = currentSegment.read(src, mode, AccessType.READ);
 //            System.out.println("Reading from mem: $" + getAddressAsString(dst));
-            writeRegister(srcData, src + 4);
+        writeRegister(srcData, src + 4);
 //            System.out.println("*** Writing $" + getAddressAsString(dst) + " to reg: " + dstData);
-            writeRegister(dstData, dst);
-            updateStatus = false;
+        writeRegister(dstData, dst);
+        updateStatus = false;
 	    cycles += 3;
-            break;
-        case MOVA_ABS2REG:
-            src = currentSegment.read(pc, AccessMode.WORD, AccessType.READ);
-            writeRegister(PC, pc += 2);
-            dst = src + (srcData << 16);
-            //System.out.println(Utils.hex20(pc) + " MOVA &ABS Reading from $" + getAddressAsString(dst) + " to reg: " + dstData);
-            dst = currentSegment.read(dst, mode,  AccessType.READ);
-            //System.out.println("   => $" + getAddressAsString(dst));
-            writeRegister(dstData, dst);
-            updateStatus = false;
+        break;
+    case MOVA_ABS2REG:
+        src = currentSegment.read(pc, AccessMode.WORD, AccessType.READ);
+        writeRegister(PC, pc += 2);
+        dst = src + (srcData << 16);
+        //System.out.println(Utils.hex20(pc) + " MOVA &ABS Reading from $" + getAddressAsString(dst) + " to reg: " + dstData);
+        dst = currentSegment.read(dst, mode,  AccessType.READ);
+        //System.out.println("   => $" + getAddressAsString(dst));
+        writeRegister(dstData, dst);
+        updateStatus = false;
 	    cycles += 4;
-            break;
+        break;
 	case MOVA_INDX2REG:
 		/* Read data from address in memory, indexed by source
 		 * register, and place into destination register. */
@@ -1138,12 +1329,12 @@ public class MSP430Core extends Chip implements MSP430Constants {
 		break;
 
 	case MOVA_REG2ABS:
-            dst = currentSegment.read(pc, AccessMode.WORD, AccessType.READ);
-            writeRegister(PC, pc += 2);
+        dst = currentSegment.read(pc, AccessMode.WORD, AccessType.READ);
+        writeRegister(PC, pc += 2);
 	    currentSegment.write(dst + (dstData << 16), readRegister(srcData), mode);
-            updateStatus = false;
+        updateStatus = false;
 	    cycles += 4;
-            break;
+        break;
 
 	case MOVA_REG2INDX:
 		/* Read data from register, write to address in memory,
@@ -1160,36 +1351,36 @@ public class MSP430Core extends Chip implements MSP430Constants {
 		cycles += 4;
 		break;
 
-        case MOVA_IMM2REG:
-            src = currentSegment.read(pc, AccessMode.WORD, AccessType.READ);
-            writeRegister(PC, pc += 2);
-            dst = src + (srcData << 16);
+    case MOVA_IMM2REG:
+        src = currentSegment.read(pc, AccessMode.WORD, AccessType.READ);
+        writeRegister(PC, pc += 2);
+        dst = src + (srcData << 16);
 //            System.out.println("*** Writing $" + getAddressAsString(dst) + " to reg: " + dstData);
-            dst &= 0xfffff;
-            writeRegister(dstData, dst);
-            updateStatus = false;
+        dst &= 0xfffff;
+        writeRegister(dstData, dst);
+        updateStatus = false;
 	    cycles += 2;
-            break;
+        break;
 
 
-        case ADDA_IMM:
-        	// For all immediate instructions, the data low 16 bits of
-        	// the data is stored in the following word (PC + 2) and
-        	// the high 4 bits in the instruction word, which we have
-        	// masked out as srcData.
-        	int immData = currentSegment.read(pc, AccessMode.WORD, AccessType.READ) + (srcData << 16);
-        	writeRegister(PC, pc += 2);
-        	int dstArg = readRegister(dstData);
-        	dst = dstArg + immData;
+    case ADDA_IMM:
+    	// For all immediate instructions, the data low 16 bits of
+    	// the data is stored in the following word (PC + 2) and
+    	// the high 4 bits in the instruction word, which we have
+    	// masked out as srcData.
+    	int immData = currentSegment.read(pc, AccessMode.WORD, AccessType.READ) + (srcData << 16);
+    	writeRegister(PC, pc += 2);
+    	int dstArg = readRegister(dstData);
+    	dst = dstArg + immData;
 
-        	sr = StatusRegister.updateSR(readRegister(SR), immData, dstArg, dst);
-    		writeRegister(SR, sr);
-    		updateStatus = false;
+    	sr = StatusRegister.updateSR(readRegister(SR), immData, dstArg, dst);
+		writeRegister(SR, sr);
+		updateStatus = false;
 
-        	dst &= 0xfffff;
-        	writeRegister(dstData, dst);
-        	cycles += 3;
-        	break;
+    	dst &= 0xfffff;
+    	writeRegister(dstData, dst);
+    	cycles += 3;
+    	break;
 
 	case CMPA_IMM: {
 		/* Status Bits N: Set if result is negative (src > dst), reset if positive (src ≤ dst)
@@ -1228,83 +1419,83 @@ public class MSP430Core extends Chip implements MSP430Constants {
 		cycles += 3;
 		break;
 	}
-        case SUBA_IMM:
-            immData = currentSegment.read(pc, AccessMode.WORD, AccessType.READ) + (srcData << 16);
-            writeRegister(PC, pc += 2);
+    case SUBA_IMM:
+        immData = currentSegment.read(pc, AccessMode.WORD, AccessType.READ) + (srcData << 16);
+        writeRegister(PC, pc += 2);
 	    dst = readRegister(dstData) - immData;
 	    writeRegister(dstData, dst);
 	    cycles += 3;
 	    break;
 
-        case MOVA_REG:
+    case MOVA_REG:
 	    cycles += 1;
 	    /* as = 0 since register mode */
 	    writeRegister(dstData, readRegisterCG(srcData, 0));
 		updateStatus = false;
 	    break;
 
-        case CMPA_REG: {
-        	sr = readRegister(SR);
-        	sr &= ~(NEGATIVE | ZERO | CARRY | OVERFLOW);
-        	int destRegValue = readRegister(dstData);
-        	int srcRegValue = readRegisterCG(srcData, 0);
-        	if (destRegValue >= srcRegValue) {
-        		sr |= CARRY;
-        	}
-        	if (destRegValue < srcRegValue) {
-        		sr |= NEGATIVE;
-        	}
-        	if (destRegValue == srcRegValue) {
-        		sr |= ZERO;
-        	}
-
-        	int cmpTmp = destRegValue - srcRegValue;
-        	int b = 0x80000; // CMPA always use 20 bit data length
-
-        	if (((destRegValue ^ cmpTmp) & b) == 0 &&
-        			(((destRegValue ^ srcRegValue) & b) != 0)) {
-        		sr |= OVERFLOW;
-        	}
-
-        	writeRegister(SR, sr);
-        	updateStatus = false;
-        	cycles += 1;
-        	break;
-        }
+    case CMPA_REG: {
+    	sr = readRegister(SR);
+    	sr &= ~(NEGATIVE | ZERO | CARRY | OVERFLOW);
+    	int destRegValue = readRegister(dstData);
+    	int srcRegValue = readRegisterCG(srcData, 0);
+    	if (destRegValue >= srcRegValue) {
+    		sr |= CARRY;
+    	}
+    	if (destRegValue < srcRegValue) {
+    		sr |= NEGATIVE;
+    	}
+    	if (destRegValue == srcRegValue) {
+    		sr |= ZERO;
+    	}
+
+    	int cmpTmp = destRegValue - srcRegValue;
+    	int b = 0x80000; // CMPA always use 20 bit data length
+
+    	if (((destRegValue ^ cmpTmp) & b) == 0 &&
+    			(((destRegValue ^ srcRegValue) & b) != 0)) {
+    		sr |= OVERFLOW;
+    	}
+
+    	writeRegister(SR, sr);
+    	updateStatus = false;
+    	cycles += 1;
+    	break;
+    }
 
 	case ADDA_REG:
 	    // Assume AS = 2
 	    dst = readRegister(dstData) + readRegisterCG(srcData, 2);
 	    writeRegister(dstData, dst);
-    	sr = StatusRegister.updateSR(readRegister(SR), readRegisterCG(srcData, 2), dstData, dst);
+	sr = StatusRegister.updateSR(readRegister(SR), readRegisterCG(srcData, 2), dstData, dst);
 		writeRegister(SR, sr);
 		updateStatus = false;
 	    cycles += 1;
 	    break;
-        case SUBA_REG:
-            // Assume AS = 2
+    case SUBA_REG:
+        // Assume AS = 2
 	    dst = readRegister(dstData) - readRegisterCG(srcData, 2);
 	    writeRegister(dstData, dst);
 	    cycles += 1;
 	    break;
 
-        case RRXX_ADDR:
-            rrword = false;
-        case RRXX_WORD:
-            int count = ((instruction >> 10) & 0x03) + 1;
-            dst = readRegister(dstData);
-            sr = readRegister(SR);
-            int nxtCarry = 0;
+    case RRXX_ADDR:
+        rrword = false;
+    case RRXX_WORD:
+        int count = ((instruction >> 10) & 0x03) + 1;
+        dst = readRegister(dstData);
+        sr = readRegister(SR);
+        int nxtCarry = 0;
 	    int carry = (sr & CARRY) > 0? 1: 0;
-            if (rrword) {
-                mode = AccessMode.WORD;
-                dst = dst & 0xffff;
-            }
+        if (rrword) {
+            mode = AccessMode.WORD;
+            dst = dst & 0xffff;
+        }
 	    cycles += 1 + count;
-            switch(instruction & RRMASK) {
-            /* if word zero anything above */
-            case RRCM:
-                /* if (rrword): Rotate right through carry the 16-bit CPU register content
+        switch(instruction & RRMASK) {
+        /* if word zero anything above */
+        case RRCM:
+            /* if (rrword): Rotate right through carry the 16-bit CPU register content
 		   if (!rrword): Rotate right through carry the 20-bit CPU register content */
 
 		/* Pull the (count) lowest bits from dst - those will
@@ -1324,496 +1515,576 @@ public class MSP430Core extends Chip implements MSP430Constants {
 		} else {
 		    dst |= (dst_low << (21 - count)) | (carry << (20 - count));
 		}
-                break;
-            case RRAM:
+            break;
+        case RRAM:
 //                System.out.println("RRAM executing");
-                /* roll in MSB from above */
-                /* 1 11 111 1111 needs to get in if MSB is 1 */
-                if ((dst & (rrword ? 0x8000 : 0x80000)) > 0) {
-                    /* add some 1 bits above MSB if MSB is 1 */
-                    dst = dst | (rrword ? 0xf8000 : 0xf80000);
-                }
-                dst = dst >> (count - 1);
-                nxtCarry = (dst & 1) > 0 ? CARRY : 0;
-                dst = dst >> 1;
-                break;
-            case RLAM:
-		//                System.out.println("RLAM executing at " + pc);
-                /* just roll in "zeroes" from left */
-                dst = dst << (count - 1);
-                nxtCarry = (dst & (rrword ? 0x8000 : 0x80000)) > 0 ? CARRY : 0;
-                dst = dst << 1;
-                break;
-            case RRUM:
-                //System.out.println("RRUM executing");
-                /* just roll in "zeroes" from right */
-                dst = dst >> (count - 1);
-                nxtCarry = (dst & 1) > 0 ? CARRY : 0;
-                dst = dst >> 1;
-                break;
+            /* roll in MSB from above */
+            /* 1 11 111 1111 needs to get in if MSB is 1 */
+            if ((dst & (rrword ? 0x8000 : 0x80000)) > 0) {
+                /* add some 1 bits above MSB if MSB is 1 */
+                dst = dst | (rrword ? 0xf8000 : 0xf80000);
             }
-            /* clear overflow - set carry according to above OP */
-            writeRegister(SR, (sr & ~(CARRY | OVERFLOW)) | nxtCarry);
-            dst = dst & (rrword ? 0xffff : 0xfffff);
-            writeRegister(dstData, dst);
+            dst = dst >> (count - 1);
+            nxtCarry = (dst & 1) > 0 ? CARRY : 0;
+            dst = dst >> 1;
             break;
-        default:
-            System.out.println("MSP430X instruction not yet supported: " +
+        case RLAM:
+		//                System.out.println("RLAM executing at " + pc);
+            /* just roll in "zeroes" from left */
+            dst = dst << (count - 1);
+            nxtCarry = (dst & (rrword ? 0x8000 : 0x80000)) > 0 ? CARRY : 0;
+            dst = dst << 1;
+            break;
+        case RRUM:
+            //System.out.println("RRUM executing");
+            /* just roll in "zeroes" from right */
+            dst = dst >> (count - 1);
+            nxtCarry = (dst & 1) > 0 ? CARRY : 0;
+            dst = dst >> 1;
+            break;
+        }
+        /* clear overflow - set carry according to above OP */
+        writeRegister(SR, (sr & ~(CARRY | OVERFLOW)) | nxtCarry);
+        dst = dst & (rrword ? 0xffff : 0xfffff);
+        writeRegister(dstData, dst);
+        break;
+    default:
+        System.out.println("MSP430X instruction not yet supported: " +
 			       Utils.hex16(instruction) +
 			       " op " + Utils.hex16(op));
-            throw new EmulationException("Found unsupported MSP430X instruction " +
+        throw new EmulationException("Found unsupported MSP430X instruction " +
 					 Utils.hex16(instruction) +
 					 " op " + Utils.hex16(op));
-        }
-        break;
-    case 1:
-    {
-      // -------------------------------------------------------------------
-      //  Single operand instructions
-      // -------------------------------------------------------------------
+    }
+    completeInstruction(dst, mode, false, updateStatus, false, 0, -1);
+  }
 
-      // Register
-      dstRegister = instruction & 0xf;
-      
-      /* check if this is a MSP430X CALLA instruction */
-      if ((op = instruction & CALLA_MASK) > RETI) {
-          pc = readRegister(PC);
-
-          dst = -1; /* will be -1 if not a call! */
-          /* do not update status after these instructions!!! */
-          updateStatus = false;
-          switch(op) {
-          case CALLA_REG:
-              // The CALLA operations increase the SP before 
-              // address resolution!
-              // store on stack - always move 2 steps before resolution
-              sp = readRegister(SP) - 2;
-              writeRegister(SP, sp);
-
-              dst = readRegister(dstRegister);
-              /*System.out.println("CALLA REG => " + Utils.hex20(dst));*/
-              cycles += 5;
-              break;
-          case CALLA_INDEX:
-              /* CALLA X(REG) => REG + X is the address*/
-              sp = readRegister(SP) - 2;
-              writeRegister(SP, sp);
+  // -------------------------------------------------------------------
+  //  MSP430X extended single operand instructions (CALLA, PUSHM, POPM)
+  // -------------------------------------------------------------------
+  private void executeExtendedFormat(int instruction, int pc) throws EmulationException {
+    int dstRegister = instruction & 0xf;
+    int dstAddress;
+    int dst = -1; /* will be -1 if not a call! */
+    int sp = 0;
+    op = instruction & CALLA_MASK;
+
+    /* status is not updated after these instructions */
+    switch(op) {
+    case CALLA_REG:
+        // The CALLA operations increase the SP before 
+        // address resolution!
+        // store on stack - always move 2 steps before resolution
+        sp = readRegister(SP) - 2;
+        writeRegister(SP, sp);
+
+        dst = readRegister(dstRegister);
+        /*System.out.println("CALLA REG => " + Utils.hex20(dst));*/
+        cycles += 5;
+        break;
+    case CALLA_INDEX:
+        /* CALLA X(REG) => REG + X is the address*/
+        sp = readRegister(SP) - 2;
+        writeRegister(SP, sp);
 
 //              System.out.println("CALLA INDX: R" + dstRegister);
-              dst = readRegister(dstRegister);
+        dst = readRegister(dstRegister);
 
-              /* what happens if wrapping here??? */
-              /* read the index which is from -15 bit - +15 bit. - so extend sign to 20-bit */
-              int index = currentSegment.read(pc, AccessMode.WORD, AccessType.READ);
-              index = convertTwoComplement16(index);
+        /* what happens if wrapping here??? */
+        /* read the index which is from -15 bit - +15 bit. - so extend sign to 20-bit */
+        int index = currentSegment.read(pc, AccessMode.WORD, AccessType.READ);
+        index = convertTwoComplement16(index);
 
 //              System.out.println("CALLA INDX: Reg = " + Utils.hex20(dst) + " INDX: " +  index);
 
-              dst += index;
-              dst &= 0xfffff;
+        dst += index;
+        dst &= 0xfffff;
 
 //              System.out.println("CALLA INDX => " + Utils.hex20(dst));
-              dst = currentSegment.read(dst, AccessMode.WORD20, AccessType.READ);
+        dst = currentSegment.read(dst, AccessMode.WORD20, AccessType.READ);
 //              System.out.println("CALLA Read from INDX => " + Utils.hex20(dst));
-              cycles += 5;
-              pc += 2;
+        cycles += 5;
+        pc += 2;
 //              System.exit(0);
-              break;
-          case CALLA_IMM:
-              sp = readRegister(SP) - 2;
-              writeRegister(SP, sp);
-
-              dst = (dstRegister << 16) | currentSegment.read(pc, AccessMode.WORD, AccessType.READ);
-              pc += 2;
-              cycles += 5;
-              break;
-          case CALLA_IND:
-              sp = readRegister(SP) - 2;
-              writeRegister(SP, sp);
-
-              dstAddress = readRegister(dstRegister);
-              
-              dst = currentSegment.read(dstAddress, AccessMode.WORD20, AccessType.READ);
-              cycles += 5;
-              break;
-          case CALLA_ABS:
-              sp = readRegister(SP) - 2;
-              writeRegister(SP, sp);
-
-              /* read the address of where the address to call is */
-              dst = (dstRegister << 16) | currentSegment.read(pc, AccessMode.WORD, AccessType.READ);
-              dst = currentSegment.read(dst, AccessMode.WORD20, AccessType.READ);
-              pc += 2;
-              cycles += 7;
-              break;
-          default:
-        	  AccessMode type = AccessMode.WORD;
-        	  int size = 2;
-        	  sp = readRegister(SP);
-        	  /* check for PUSHM... POPM... */
-        	  switch(op & 0x1f00) {
-        	  case PUSHM_A:
-        		  type = AccessMode.WORD20;
-        		  size = 4;
-        		  cycles += 2;
-        	  case PUSHM_W:
-        		  int n = 1 + ((instruction >> 4) & 0x0f);
-        		  int regNo = instruction & 0x0f;
-
-        		  //                  System.out.println("PUSHM " + (type == AccessMode.WORD20 ? "A" : "W") +
-        		  //                          " n: " + n + " " + regNo + " at " + Utils.hex16(pcBefore));
-
-        		  /* decrease stack pointer and write n times */
-        		  for(int i = 0; i < n; i++) {
-        			  sp -= size;
-        			  cycles += 2;
-        			  currentSegment.write(sp, this.reg[regNo], type);
-        			  /*System.out.println("Saved reg: " + (regNo) + " was " + reg[regNo]);*/
-        			  regNo--;
-
-        			  /* what happens if regNo is wrapped ??? */
-        			  if (regNo < 0) regNo = 15;
-        		  }
-        		  writeRegister(SP, sp);
-        		  break;
-        	  case POPM_A:
-        		  type = AccessMode.WORD20;
-        		  size = 4;
-        		  cycles += 2;
-        	  case POPM_W:
-        		  n = 1 + ((instruction >> 4) & 0x0f);
-        		  regNo = instruction & 0x0f;
-        		  /* read and increase stack pointer n times */
-
-        		  for(int i = 0; i < n; i++) {
-        			  cycles += 2;
-        			  this.reg[regNo] = currentSegment.read(sp, type, AccessType.READ);
-        			  regNo++;
-        			  //                      System.out.println("Restored reg: " + (regNo - 1) + " to " + reg[regNo - 1]);
-        			  sp += size;
-        			  /* what happens if regNo is wrapped ??? */
-        			  if (regNo > 15) regNo = 0;
-        		  }
-
-        		  writeRegister(SP, sp);
-        		  break;
-        	  default:
-            	  System.out.println("CALLA/PUSH/POP: mode not implemented");
-            	  throw new EmulationException("CALLA: mode not implemented "
-            			  + Utils.hex16(instruction) + " => " + Utils.hex16(op));
-              }
-          }
-          // store current PC on stack. (current PC points to next instr.)
-          /* store 20 bits on stack (costs two words) */
-          if (dst != -1) {
-              currentSegment.write(sp, (pc >> 16) & 0xf, AccessMode.WORD);
-              sp = sp - 2;
-              currentSegment.write(sp, pc & 0xffff, AccessMode.WORD);
-              writeRegister(SP, sp);
-              writeRegister(PC, dst);
-              
-              if (profiler != null) {
-                  profileCall(dst, pc);
-              }
-          }
-      } else {
-          // Address mode of destination...
-          int ad = (instruction >> 4) & 3;
-          int nxtCarry = 0;
-          op = instruction & 0xff80;
-          if (op == PUSH || op == CALL) {
-              // The PUSH and CALL operations increase the SP before 
-              // address resolution!
-              // store on stack - always move 2 steps (W) even if B./
-              sp = readRegister(SP) - 2;
-              writeRegister(SP, sp);
-          }
+        break;
+    case CALLA_IMM:
+        sp = readRegister(SP) - 2;
+        writeRegister(SP, sp);
 
-          if ((dstRegister == CG1 && ad > AM_INDEX) || dstRegister == CG2) {
-              dstRegMode = true;
-              cycles++;
-          } else {
-              switch(ad) {
-              // Operand in register!
-              case AM_REG:
-                  dstRegMode = true;
-                  cycles++;
-                  break;
-              case AM_INDEX:
-                  // TODO: needs to handle if SR is used!
-                  rval = readRegisterCG(dstRegister, ad);
-
-                  if (extWord != 0) {
-                    /* MSP430X Instruction With Indexed Mode */
-                    /*
-                     * TODO XXX There are MSP430X instructions without extension
-                     * words!
-                     */
-                    /*
-                     * "The operand address is the sum of the 20-bit CPU register
-                     * content and the 20-bit index."
-                     */
-                    dstAddress = currentSegment.read(pc, AccessMode.WORD, AccessType.READ);
-                    dstAddress += extDst;
-                    dstAddress += rval;
-                    dstAddress &= 0xfffff;
-                  } else {
-                    if (rval <= 0xffff) {
-                      /* Indexed Mode in Lower 64-KB Memory */
-                      /*
-                       * ".. the calculated memory address bits 19:16 are cleared
-                       * after the addition of the CPU register Rn and the signed
-                       * 16-bit index."
-                       */
-                      dstAddress = convertTwoComplement16(currentSegment.read(pc, AccessMode.WORD, AccessType.READ));
-                      dstAddress += rval;
-                      dstAddress &= 0xffff;
-                    } else {
-                      /* MSP430 Instruction With Indexed Mode in Upper Memory */
-                      /*
-                       * "The operand may be located in memory in the range Rn +-32
-                       * KB, because the index, X, is a signed 16-bit value"
-                       */
-                      dstAddress = convertTwoComplement16(currentSegment.read(pc, AccessMode.WORD, AccessType.READ));
-                      dstAddress += rval;
-                      dstAddress &= 0xfffff;
-                    }
-                  }
+        dst = (dstRegister << 16) | currentSegment.read(pc, AccessMode.WORD, AccessType.READ);
+        pc += 2;
+        cycles += 5;
+        break;
+    case CALLA_IND:
+        sp = readRegister(SP) - 2;
+        writeRegister(SP, sp);
 
-                  // When is PC incremented - assuming immediately after "read"?
-                  pc += 2;
-                  writeRegister(PC, pc);
-                  cycles += 4;
-                  break;
-                  // Indirect register
-              case AM_IND_REG:
-                  dstAddress = readRegister(dstRegister)  + extDst;
-
-                  cycles += 3;
-                  break;
-                  // Bugfix suggested by Matt Thompson
-              case AM_IND_AUTOINC:
-                  if (dstRegister == PC) {
-                      dstAddress = pc;
-
-                      dst = currentSegment.read(dstAddress, mode != AccessMode.BYTE ? AccessMode.WORD : AccessMode.BYTE, AccessType.READ);
-                      
-                      dst += extDst;
-                      pc += 2;
-                      writeRegister(PC, pc);
-                  } else {
-                      dstAddress = readRegister(dstRegister) + extDst;
-                      writeRegister(dstRegister, dstAddress + mode.bytes); // XXX (word ? 2 : 1));
-                  }
-                  cycles += 3;
-                  break;
+        dstAddress = readRegister(dstRegister);
+        
+        dst = currentSegment.read(dstAddress, AccessMode.WORD20, AccessType.READ);
+        cycles += 5;
+        break;
+    case CALLA_ABS:
+        sp = readRegister(SP) - 2;
+        writeRegister(SP, sp);
+
+        /* read the address of where the address to call is */
+        dst = (dstRegister << 16) | currentSegment.read(pc, AccessMode.WORD, AccessType.READ);
+        dst = currentSegment.read(dst, AccessMode.WORD20, AccessType.READ);
+        pc += 2;
+        cycles += 7;
+        break;
+    default:
+  	  AccessMode type = AccessMode.WORD;
+  	  int size = 2;
+  	  sp = readRegister(SP);
+  	  /* check for PUSHM... POPM... */
+  	  switch(op & 0x1f00) {
+  	  case PUSHM_A:
+  		  type = AccessMode.WORD20;
+  		  size = 4;
+  		  cycles += 2;
+  	  case PUSHM_W:
+  		  int n = 1 + ((instruction >> 4) & 0x0f);
+  		  int regNo = instruction & 0x0f;
+
+  		  //                  System.out.println("PUSHM " + (type == AccessMode.WORD20 ? "A" : "W") +
+  		  //                          " n: " + n + " " + regNo + " at " + Utils.hex16(pcBefore));
+
+  		  /* decrease stack pointer and write n times */
+  		  for(int i = 0; i < n; i++) {
+  			  sp -= size;
+  			  cycles += 2;
+  			  currentSegment.write(sp, this.reg[regNo], type);
+  			  /*System.out.println("Saved reg: " + (regNo) + " was " + reg[regNo]);*/
+  			  regNo--;
+
+  			  /* what happens if regNo is wrapped ??? */
+  			  if (regNo < 0) regNo = 15;
+  		  }
+  		  writeRegister(SP, sp);
+  		  break;
+  	  case POPM_A:
+  		  type = AccessMode.WORD20;
+  		  size = 4;
+  		  cycles += 2;
+  	  case POPM_W:
+  		  n = 1 + ((instruction >> 4) & 0x0f);
+  		  regNo = instruction & 0x0f;
+  		  /* read and increase stack pointer n times */
+
+  		  for(int i = 0; i < n; i++) {
+  			  cycles += 2;
+  			  this.reg[regNo] = currentSegment.read(sp, type, AccessType.READ);
+  			  regNo++;
+  			  //                      System.out.println("Restored reg: " + (regNo - 1) + " to " + reg[regNo - 1]);
+  			  sp += size;
+  			  /* what happens if regNo is wrapped ??? */
+  			  if (regNo > 15) regNo = 0;
+  		  }
+
+  		  writeRegister(SP, sp);
+  		  break;
+  	  default:
+      	  System.out.println("CALLA/PUSH/POP: mode not implemented");
+      	  throw new EmulationException("CALLA: mode not implemented "
+      			  + Utils.hex16(instruction) + " => " + Utils.hex16(op));
+        }
+    }
+    // store current PC on stack. (current PC points to next instr.)
+    /* store 20 bits on stack (costs two words) */
+    if (dst != -1) {
+        currentSegment.write(sp, (pc >> 16) & 0xf, AccessMode.WORD);
+        sp = sp - 2;
+        currentSegment.write(sp, pc & 0xffff, AccessMode.WORD);
+        writeRegister(SP, sp);
+        writeRegister(PC, dst);
+        
+        if (profiler != null) {
+            profileCall(dst, pc);
+        }
+    }
+  }
+
+  // -------------------------------------------------------------------
+  //  Single operand instructions
+  // -------------------------------------------------------------------
+  private void executeSingleOperand(int instruction, int pc) throws EmulationException {
+    /* Extension word fields - all zero when there is no extension word */
+    int ext3_0 = extWord & 0xf; /* bit 3 - 0 - either repeat count or dest 19-16 */
+    int extSrc = ((extWord >> 7) & 0xf) << 16; /* bit 10 - 7 - src 19-16 */
+    int extDst = ext3_0 << 16;
+    // Bit 7 in the extension word indicates that the number of
+    // repeats is found in the register pointed to by ext3_0. If
+    // the bit is 0, ext3_0 contains the number of repeats. If the
+    // bit is 1, ext3_0 contains the register number that holds
+    // the number of repeats.
+    boolean repeatsInDstReg = (extWord & 0x80) == 0x80;
+    // Bit 6 indicates whether or not the data length mode should
+    // be 20 bits. A one means traditional MSP430 mode; a zero
+    // indicates 20 bit mode. (XXX: there is a reserved data
+    // length mode if this bit is zero and the MSP430 instruction
+    // that follows the extension word also has a zero bit data
+    // length mode.)
+    boolean wordx20 = extWord != 0 && (extWord & 0x40) == 0;
+    boolean word = (instruction & 0x40) == 0;
+
+    /* NOTE: there is a mode when wordx20 = true & word = true that is resereved */
+    AccessMode mode = wordx20 ? AccessMode.WORD20 : (word ? AccessMode.WORD : AccessMode.BYTE);
+
+    int dstRegister = instruction & 0xf;
+    int dstAddress = -1;
+    boolean dstRegMode = false;
+    int dst = -1;
+    int sp = 0;
+    int sr = 0;
+    int rval = 0; /* register value */
+    int repeats = 1; /* msp430X can repeat some instructions in some cases */
+    boolean zeroCarry = false; /* msp430X can zero carry in repeats */
+    boolean write = false;
+    boolean updateStatus = true;
+
+    // Address mode of destination...
+    int ad = (instruction >> 4) & 3;
+    int nxtCarry = 0;
+    op = instruction & 0xff80;
+    if (op == PUSH || op == CALL) {
+        // The PUSH and CALL operations increase the SP before 
+        // address resolution!
+        // store on stack - always move 2 steps (W) even if B./
+        sp = readRegister(SP) - 2;
+        writeRegister(SP, sp);
+    }
+
+    if ((dstRegister == CG1 && ad > AM_INDEX) || dstRegister == CG2) {
+        dstRegMode = true;
+        cycles++;
+    } else {
+        switch(ad) {
+        // Operand in register!
+        case AM_REG:
+            dstRegMode = true;
+            cycles++;
+            break;
+        case AM_INDEX:
+            // TODO: needs to handle if SR is used!
+            rval = readRegisterCG(dstRegister, ad);
+
+            if (extWord != 0) {
+              /* MSP430X Instruction With Indexed Mode */
+              /*
+               * TODO XXX There are MSP430X instructions without extension
+               * words!
+               */
+              /*
+               * "The operand address is the sum of the 20-bit CPU register
+               * content and the 20-bit index."
+               */
+              dstAddress = currentSegment.read(pc, AccessMode.WORD, AccessType.READ);
+              dstAddress += extDst;
+              dstAddress += rval;
+              dstAddress &= 0xfffff;
+            } else {
+              if (rval <= 0xffff) {
+                /* Indexed Mode in Lower 64-KB Memory */
+                /*
+                 * ".. the calculated memory address bits 19:16 are cleared
+                 * after the addition of the CPU register Rn and the signed
+                 * 16-bit index."
+                 */
+                dstAddress = convertTwoComplement16(currentSegment.read(pc, AccessMode.WORD, AccessType.READ));
+                dstAddress += rval;
+                dstAddress &= 0xffff;
+              } else {
+                /* MSP430 Instruction With Indexed Mode in Upper Memory */
+                /*
+                 * "The operand may be located in memory in the range Rn +-32
+                 * KB, because the index, X, is a signed 16-bit value"
+                 */
+                dstAddress = convertTwoComplement16(currentSegment.read(pc, AccessMode.WORD, AccessType.READ));
+                dstAddress += rval;
+                dstAddress &= 0xfffff;
               }
-          }
+            }
 
-          // Perform the read
-          if (dstRegMode) {
-              dst = readRegisterCG(dstRegister, ad);
+            // When is PC incremented - assuming immediately after "read"?
+            pc += 2;
+            writeRegister(PC, pc);
+            cycles += 4;
+            break;
+            // Indirect register
+        case AM_IND_REG:
+            dstAddress = readRegister(dstRegister)  + extDst;
+
+            cycles += 3;
+            break;
+            // Bugfix suggested by Matt Thompson
+        case AM_IND_AUTOINC:
+            if (dstRegister == PC) {
+                dstAddress = pc;
+
+                dst = currentSegment.read(dstAddress, mode != AccessMode.BYTE ? AccessMode.WORD : AccessMode.BYTE, AccessType.READ);
+                
+                dst += extDst;
+                pc += 2;
+                writeRegister(PC, pc);
+            } else {
+                dstAddress = readRegister(dstRegister) + extDst;
+                writeRegister(dstRegister, dstAddress + mode.bytes); // XXX (word ? 2 : 1));
+            }
+            cycles += 3;
+            break;
+        }
+    }
+
+    // Perform the read
+    if (dstRegMode) {
+        dst = readRegisterCG(dstRegister, ad);
 
 	      dst &= mode.mask;
 	      
-              /* set the repeat here! */
+        /* set the repeat here! */
 	      if (repeatsInDstReg) {
 		  repeats = 1 + readRegister(ext3_0);
 	      } else {
 		  repeats = 1 + ext3_0;
 	      }
-              zeroCarry = (extWord & EXTWORD_ZC) > 0;
+        zeroCarry = (extWord & EXTWORD_ZC) > 0;
 
 //              if (repeats > 1) {
 //                  System.out.println("*** Repeat " + repeats + " ZeroCarry: " + zeroCarry);
 //              }
-          } else if (dst == -1) {
-              dst = currentSegment.read(dstAddress, mode, AccessType.READ);
-          }
-          
-          /* TODO: test add the loop here! */
-          while(repeats-- > 0) {
-              sr = readRegister(SR);
-              /* always clear carry before repeat */
-              if (repeats >= 0) {
-                  if (zeroCarry) {
-                      sr = sr & ~CARRY;
-                      //System.out.println("ZC => Cleared carry...");
-                  }
-                  //System.out.println("*** Repeat: " + repeats);
-              }
-              switch(op) {
-              case RRC:
-                  nxtCarry = (dst & 1) > 0 ? CARRY : 0;
-                  dst = dst >> 1;
-                  dst |= (sr & CARRY) > 0 ? mode.msb : 0;
-
-                  // Indicate write to memory!!
-                  write = true;
-                  // Set the next carry!
-                  writeRegister(SR, (sr & ~(CARRY | OVERFLOW)) | nxtCarry);
-                  break;
-              case SWPB:
-                  int tmp = dst;
-                  dst = ((tmp >> 8) & 0xff) + ((tmp << 8) & 0xff00);
-                  write = true;
-                  updateStatus = false;
-                  break;
-              case RRA:
-                  nxtCarry = (dst & 1) > 0 ? CARRY : 0;
-                  dst = (dst & mode.msb) | dst >> 1;
-                  write = true;
-                  writeRegister(SR, (sr & ~(CARRY | OVERFLOW)) | nxtCarry);
-                  break;
-              case SXT:
-                  // Extend Sign (bit 8-15 => same as bit 7)
-                  dst = (dst & 0x80) > 0 ? dst | 0xfff00 : dst & 0x7f;
-                  write = true;
-                  sr = sr & ~(CARRY | OVERFLOW);
-                  if (dst != 0) {
-                      sr |= CARRY;
-                  }
-                  writeRegister(SR, sr);
-                  break;
-              case PUSH:
-                  if (mode == AccessMode.WORD20) {
-                      sp = readRegister(SP) - 2;
-                      writeRegister(SP, sp);
-                  }
-                  currentSegment.write(sp, dst, mode);
-
-                  /* if REG or INDIRECT AUTOINC then add 2 cycles, otherwise 1 */
-                  cycles += (ad == AM_REG || ad == AM_IND_AUTOINC) ? 2 : 1;
-                  write = false;
-                  updateStatus = false;
-                  break;
-              case CALL:
-                  // store current PC on stack. (current PC points to next instr.)
-                  pc = readRegister(PC);
-
-                  //	memory[sp] = pc & 0xff;
-                  //	memory[sp + 1] = pc >> 8;
-                  currentSegment.write(sp, pc, AccessMode.WORD);
-                  writeRegister(PC, dst);
-
-                  /* Additional cycles: REG => 3, AM_IND_AUTO => 2, other => 1 */
-                  cycles += (ad == AM_REG) ? 3 : (ad == AM_IND_AUTOINC) ? 2 : 1;
-
-                  /* profiler will be called during calls */
-                  if (profiler != null) {
-                      profileCall(dst, pc);
-                  }
+    } else if (dst == -1) {
+        dst = currentSegment.read(dstAddress, mode, AccessType.READ);
+    }
 
-                  write = false;
-                  updateStatus = false;
-                  break;
-              case RETI:
-                  // Put Top of stack to Status DstRegister (TOS -> SR)
-                  servicedInterrupt = -1; /* needed before write to SR!!! */
-                  sp = readRegister(SP);
-                  sr = currentSegment.read(sp, AccessMode.WORD, AccessType.READ);
-                  writeRegister(SR, sr & 0x0fff);
-                  sp = sp + 2;
-                  //	writeRegister(SR, memory[sp++] + (memory[sp++] << 8));
-                  // TOS -> PC
-                  //	writeRegister(PC, memory[sp++] + (memory[sp++] << 8));
-                  writeRegister(PC, currentSegment.read(sp, AccessMode.WORD, AccessType.READ) | (sr & 0xf000) << 4);
-                  sp = sp + 2;
-                  writeRegister(SP, sp);
-                  write = false;
-                  updateStatus = false;
-
-                  cycles += 4;
-
-                  if (debugInterrupts) {
-                      System.out.println("### RETI at " + pc + " => " + reg[PC] +
-                              " SP after: " + reg[SP]);
-                  }        
-                  if (profiler != null) {
-                      profiler.profileRETI(cycles);
-                  }
 
-                  // This assumes that all interrupts will get back using RETI!
-                  handlePendingInterrupts();
+    /* Repeated RRC/RRA on a register (RRCX, RRUX, RRAX): fast forward
+     * all but the last repeat, which sets the status flags below */
+    if (repeats > 1 && (op == RRC || op == RRA)) {
+        int n = repeats - 1;
+        if (op == RRA) {
+            /* arithmetic shift - the carry is not shifted in */
+            int signed = (dst & mode.msb) != 0 ? dst | ~mode.mask : dst;
+            dst = (signed >> Math.min(n, 31)) & mode.mask;
+        } else if (zeroCarry) {
+            /* carry is cleared before each repeat => logical shift */
+            dst = n < mode.bitSize ? dst >> n : 0;
+        } else {
+            dst = rotateThroughCarry(dst, mode, n, false);
+        }
+        repeats = 1;
+    }
 
-                  break;
-              default:
-                  System.out.println("Error: Not implemented instruction:" +
-                          Utils.hex16(instruction));
-              }
-              if (repeats > 0) {
-                  dst &= mode.mask;
-              }
-          }
-      }
+    /* TODO: test add the loop here! */
+    while(repeats-- > 0) {
+        sr = readRegister(SR);
+        /* always clear carry before repeat */
+        if (repeats >= 0) {
+            if (zeroCarry) {
+                sr = sr & ~CARRY;
+                //System.out.println("ZC => Cleared carry...");
+            }
+            //System.out.println("*** Repeat: " + repeats);
+        }
+        switch(op) {
+        case RRC:
+            nxtCarry = (dst & 1) > 0 ? CARRY : 0;
+            dst = dst >> 1;
+            dst |= (sr & CARRY) > 0 ? mode.msb : 0;
+
+            // Indicate write to memory!!
+            write = true;
+            // Set the next carry!
+            writeRegister(SR, (sr & ~(CARRY | OVERFLOW)) | nxtCarry);
+            break;
+        case SWPB:
+            int tmp = dst;
+            dst = ((tmp >> 8) & 0xff) + ((tmp << 8) & 0xff00);
+            write = true;
+            updateStatus = false;
+            break;
+        case RRA:
+            nxtCarry = (dst & 1) > 0 ? CARRY : 0;
+            dst = (dst & mode.msb) | dst >> 1;
+            write = true;
+            writeRegister(SR, (sr & ~(CARRY | OVERFLOW)) | nxtCarry);
+            break;
+        case SXT:
+            // Extend Sign (bit 8-15 => same as bit 7)
+            dst = (dst & 0x80) > 0 ? dst | 0xfff00 : dst & 0x7f;
+            write = true;
+            sr = sr & ~(CARRY | OVERFLOW);
+            if (dst != 0) {
+                sr |= CARRY;
+            }
+            writeRegister(SR, sr);
+            break;
+        case PUSH:
+            if (mode == AccessMode.WORD20) {
+                sp = readRegister(SP) - 2;
+                writeRegister(SP, sp);
+            }
+            currentSegment.write(sp, dst, mode);
+
+            /* if REG or INDIRECT AUTOINC then add 2 cycles, otherwise 1 */
+            cycles += (ad == AM_REG || ad == AM_IND_AUTOINC) ? 2 : 1;
+            write = false;
+            updateStatus = false;
+            break;
+        case CALL:
+            // store current PC on stack. (current PC points to next instr.)
+            pc = readRegister(PC);
+
+            //	memory[sp] = pc & 0xff;
+            //	memory[sp + 1] = pc >> 8;
+            currentSegment.write(sp, pc, AccessMode.WORD);
+            writeRegister(PC, dst);
+
+            /* Additional cycles: REG => 3, AM_IND_AUTO => 2, other => 1 */
+            cycles += (ad == AM_REG) ? 3 : (ad == AM_IND_AUTOINC) ? 2 : 1;
+
+            /* profiler will be called during calls */
+            if (profiler != null) {
+                profileCall(dst, pc);
+            }
+
+            write = false;
+            updateStatus = false;
+            break;
+        case RETI:
+            // Put Top of stack to Status DstRegister (TOS -> SR)
+            servicedInterrupt = -1; /* needed before write to SR!!! */
+            sp = readRegister(SP);
+            sr = currentSegment.read(sp, AccessMode.WORD, AccessType.READ);
+            writeRegister(SR, sr & 0x0fff);
+            sp = sp + 2;
+            //	writeRegister(SR, memory[sp++] + (memory[sp++] << 8));
+            // TOS -> PC
+            //	writeRegister(PC, memory[sp++] + (memory[sp++] << 8));
+            writeRegister(PC, currentSegment.read(sp, AccessMode.WORD, AccessType.READ) | (sr & 0xf000) << 4);
+            sp = sp + 2;
+            writeRegister(SP, sp);
+            write = false;
+            updateStatus = false;
+
+            cycles += 4;
+
+            if (debugInterrupts) {
+                System.out.println("### RETI at " + pc + " => " + reg[PC] +
+                        " SP after: " + reg[SP]);
+            }        
+            if (profiler != null) {
+                profiler.profileRETI(cycles);
+            }
+
+            // This assumes that all interrupts will get back using RETI!
+            handlePendingInterrupts();
+
+            break;
+        default:
+            System.out.println("Error: Not implemented instruction:" +
+                    Utils.hex16(instruction));
+        }
+        if (repeats > 0) {
+            dst &= mode.mask;
+        }
     }
-    break;
-    // Jump instructions
-    case 2:
-    case 3:
-      // 10 bits for address for these => 0x00fc => remove 2 bits
-      int jmpOffset = instruction & 0x3ff;
-      jmpOffset = (jmpOffset & 0x200) == 0 ?
+    completeInstruction(dst, mode, write, updateStatus, dstRegMode, dstRegister, dstAddress);
+  }
+
+  // -------------------------------------------------------------------
+  //  Jump instructions
+  // -------------------------------------------------------------------
+  private void executeJump(int instruction, int pc) throws EmulationException {
+    int sr;
+    // 10 bits for address for these => 0x00fc => remove 2 bits
+    int jmpOffset = instruction & 0x3ff;
+    jmpOffset = (jmpOffset & 0x200) == 0 ?
 	2 * jmpOffset : -(2 * (0x200 - (jmpOffset & 0x1ff)));
-      boolean jump = false;
+    boolean jump = false;
 
-      // All jump takes two cycles
-      cycles += 2;
-      sr = readRegister(SR);
-      switch(instruction & 0xfc00) {
-      case JNE:
+    // All jump takes two cycles
+    cycles += 2;
+    sr = readRegister(SR);
+    switch(instruction & 0xfc00) {
+    case JNE:
 	jump = (sr & ZERO) == 0;
 	break;
-      case JEQ:
+    case JEQ:
 	jump = (sr & ZERO) > 0;
 	break;
-      case JNC:
+    case JNC:
 	jump = (sr & CARRY) == 0;
 	break;
-      case JC:
+    case JC:
 	jump = (sr & CARRY) > 0;
 	break;
-      case JN:
+    case JN:
 	jump = (sr & NEGATIVE) > 0;
 	break;
-      case JGE:
+    case JGE:
 	jump = (sr & NEGATIVE) > 0 == (sr & OVERFLOW) > 0;
 	break;
-      case JL:
+    case JL:
 	jump = (sr & NEGATIVE) > 0 != (sr & OVERFLOW) > 0;
 	break;
-      case JMP:
+    case JMP:
 	jump = true;
 	break;
-      default:
-        logw(WarningType.EMULATION_ERROR, "Not implemented instruction: #" + Utils.binary16(instruction));
-      }
-      // Perform the Jump
-      if (jump) {
-        writeRegister(PC, pc + jmpOffset);
-      }
-      updateStatus = false;
-      break;
     default:
-      // ---------------------------------------------------------------
-      // Double operand instructions!
-      // ---------------------------------------------------------------
-      dstRegister = instruction & 0xf;
-      int srcRegister = (instruction >> 8) & 0xf;
-      int as = (instruction >> 4) & 3;
-
-      // AD: 0 => register direct, 1 => register index, e.g. X(Rn)
-      dstRegMode = ((instruction >> 7) & 1) == 0;
-      dstAddress = -1;
-      int srcAddress = -1;
-      src = 0;
-
-      // Some CGs should be handled as registry reads only...
-      if ((srcRegister == CG1 && as > AM_INDEX) || srcRegister == CG2) {
-        src = CREG_VALUES[srcRegister - 2][as];
-        src &= mode.mask;
-        cycles += dstRegMode ? 1 : 4;
-      } else {
+      logw(WarningType.EMULATION_ERROR, "Not implemented instruction: #" + Utils.binary16(instruction));
+    }
+    // Perform the Jump
+    if (jump) {
+      writeRegister(PC, pc + jmpOffset);
+    }
+  }
+
+  // -------------------------------------------------------------------
+  //  Double operand instructions
+  // -------------------------------------------------------------------
+  private void executeDoubleOperand(int instruction, int pc) throws EmulationException {
+    /* Extension word fields - all zero when there is no extension word */
+    int ext3_0 = extWord & 0xf; /* bit 3 - 0 - either repeat count or dest 19-16 */
+    int extSrc = ((extWord >> 7) & 0xf) << 16; /* bit 10 - 7 - src 19-16 */
+    int extDst = ext3_0 << 16;
+    // Repeat count in register and 20 bit data length, see executeSingleOperand()
+    boolean repeatsInDstReg = (extWord & 0x80) == 0x80;
+    boolean wordx20 = extWord != 0 && (extWord & 0x40) == 0;
+    boolean word = (instruction & 0x40) == 0;
+
+    /* NOTE: there is a mode when wordx20 = true & word = true that is resereved */
+    AccessMode mode = wordx20 ? AccessMode.WORD20 : (word ? AccessMode.WORD : AccessMode.BYTE);
+
+    int dstRegister = instruction & 0xf;
+    int dstAddress;
+    boolean dstRegMode;
+    int dst = -1;
+    int src;
+    int sr = 0;
+    int rval = 0; /* register value */
+    int repeats = 1; /* msp430X can repeat some instructions in some cases */
+    boolean zeroCarry = false; /* msp430X can zero carry in repeats */
+    boolean write = false;
+    boolean updateStatus = true;
+
+    dstRegister = instruction & 0xf;
+    int srcRegister = (instruction >> 8) & 0xf;
+    int as = (instruction >> 4) & 3;
+
+    // AD: 0 => register direct, 1 => register index, e.g. X(Rn)
+    dstRegMode = ((instruction >> 7) & 1) == 0;
+    dstAddress = -1;
+    int srcAddress = -1;
+    src = 0;
+
+    // Some CGs should be handled as registry reads only...
+    if ((srcRegister == CG1 && as > AM_INDEX) || srcRegister == CG2) {
+      src = CREG_VALUES[srcRegister - 2][as];
+      src &= mode.mask;
+      cycles += dstRegMode ? 1 : 4;
+    } else {
 	switch(as) {
 	  // Operand in register!
 	case AM_REG:
@@ -1822,20 +2093,20 @@ public class MSP430Core extends Chip implements MSP430Constants {
 	  src &= mode.mask;
 	  cycles += dstRegMode ? 1 : 4;
 	  /* add cycle if destination register = PC */
-          if (dstRegister == PC) cycles++;
-          
-          if (dstRegMode) {
-              /* possible to have repeat, etc... */
-              /* TODO: decode the # also */
+        if (dstRegister == PC) cycles++;
+        
+        if (dstRegMode) {
+            /* possible to have repeat, etc... */
+            /* TODO: decode the # also */
 	      if (repeatsInDstReg) {
 		  repeats = 1 + readRegister(ext3_0);
 	      } else {
 		  repeats = 1 + ext3_0;
 	      }
 
-              zeroCarry = (extWord & EXTWORD_ZC) > 0;
-          }
-          
+            zeroCarry = (extWord & EXTWORD_ZC) > 0;
+        }
+        
 	  break;
 	case AM_INDEX: {
 	  // Indexed if reg != PC & CG1/CG2 - will PC be incremented?
@@ -1915,79 +2186,79 @@ public class MSP430Core extends Chip implements MSP430Constants {
 		}
 		break;
 	}
+    }
+
+    // Perform the read of destination!
+    if (dstRegMode) {
+      if (op != MOV) {
+        dst = readRegister(dstRegister);
+        dst &= mode.mask;
       }
+    } else {
+      // PC Could have changed above!
+      pc = readRegister(PC);
 
-      // Perform the read of destination!
-      if (dstRegMode) {
-        if (op != MOV) {
-          dst = readRegister(dstRegister);
-          dst &= mode.mask;
-        }
+      if (dstRegister == 2) {
+        /* absolute mode */
+        dstAddress = currentSegment.read(pc, AccessMode.WORD, AccessType.READ); //memory[pc] + (memory[pc + 1] << 8);
+        dstAddress += extDst;
       } else {
-        // PC Could have changed above!
-        pc = readRegister(PC);
-
-        if (dstRegister == 2) {
-          /* absolute mode */
-          dstAddress = currentSegment.read(pc, AccessMode.WORD, AccessType.READ); //memory[pc] + (memory[pc + 1] << 8);
+        // CG here - probably not!???
+        rval = readRegister(dstRegister);
+
+        if (extWord != 0) {
+          /* MSP430X Instruction With Indexed Mode */
+          /*
+           * TODO XXX There are MSP430X instructions without extension
+           * words!
+           */
+          /*
+           * "The operand address is the sum of the 20-bit CPU register
+           * content and the 20-bit index."
+           */
+          dstAddress = currentSegment.read(pc, AccessMode.WORD, AccessType.READ);
           dstAddress += extDst;
+          dstAddress += rval;
+          dstAddress &= 0xfffff;
         } else {
-          // CG here - probably not!???
-          rval = readRegister(dstRegister);
-
-          if (extWord != 0) {
-            /* MSP430X Instruction With Indexed Mode */
+          if (rval <= 0xffff) {
+            /* Indexed Mode in Lower 64-KB Memory */
             /*
-             * TODO XXX There are MSP430X instructions without extension
-             * words!
+             * ".. the calculated memory address bits 19:16 are cleared
+             * after the addition of the CPU register Rn and the signed
+             * 16-bit index."
              */
+            dstAddress = convertTwoComplement16(currentSegment.read(pc, AccessMode.WORD, AccessType.READ));
+            dstAddress += rval;
+            dstAddress &= 0xffff;
+          } else {
+            /* MSP430 Instruction With Indexed Mode in Upper Memory */
             /*
-             * "The operand address is the sum of the 20-bit CPU register
-             * content and the 20-bit index."
+             * "The operand may be located in memory in the range Rn +-32
+             * KB, because the index, X, is a signed 16-bit value"
              */
-            dstAddress = currentSegment.read(pc, AccessMode.WORD, AccessType.READ);
-            dstAddress += extDst;
+            dstAddress = convertTwoComplement16(currentSegment.read(pc, AccessMode.WORD, AccessType.READ));
             dstAddress += rval;
             dstAddress &= 0xfffff;
-          } else {
-            if (rval <= 0xffff) {
-              /* Indexed Mode in Lower 64-KB Memory */
-              /*
-               * ".. the calculated memory address bits 19:16 are cleared
-               * after the addition of the CPU register Rn and the signed
-               * 16-bit index."
-               */
-              dstAddress = convertTwoComplement16(currentSegment.read(pc, AccessMode.WORD, AccessType.READ));
-              dstAddress += rval;
-              dstAddress &= 0xffff;
-            } else {
-              /* MSP430 Instruction With Indexed Mode in Upper Memory */
-              /*
-               * "The operand may be located in memory in the range Rn +-32
-               * KB, because the index, X, is a signed 16-bit value"
-               */
-              dstAddress = convertTwoComplement16(currentSegment.read(pc, AccessMode.WORD, AccessType.READ));
-              dstAddress += rval;
-              dstAddress &= 0xfffff;
-            }
           }
         }
+      }
 
-        if (op != MOV) {
-        	dst = currentSegment.read(dstAddress, mode, AccessType.READ);
-        }
-        pc += 2;
-        incRegister(PC, 2);
+      if (op != MOV) {
+      	dst = currentSegment.read(dstAddress, mode, AccessType.READ);
       }
+      pc += 2;
+      incRegister(PC, 2);
+    }
 
-      // **** Perform the read...
-      if (srcAddress != -1) {
+    // **** Perform the read...
+    if (srcAddress != -1) {
 
 //        if (srcAddress  > 0xffff) {
 //            System.out.println("SrcAddress is: " + Utils.hex20(srcAddress));
 //        }
 //	srcAddress = srcAddress & 0xffff;
-        src = currentSegment.read(srcAddress, mode, AccessType.READ);
+      src = currentSegment.read(srcAddress, mode, AccessType.READ);
 
 //	src = currentSegment.read(srcAddress, word ? AccessMode.WORD : AccessMode.BYTE, AccessType.READ);
 
@@ -1995,191 +2266,191 @@ public class MSP430Core extends Chip implements MSP430Constants {
 	// 	    System.out.println("Reading from " + getAddressAsString(srcAddress) +
 	// 			       " => " + src);
 	// 	  }
-      }
+    }
 
-      /* TODO: test add the loop here! */
-      while(repeats-- > 0) {
-          sr = readRegister(SR);
-          if (repeats >= 0) {
-              if (zeroCarry) {
-                  sr = sr & ~CARRY;
-                  //System.out.println("ZC => Cleared carry...");
-              }
-              //System.out.println("*** Repeat: " + repeats);
-          }
+    /* Repeated ADD/ADDC of a register to itself (RLAX, RLCX): fast
+     * forward all but the last repeat, which sets the status flags below.
+     * Not used for the reserved data length (wordx20 and word) */
+    if (repeats > 1 && srcRegister == dstRegister && (op == ADD || op == ADDC)
+        && !(word && wordx20)) {
+        int n = repeats - 1;
+        if (op == ADD || zeroCarry) {
+            /* no carry is added => logical shift */
+            dst = n < mode.bitSize ? (dst << n) & mode.mask : 0;
+        } else {
+            dst = rotateThroughCarry(dst, mode, n, true);
+        }
+        src = dst;
+        repeats = 1;
+    }
 
-          int tmp = 0;
-          int tmpAdd = 0;
-          switch (op) {
-          case MOV: // MOV
-              dst = src;
-              write = true;
-              updateStatus = false;
+    /* TODO: test add the loop here! */
+    while(repeats-- > 0) {
+        sr = readRegister(SR);
+        if (repeats >= 0) {
+            if (zeroCarry) {
+                sr = sr & ~CARRY;
+                //System.out.println("ZC => Cleared carry...");
+            }
+            //System.out.println("*** Repeat: " + repeats);
+        }
 
-              if (instruction == RETURN && profiler != null) {
-                  profiler.profileReturn(cpuCycles);
-              }
+        int tmp = 0;
+        int tmpAdd = 0;
+        switch (op) {
+        case MOV: // MOV
+            dst = src;
+            write = true;
+            updateStatus = false;
 
-              break;
-              // FIX THIS!!! - make SUB a separate operation so that
-              // it is clear that overflow flag is correct...
-          case SUB:
-              // Carry always 1 with SUB
-              tmpAdd = 1;
-          case SUBC:
-              // Both sub and subc does one complement (not) + 1 (or carry)
-              src = (src ^ 0xffff) & 0xffff;
-          case ADDC: // ADDC
-              if (op == ADDC || op == SUBC)
-                  tmpAdd = ((sr & CARRY) > 0) ? 1 : 0;
-          case ADD: // ADD
-              // Tmp gives zero if same sign! if sign is different after -> overf.
-              sr &= ~(OVERFLOW | CARRY);
+            if (instruction == RETURN && profiler != null) {
+                profiler.profileReturn(cpuCycles);
+            }
+
+            break;
+            // FIX THIS!!! - make SUB a separate operation so that
+            // it is clear that overflow flag is correct...
+        case SUB:
+            // Carry always 1 with SUB
+            tmpAdd = 1;
+        case SUBC:
+            // Both sub and subc does one complement (not) + 1 (or carry)
+            src = (src ^ 0xffff) & 0xffff;
+        case ADDC: // ADDC
+            if (op == ADDC || op == SUBC)
+                tmpAdd = ((sr & CARRY) > 0) ? 1 : 0;
+        case ADD: // ADD
+            // Tmp gives zero if same sign! if sign is different after -> overf.
+            sr &= ~(OVERFLOW | CARRY);
 	      int b = word ? 0x8000 : (wordx20 ? 0x80000 : 0x80);
-              tmp = (src ^ dst) & b;
-              // Includes carry if carry should be added...
+            tmp = (src ^ dst) & b;
+            // Includes carry if carry should be added...
 
-              dst = dst + src + tmpAdd;
+            dst = dst + src + tmpAdd;
 	      int b2 = word ? 0xffff : (wordx20 ? 0xfffff : 0xff);
-              if (dst > b2) {
-                  sr |= CARRY;
-              }
-              // If tmp == 0 and currenly not the same sign for src & dst
-              if (tmp == 0 && ((src ^ dst) & b) != 0) {
-                  sr |= OVERFLOW;
-                  // 	    System.out.println("OVERFLOW - ADD/SUB " + Utils.hex16(src)
-                  // 			       + " + " + Utils.hex16(tmpDst));
-              }
+            if (dst > b2) {
+                sr |= CARRY;
+            }
+            // If tmp == 0 and currenly not the same sign for src & dst
+            if (tmp == 0 && ((src ^ dst) & b) != 0) {
+                sr |= OVERFLOW;
+                // 	    System.out.println("OVERFLOW - ADD/SUB " + Utils.hex16(src)
+                // 			       + " + " + Utils.hex16(tmpDst));
+            }
 
-              // 	  System.out.println(Utils.hex16(dst) + " [SR=" +
-              // 			     Utils.hex16(reg[SR]) + "]");
-              writeRegister(SR, sr);
-              write = true;
-              break;
-          case CMP: // CMP
-              // Set CARRY if A >= B, and it's clear if A < B
+            // 	  System.out.println(Utils.hex16(dst) + " [SR=" +
+            // 			     Utils.hex16(reg[SR]) + "]");
+            writeRegister(SR, sr);
+            write = true;
+            break;
+        case CMP: // CMP
+            // Set CARRY if A >= B, and it's clear if A < B
 	      b = mode.msb;
-              sr = (sr & ~(CARRY | OVERFLOW)) | (dst >= src ? CARRY : 0);
+            sr = (sr & ~(CARRY | OVERFLOW)) | (dst >= src ? CARRY : 0);
 
-              tmp = (dst - src);
+            tmp = (dst - src);
 
-              if (((src ^ tmp) & b) == 0 && (((src ^ dst) & b) != 0)) {
-                  sr |= OVERFLOW;
-              }
-              writeRegister(SR, sr);
-              // Must set dst to the result to set the rest of the status register
-              dst = tmp;
-              break;
-          case DADD: // DADD
-              if (DEBUG)
-                  log("DADD: Decimal add executed - result error!!!");
-              // Decimal add... this is wrong... each nibble is 0-9...
-              // So this has to be reimplemented...
-              dst = dst + src + ((sr & CARRY) > 0 ? 1 : 0);
-              write = true;
-              break;
-          case BIT: // BIT
-              dst = src & dst;
-              // Clear overflow and carry!
-              sr = sr & ~(CARRY | OVERFLOW);
-              // Set carry if result is non-zero!
-              if (dst != 0) {
-                  sr |= CARRY;
-              }
-              writeRegister(SR, sr);
-              break;
-          case BIC: // BIC
-              // No status reg change
-              // 	  System.out.println("BIC: =>" + Utils.hex16(dstAddress) + " => "
-              // 			     + Utils.hex16(dst) + " AS: " + as +
-              // 			     " sReg: " + srcRegister + " => " + src +
-              // 			     " dReg: " + dstRegister + " => " + dst);
-              dst = (~src) & dst;
-
-              write = true;
-              updateStatus = false;
-              break;
-          case BIS: // BIS
-              dst = src | dst;
-              write = true;
-              updateStatus = false;
-              break;
-          case XOR: // XOR
-              sr = sr & ~(CARRY | OVERFLOW);
+            if (((src ^ tmp) & b) == 0 && (((src ^ dst) & b) != 0)) {
+                sr |= OVERFLOW;
+            }
+            writeRegister(SR, sr);
+            // Must set dst to the result to set the rest of the status register
+            dst = tmp;
+            break;
+        case DADD: // DADD
+            if (DEBUG)
+                log("DADD: Decimal add executed - result error!!!");
+            // Decimal add... this is wrong... each nibble is 0-9...
+            // So this has to be reimplemented...
+            dst = dst + src + ((sr & CARRY) > 0 ? 1 : 0);
+            write = true;
+            break;
+        case BIT: // BIT
+            dst = src & dst;
+            // Clear overflow and carry!
+            sr = sr & ~(CARRY | OVERFLOW);
+            // Set carry if result is non-zero!
+            if (dst != 0) {
+                sr |= CARRY;
+            }
+            writeRegister(SR, sr);
+            break;
+        case BIC: // BIC
+            // No status reg change
+            // 	  System.out.println("BIC: =>" + Utils.hex16(dstAddress) + " => "
+            // 			     + Utils.hex16(dst) + " AS: " + as +
+            // 			     " sReg: " + srcRegister + " => " + src +
+            // 			     " dReg: " + dstRegister + " => " + dst);
+            dst = (~src) & dst;
+
+            write = true;
+            updateStatus = false;
+            break;
+        case BIS: // BIS
+            dst = src | dst;
+            write = true;
+            updateStatus = false;
+            break;
+        case XOR: // XOR
+            sr = sr & ~(CARRY | OVERFLOW);
 	      b = mode.msb; //word ? 0x8000 : (wordx20 ? 0x80000 : 0x80);
-              if ((src & b) != 0 && (dst & b) != 0) {
-                  sr |= OVERFLOW;
-              }
-              dst = src ^ dst;
-              if (dst != 0) {
-                  sr |= CARRY;
-              }
-              write = true;
-              writeRegister(SR, sr);
-              break;
-          case AND: // AND
-              sr = sr & ~(CARRY | OVERFLOW);
-              dst = src & dst;
-              if (dst != 0) {
-                  sr |= CARRY;
-              }
-              write = true;
-              writeRegister(SR, sr);
-              break;
-          default:
-              String address = getAddressAsString(pc);
-              logw(WarningType.EMULATION_ERROR, 
-                      "DoubleOperand not implemented: op = " + Integer.toHexString(op) + " at " + address);
-              if (EXCEPTION_ON_BAD_OPERATION) {
-                  EmulationException ex = new EmulationException("Bad operation: $" + Integer.toHexString(op) + " at $" + address);
-                  ex.initCause(new Throwable("" + pc));
-                  throw ex;
-              }
-          } /* after switch(op) */
-          /* If we have the same register as dst and src then copy here to get input
-           * in next loop
-           */
-          if (repeats > 0 && srcRegister == dstRegister) {
-              src = dst;
-              src &= mode.mask;
-              dst &= mode.mask;
-          }
-      }
-    }
-    
-    /* Processing after each instruction */
-    dst &= mode.mask;
-    if (write) {
-      if (dstRegMode) {
-	writeRegister(dstRegister, dst);
-      } else {
-        currentSegment.write(dstAddress, dst, mode);
-      }
-    }
-    if (updateStatus) {
-      // Update the Zero and Negative status!
-      // Carry and overflow must be set separately!
-      sr = readRegister(SR);
-      sr = (sr & ~(ZERO | NEGATIVE)) |
-	((dst == 0) ? ZERO : 0) | ((dst & mode.msb) > 0 ? NEGATIVE : 0);
-      writeRegister(SR, sr);
-    }
-
-    //System.out.println("CYCLES AFTER: " + cycles);
-
-    // -------------------------------------------------------------------
-    // Event processing (when CPU is awake)
-    // -------------------------------------------------------------------
-    while (cycles >= nextEventCycles) {
-      executeEvents();
+            if ((src & b) != 0 && (dst & b) != 0) {
+                sr |= OVERFLOW;
+            }
+            dst = src ^ dst;
+            if (dst != 0) {
+                sr |= CARRY;
+            }
+            write = true;
+            writeRegister(SR, sr);
+            break;
+        case AND: // AND
+            sr = sr & ~(CARRY | OVERFLOW);
+            dst = src & dst;
+            if (dst != 0) {
+                sr |= CARRY;
+            }
+            write = true;
+            writeRegister(SR, sr);
+            break;
+        default:
+            String address = getAddressAsString(pc);
+            logw(WarningType.EMULATION_ERROR, 
+                    "DoubleOperand not implemented: op = " + Integer.toHexString(op) + " at " + address);
+            if (EXCEPTION_ON_BAD_OPERATION) {
+                EmulationException ex = new EmulationException("Bad operation: $" + Integer.toHexString(op) + " at $" + address);
+                ex.initCause(new Throwable("" + pc));
+                throw ex;
+            }
+        } /* after switch(op) */
+        /* If we have the same register as dst and src then copy here to get input
+         * in next loop
+         */
+        if (repeats > 0 && srcRegister == dstRegister) {
+            src = dst;
+            src &= mode.mask;
+            dst &= mode.mask;
+        }
     }
-    
-    cpuCycles += cycles - startCycles;
-    
-    /* return the address that was executed */
-    return pcBefore;
+    completeInstruction(dst, mode, write, updateStatus, dstRegMode, dstRegister, dstAddress);
   }
   
+  /* Rotates a register value through the carry count times as repeated
+   * RRC (or RLC when left) would and updates the carry in SR */
+  private int rotateThroughCarry(int value, AccessMode mode, int count, boolean left) {
+    int sr = readRegister(SR);
+    int bits = mode.bitSize + 1;
+    /* the carry is the highest bit of the rotated value */
+    long v = value | ((sr & CARRY) != 0 ? 1L << mode.bitSize : 0);
+    count %= bits;
+    if (left) {
+      count = (bits - count) % bits;
+    }
+    v = ((v >>> count) | (v << (bits - count))) & ((1L << bits) - 1);
+    writeRegister(SR, (sr & ~CARRY) | ((v >> mode.bitSize) != 0 ? CARRY : 0));
+    return (int) v & mode.mask;
+  }
+
   private static int convertTwoComplement16(int index) {
 	  if(index > 0x8000) {
 		  return -(0x10000 - index);
@@ -2197,10 +2468,13 @@ public class MSP430Core extends Chip implements MSP430Constants {
     return MODE_MAX;
   }
 
-  MapEntry getFunction(MapTable map, int address) {
-    MapEntry function = new MapEntry(MapEntry.TYPE.function, address, 0,
-        "fkn at $" + getAddressAsString(address), null, true);
-    map.setEntry(function);
+  MapEntry getFunction(int address) {
+    MapEntry function = unnamedFunctions.get(address);
+    if (function == null) {
+      function = new MapEntry(MapEntry.TYPE.function, address, 0,
+          "fkn at $" + getAddressAsString(address), null, true);
+      unnamedFunctions.put(address, function);
+    }
     return function;
   }
 
@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2026, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ * This file is part of MSPSim.
+ *
+ * -----------------------------------------------------------------
+ * MemoryWatchRange
+ *
+ * Created : 19 oct 2026
+ */
+
+package se.sics.mspsim.core;
+import se.sics.mspsim.core.Memory.AccessMode;
+import se.sics.mspsim.core.Memory.AccessType;
+
+/**
+ * A watchpoint covering an address range. The monitor is notified about
+ * accesses of the selected types that overlap the range and, when a value
+ * mask is given, only when (value & valueMask) == value. The value of a
+ * read is not known until the read has been made (reading it in advance
+ * would trigger side effects in I/O registers) so a range with a value
+ * filter only gets notifyReadAfter for reads.
+ *
+ * The range is registered with each memory segment it covers, so a large
+ * buffer costs one registration per 256 byte page and pages outside any
+ * watch are not affected at all.
+ */
+public class MemoryWatchRange {
+
+    public static final int READ = accessBit(AccessType.READ);
+    public static final int EXECUTE = accessBit(AccessType.EXECUTE);
+    public static final int ARG = accessBit(AccessType.ARG);
+    public static final int WRITE = accessBit(AccessType.WRITE);
+    public static final int ALL = READ | EXECUTE | ARG | WRITE;
+
+    private final int start;
+    private final int end;
+    private final int access;
+    private final int value;
+    private final int valueMask;
+    private final MemoryMonitor monitor;
+
+    public MemoryWatchRange(int start, int length, int access, MemoryMonitor monitor) {
+        this(start, length, access, 0, 0, monitor);
+    }
+
+    public MemoryWatchRange(int start, int length, int access, int value, int valueMask,
+            MemoryMonitor monitor) {
+        if (length < 1) {
+            throw new IllegalArgumentException("illegal watch length: " + length);
+        }
+        if (monitor == null) {
+            throw new NullPointerException("monitor");
+        }
+        this.start = start;
+        this.end = start + length;
+        this.access = access;
+        this.value = value & valueMask;
+        this.valueMask = valueMask;
+        this.monitor = monitor;
+    }
+
+    public static int accessBit(AccessType type) {
+        return 1 << type.ordinal();
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    public int getLength() {
+        return end - start;
+    }
+
+    public int getAccess() {
+        return access;
+    }
+
+    public boolean hasValueFilter() {
+        return valueMask != 0;
+    }
+
+    public MemoryMonitor getMonitor() {
+        return monitor;
+    }
+
+    public boolean contains(int address) {
+        return address >= start && address < end;
+    }
+
+    /* Called by the watched memory for every access to a covered segment */
+    boolean matches(int address, AccessMode mode, int accessBit) {
+        return (access & accessBit) != 0
+            && address < end && address + mode.bytes > start;
+    }
+
+    boolean matchesValue(int data) {
+        return (data & valueMask) == value;
+    }
+
+    public String info() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('$').append(Integer.toHexString(start));
+        if (end - start > 1) {
+            sb.append(" - $").append(Integer.toHexString(end - 1));
+        }
+        sb.append(' ');
+        if ((access & READ) != 0) sb.append('r');
+        if ((access & WRITE) != 0) sb.append('w');
+        if ((access & (EXECUTE | ARG)) != 0) sb.append('x');
+        if (valueMask != 0) {
+            sb.append(" value $").append(Integer.toHexString(value))
+              .append(" mask $").append(Integer.toHexString(valueMask));
+        }
+        return sb.toString();
+    }
+
+    public String toString() {
+        return "MemoryWatchRange[" + info() + ']';
+    }
+}
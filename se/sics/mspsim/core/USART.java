@@ -81,6 +81,7 @@ public class USART extends IOUnit implements SFRModule, DMATrigger, USARTSource
   public static final int UTCTL_URXSE = 0x08;
 
   private USARTListener usartListener;
+  private volatile USARTStream[] streams;
 
   private int utxifg;
   private int urxifg;
@@ -221,6 +222,12 @@ public class USART extends IOUnit implements SFRModule, DMATrigger, USARTSource
       usartListener = USARTListener.Proxy.INSTANCE.remove(usartListener, listener);
   }
 
+  public synchronized USARTStream openStream() {
+    USARTStream stream = new USARTStream(cpu, this);
+    streams = USARTStream.add(streams, stream);
+    return stream;
+  }
+
   // Only 8 bits / read!
   public void write(int address, int data, boolean word, long cycles) {
     address = address - offset;
@@ -374,6 +381,13 @@ public class USART extends IOUnit implements SFRModule, DMATrigger, USARTSource
   }
 
   private void handleTransmit(long cycles) {
+    if (transmitting && USARTStream.isOutputFull(streams)) {
+      /* host is not reading - hold the transmitter for another byte time */
+      nextTXReady = cycles + tickPerByte + 1;
+      cpu.scheduleCycleEvent(txTrigger, nextTXReady);
+      return;
+    }
+
     if (cpu.getMode() >= MSP430Core.MODE_LPM3) {
       logw(WarningType.EXECUTION, "Warning: USART transmission during LPM!!! " + nextTXByte);
     }
@@ -11,5 +11,9 @@ public interface USARTSource {
     /* for input into this UART */
     public boolean isReceiveFlagCleared();
     public void byteReceived(int b);
+
+    /* for bulk non-blocking transfers to and from this UART - opens a new
+     * stream for one consumer, to be closed with USARTStream.close() */
+    public USARTStream openStream();
     
 }
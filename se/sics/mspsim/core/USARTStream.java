@@ -0,0 +1,278 @@
+/**
+ * Copyright (c) 2026, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ * This file is part of MSPSim.
+ *
+ * -----------------------------------------------------------------
+ * USARTStream
+ *
+ * Created : 19 oct 2026
+ */
+
+package se.sics.mspsim.core;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking bulk byte stream to and from a USART/USCI.
+ *
+ * Host threads write() data to be received by the MCU and read() the data
+ * transmitted by the MCU. Input is fed into the UART by the emulation
+ * thread one byte at a time whenever its receive flag is cleared. When
+ * the output queue is full the UART holds its transmitter, as with
+ * hardware flow control, until the host has read more data.
+ *
+ * Each consumer opens its own stream with USARTSource.openStream() and
+ * gets a copy of all MCU output. A stream has a single owner and only one
+ * stream listener.
+ */
+public class USARTStream implements USARTListener, StateChangeListener {
+
+  public interface StreamListener {
+    /* Called from the emulation thread when output data has become
+     * available or when input space has been freed */
+    public void streamReady(USARTStream stream);
+  }
+
+  public static final int DEFAULT_CAPACITY = 4096;
+
+  private final MSP430Core cpu;
+  private final USARTSource source;
+
+  private final byte[] input;
+  private int inputStart;
+  private int inputCount;
+
+  private final byte[] output;
+  private int outputStart;
+  private int outputCount;
+
+  private long bytesReceived;
+  private long bytesTransmitted;
+  private long bytesDropped;
+
+  private volatile StreamListener streamListener;
+  private volatile boolean isClosed;
+
+  /* Feeds new input from the emulation thread */
+  private final AtomicBoolean isKickPending = new AtomicBoolean();
+  private final Runnable kick = new Runnable() {
+    public void run() {
+      isKickPending.set(false);
+      feed();
+    }
+  };
+
+  public USARTStream(MSP430Core cpu, USARTSource source) {
+    this(cpu, source, DEFAULT_CAPACITY, DEFAULT_CAPACITY);
+  }
+
+  public USARTStream(MSP430Core cpu, USARTSource source, int inputCapacity, int outputCapacity) {
+    if (inputCapacity <= 0 || outputCapacity <= 0) {
+      throw new IllegalArgumentException("illegal capacity");
+    }
+    this.cpu = cpu;
+    this.source = source;
+    this.input = new byte[inputCapacity];
+    this.output = new byte[outputCapacity];
+    source.addUSARTListener(this);
+    source.addStateChangeListener(this);
+  }
+
+  public USARTSource getSource() {
+    return source;
+  }
+
+  public synchronized void setStreamListener(StreamListener listener) {
+    if (listener != null && streamListener != null && streamListener != listener) {
+      throw new IllegalStateException("stream already has a listener");
+    }
+    this.streamListener = listener;
+  }
+
+  /**
+   * Queues as many bytes as fit from the buffer for reception by the MCU.
+   * Returns the number of bytes queued, which is 0 when the input queue
+   * is full.
+   */
+  public int write(ByteBuffer src) {
+    int n;
+    synchronized (this) {
+      n = Math.min(src.remaining(), input.length - inputCount);
+      int pos = (inputStart + inputCount) % input.length;
+      int len = Math.min(n, input.length - pos);
+      src.get(input, pos, len);
+      src.get(input, 0, n - len);
+      inputCount += n;
+    }
+    if (n > 0 && isKickPending.compareAndSet(false, true)) {
+      cpu.invokeLater(kick);
+    }
+    return n;
+  }
+
+  /**
+   * Moves as many bytes transmitted by the MCU as fit into the buffer.
+   * Returns the number of bytes read, which is 0 when no data is queued.
+   */
+  public int read(ByteBuffer dst) {
+    synchronized (this) {
+      int n = Math.min(dst.remaining(), outputCount);
+      int len = Math.min(n, output.length - outputStart);
+      dst.put(output, outputStart, len);
+      dst.put(output, 0, n - len);
+      outputStart = (outputStart + n) % output.length;
+      outputCount -= n;
+      return n;
+    }
+  }
+
+  /* Number of bytes queued for the MCU but not yet received by it */
+  public synchronized int getInputCount() {
+    return inputCount;
+  }
+
+  public synchronized int getInputSpace() {
+    return input.length - inputCount;
+  }
+
+  /* Number of bytes transmitted by the MCU and not yet read */
+  public synchronized int available() {
+    return outputCount;
+  }
+
+  public synchronized boolean isOutputFull() {
+    return outputCount == output.length && !isClosed;
+  }
+
+  public boolean isClosed() {
+    return isClosed;
+  }
+
+  public synchronized void clear() {
+    inputStart = inputCount = 0;
+    outputStart = outputCount = 0;
+  }
+
+  public long getBytesReceived() {
+    return bytesReceived;
+  }
+
+  public long getBytesTransmitted() {
+    return bytesTransmitted;
+  }
+
+  /* Bytes transmitted by the MCU while the output queue was full */
+  public long getBytesDropped() {
+    return bytesDropped;
+  }
+
+  /* Detaches the stream from the UART. Get a new stream to reopen. */
+  public void close() {
+    isClosed = true;
+    source.removeUSARTListener(this);
+    source.removeStateChangeListener(this);
+    clear();
+  }
+
+  /* Adds a stream to the open streams of a UART and drops closed ones */
+  static USARTStream[] add(USARTStream[] streams, USARTStream stream) {
+    int n = 0;
+    USARTStream[] tmp = new USARTStream[(streams == null ? 0 : streams.length) + 1];
+    if (streams != null) {
+      for (USARTStream s : streams) {
+        if (!s.isClosed()) {
+          tmp[n++] = s;
+        }
+      }
+    }
+    tmp[n++] = stream;
+    return Arrays.copyOf(tmp, n);
+  }
+
+  /* True if the UART should hold its transmitter for any of its streams */
+  static boolean isOutputFull(USARTStream[] streams) {
+    if (streams != null) {
+      for (USARTStream s : streams) {
+        if (s.isOutputFull()) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /* Only called from the emulation thread */
+  private void feed() {
+    boolean freed = false;
+    while (!isClosed && source.isReceiveFlagCleared()) {
+      int b;
+      synchronized (this) {
+        if (inputCount == 0) {
+          break;
+        }
+        freed |= inputCount == input.length;
+        b = input[inputStart] & 0xff;
+        inputStart = (inputStart + 1) % input.length;
+        inputCount--;
+      }
+      source.byteReceived(b);
+      bytesReceived++;
+    }
+    StreamListener listener = this.streamListener;
+    if (freed && listener != null) {
+      listener.streamReady(this);
+    }
+  }
+
+  public void stateChanged(Object source, int oldState, int newState) {
+    if (newState == USARTListener.RXFLAG_CLEARED) {
+      feed();
+    }
+  }
+
+  public void dataReceived(USARTSource source, int data) {
+    boolean wasEmpty;
+    synchronized (this) {
+      if (outputCount == output.length) {
+        /* Only happens if the UART does not respect isOutputFull() */
+        bytesDropped++;
+        return;
+      }
+      wasEmpty = outputCount == 0;
+      output[(outputStart + outputCount) % output.length] = (byte) data;
+      outputCount++;
+    }
+    bytesTransmitted++;
+    StreamListener listener = this.streamListener;
+    if (wasEmpty && listener != null) {
+      listener.streamReady(this);
+    }
+  }
+
+}
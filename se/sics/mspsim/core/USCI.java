@@ -86,6 +86,7 @@ public class USCI extends IOUnit implements SFRModule, DMATrigger, USARTSource {
   public static final int USCI_BUSY = 0x01;
   
   private USARTListener usartListener;
+  private volatile USARTStream[] streams;
 
   private int utxifg;
   private int urxifg;
@@ -242,6 +243,12 @@ public class USCI extends IOUnit implements SFRModule, DMATrigger, USARTSource {
       usartListener = USARTListener.Proxy.INSTANCE.remove(usartListener, listener);
   }
 
+  public synchronized USARTStream openStream() {
+    USARTStream stream = new USARTStream(cpu, this);
+    streams = USARTStream.add(streams, stream);
+    return stream;
+  }
+
   // Only 8 bits / read!
   public void write(int address, int data, boolean word, long cycles) {
     if (address == ieAddress || address == ifgAddress) {
@@ -411,6 +418,13 @@ public class USCI extends IOUnit implements SFRModule, DMATrigger, USARTSource {
   }
 
   private void handleTransmit(long cycles) {
+    if (transmitting && USARTStream.isOutputFull(streams)) {
+      /* host is not reading - hold the transmitter for another byte time */
+      nextTXReady = cycles + tickPerByte + 1;
+      cpu.scheduleCycleEvent(txTrigger, nextTXReady);
+      return;
+    }
+
     if (cpu.getMode() >= MSP430Core.MODE_LPM3) {
       logw(WarningType.EXECUTION, "Warning: USART transmission during LPM!!! " + nextTXByte);
     }
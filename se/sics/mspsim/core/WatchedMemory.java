@@ -1,10 +1,23 @@
 package se.sics.mspsim.core;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import se.sics.mspsim.util.ListenerArray;
 
 public class WatchedMemory implements Memory {
 
     private final int start;
     private final Memory wrappedMemory;
-    private final MemoryMonitor watchPoints[] = new MemoryMonitor[Memory.SEGMENT_SIZE];
+    private final MemoryMonitor[][] watchPoints = new MemoryMonitor[Memory.SEGMENT_SIZE][];
+    private final AtomicReferenceArray<ListenerArray<MemoryMonitor>> watchPointListeners =
+            new AtomicReferenceArray<ListenerArray<MemoryMonitor>>(Memory.SEGMENT_SIZE);
+    private MemoryWatchRange[] watchRanges;
+    private final ListenerArray<MemoryWatchRange> watchRangeListeners =
+            new ListenerArray<MemoryWatchRange>(MemoryWatchRange.class) {
+        @Override
+        protected void publish(MemoryWatchRange[] ranges) {
+            watchRanges = ranges;
+        }
+    };
 
     WatchedMemory(int start, Memory wrapped) {
         this.start = start;
@@ -13,29 +26,78 @@ public class WatchedMemory implements Memory {
 
     @Override
     public int read(int address, AccessMode mode, AccessType type) throws EmulationException {
-        final int a = address - start;
-        int val;
-        MemoryMonitor mon = watchPoints[a];
-        if (mon != null) {
-            mon.notifyReadBefore(address, mode, type);
-            val = wrappedMemory.read(address, mode, type);
-            mon.notifyReadAfter(address, mode, type);
-        } else {
-            val = wrappedMemory.read(address, mode, type);
+        final MemoryMonitor[] mons = watchPoints[address - start];
+        final MemoryWatchRange[] ranges = watchRanges;
+        if (mons == null && ranges == null) {
+            return wrappedMemory.read(address, mode, type);
+        }
+
+        final int bit = MemoryWatchRange.accessBit(type);
+        if (mons != null) {
+            for (int i = 0, n = mons.length; i < n; i++) {
+                mons[i].notifyReadBefore(address, mode, type);
+            }
+        }
+        if (ranges != null) {
+            for (int i = 0, n = ranges.length; i < n; i++) {
+                MemoryWatchRange range = ranges[i];
+                if (!range.hasValueFilter() && range.matches(address, mode, bit)) {
+                    range.getMonitor().notifyReadBefore(address, mode, type);
+                }
+            }
+        }
+        int val = wrappedMemory.read(address, mode, type);
+        if (mons != null) {
+            for (int i = 0, n = mons.length; i < n; i++) {
+                mons[i].notifyReadAfter(address, mode, type);
+            }
+        }
+        if (ranges != null) {
+            for (int i = 0, n = ranges.length; i < n; i++) {
+                MemoryWatchRange range = ranges[i];
+                if (range.matches(address, mode, bit) && range.matchesValue(val)) {
+                    range.getMonitor().notifyReadAfter(address, mode, type);
+                }
+            }
         }
         return val;
     }
 
     @Override
     public void write(int dstAddress, int dst, AccessMode mode) throws EmulationException {
-        final int a = dstAddress - start;
-        final MemoryMonitor mon = watchPoints[a];
-        if (mon != null) {
-            mon.notifyWriteBefore(dstAddress, dst, mode);
-            wrappedMemory.write(dstAddress, dst, mode);
-            mon.notifyWriteAfter(dstAddress, dst, mode);
-        } else {
+        final MemoryMonitor[] mons = watchPoints[dstAddress - start];
+        final MemoryWatchRange[] ranges = watchRanges;
+        if (mons == null && ranges == null) {
             wrappedMemory.write(dstAddress, dst, mode);
+            return;
+        }
+
+        if (mons != null) {
+            for (int i = 0, n = mons.length; i < n; i++) {
+                mons[i].notifyWriteBefore(dstAddress, dst, mode);
+            }
+        }
+        if (ranges != null) {
+            for (int i = 0, n = ranges.length; i < n; i++) {
+                MemoryWatchRange range = ranges[i];
+                if (range.matches(dstAddress, mode, MemoryWatchRange.WRITE) && range.matchesValue(dst)) {
+                    range.getMonitor().notifyWriteBefore(dstAddress, dst, mode);
+                }
+            }
+        }
+        wrappedMemory.write(dstAddress, dst, mode);
+        if (mons != null) {
+            for (int i = 0, n = mons.length; i < n; i++) {
+                mons[i].notifyWriteAfter(dstAddress, dst, mode);
+            }
+        }
+        if (ranges != null) {
+            for (int i = 0, n = ranges.length; i < n; i++) {
+                MemoryWatchRange range = ranges[i];
+                if (range.matches(dstAddress, mode, MemoryWatchRange.WRITE) && range.matchesValue(dst)) {
+                    range.getMonitor().notifyWriteAfter(dstAddress, dst, mode);
+                }
+            }
         }
     }
 
@@ -49,19 +111,60 @@ public class WatchedMemory implements Memory {
         wrappedMemory.set(address, data, mode);
     }
 
+    Memory getWatchedMemory() {
+        return wrappedMemory;
+    }
+
     public boolean hasWatchPoint(int address) {
-        MemoryMonitor mon = watchPoints[address - start];
-        return mon != null;
+        if (watchPoints[address - start] != null) {
+            return true;
+        }
+        MemoryWatchRange[] ranges = watchRanges;
+        if (ranges != null) {
+            for (MemoryWatchRange range : ranges) {
+                if (range.contains(address)) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
-    public synchronized void addWatchPoint(int address, MemoryMonitor mon) {
-        final int a = address - start;
-        watchPoints[a] = MemoryMonitor.Proxy.INSTANCE.add(watchPoints[a], mon);
+    public void addWatchRange(MemoryWatchRange range) {
+        watchRangeListeners.add(range);
+    }
+
+    public boolean removeWatchRange(MemoryWatchRange range) {
+        return watchRangeListeners.remove(range);
     }
 
-    public synchronized void removeWatchPoint(int address, MemoryMonitor mon) {
+    public MemoryWatchRange[] getWatchRanges() {
+        return watchRangeListeners.get();
+    }
+
+    public void addWatchPoint(int address, MemoryMonitor mon) {
         final int a = address - start;
-        watchPoints[a] = MemoryMonitor.Proxy.INSTANCE.remove(watchPoints[a], mon);
+        ListenerArray<MemoryMonitor> listeners = watchPointListeners.get(a);
+        if (listeners == null) {
+            listeners = new ListenerArray<MemoryMonitor>(MemoryMonitor.class) {
+                @Override
+                protected void publish(MemoryMonitor[] monitors) {
+                    watchPoints[a] = monitors;
+                }
+            };
+            if (!watchPointListeners.compareAndSet(a, null, listeners)) {
+                // Another thread was first
+                listeners = watchPointListeners.get(a);
+            }
+        }
+        listeners.add(mon);
+    }
+
+    public void removeWatchPoint(int address, MemoryMonitor mon) {
+        ListenerArray<MemoryMonitor> listeners = watchPointListeners.get(address - start);
+        if (listeners != null) {
+            listeners.remove(mon);
+        }
     }
 
 }
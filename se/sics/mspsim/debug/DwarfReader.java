@@ -41,6 +41,10 @@ package se.sics.mspsim.debug;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.PriorityQueue;
 
 import se.sics.mspsim.util.DebugInfo;
 import se.sics.mspsim.util.ELF;
@@ -104,6 +108,33 @@ public class DwarfReader implements ELFDebug {
 
     ArrayList<LineData> lineInfo = new ArrayList<LineData>();
 
+    /* Line table compiled for lookups. Address ranges are flattened into
+     * sorted segments where segmentStart[i] starts a segment that maps to
+     * line entry segmentEntry[i] (or -1 for none). */
+    static class LineIndex {
+        final int[] segmentStart;
+        final int[] segmentEntry;
+        final int[] entryLine;
+        final String[] entryFile;
+        final int[] executableAddresses;
+        /* file:line -> sorted addresses, for both full path and base name */
+        final HashMap<String,int[]> lineAddresses;
+
+        LineIndex(int[] segmentStart, int[] segmentEntry, int[] entryLine,
+                String[] entryFile, int[] executableAddresses,
+                HashMap<String,int[]> lineAddresses) {
+            this.segmentStart = segmentStart;
+            this.segmentEntry = segmentEntry;
+            this.entryLine = entryLine;
+            this.entryFile = entryFile;
+            this.executableAddresses = executableAddresses;
+            this.lineAddresses = lineAddresses;
+        }
+    }
+
+    /* Built on first use and then read without locking */
+    private volatile LineIndex lineIndex;
+
     /* some state for the line number handling */
     private int lineAddress;
     private int lineFile;
@@ -439,42 +470,165 @@ public class DwarfReader implements ELFDebug {
 
     /* Access methods for data... */
     public DebugInfo getDebugInfo(int address) {
-        for (int i = 0; i < lineInfo.size(); i++) {
-            LineData data = lineInfo.get(i);
-            int start = data.lineEntries[0].address;
-            int end = data.lineEntries[data.lineEntries.length - 1].address;
-            /* XXX ignore all line entries starting on address 0 */
-            if (start == 0) continue;
-
-            if (address <= end && address >= start) {
-                for (int j = 0; j < data.lineEntries.length; j++) {
-                  LineEntry lineEntry = data.lineEntries[j];
-                  int startEntry = lineEntry.address;
-                  int endEntry;
-                  if (j+1 < data.lineEntries.length) {
-                    endEntry = data.lineEntries[j+1].address-1;
-                  } else {
-                    /* do not match prologue entries */
+        LineIndex index = getLineIndex();
+        int[] starts = index.segmentStart;
+        int i = Arrays.binarySearch(starts, address);
+        if (i < 0) {
+            /* the segment before the insertion point */
+            i = -i - 2;
+            if (i < 0) {
+                return null;
+            }
+        }
+        int entry = index.segmentEntry[i];
+        if (entry < 0) {
+            return null;
+        }
+        return new DebugInfo(index.entryLine[entry], null, index.entryFile[entry], "* not available");
+    }
+
+    public int[] getExecutableAddresses() {
+        return getLineIndex().executableAddresses;
+    }
+
+    public int[] getLineAddresses(String file, int line) {
+        int[] addresses = getLineIndex().lineAddresses.get(file + ':' + line);
+        return addresses != null ? addresses.clone() : new int[0];
+    }
+
+    /*
+     * Compiles the line tables. A line entry covers the addresses up to the
+     * next entry in its table, limited to the address range of the table,
+     * and the first table and entry covering an address wins. The entries
+     * are swept in address order keeping the covering entries in a priority
+     * queue ordered by table/entry order.
+     */
+    private LineIndex getLineIndex() {
+        LineIndex index = lineIndex;
+        if (index == null) {
+            index = buildLineIndex();
+        }
+        return index;
+    }
+
+    private synchronized LineIndex buildLineIndex() {
+        if (lineIndex != null) {
+            return lineIndex;
+        }
+        int total = 0;
+        for (LineData data : lineInfo) {
+            total += data.lineEntries.length;
+        }
+        int[] execAddresses = new int[total];
+        int[] lines = new int[total];
+        String[] files = new String[total];
+        int[] rangeStart = new int[total];
+        int[] rangeEnd = new int[total];
+        int[] rangeEntry = new int[total];
+        HashMap<String,ArrayList<Integer>> reverse = new HashMap<String,ArrayList<Integer>>();
+        int count = 0;
+        int ranges = 0;
+        for (LineData data : lineInfo) {
+            LineEntry[] entries = data.lineEntries;
+            int start = entries[0].address;
+            int end = entries[entries.length - 1].address;
+            for (int j = 0; j < entries.length; j++) {
+                LineEntry lineEntry = entries[j];
+                int entry = count++;
+                execAddresses[entry] = lineEntry.address;
+                lines[entry] = lineEntry.line;
+                if (lineEntry.file > 0 && lineEntry.file <= data.sourceFiles.length) {
+                    files[entry] = data.sourceFiles[lineEntry.file - 1];
+                    addLineAddress(reverse, files[entry], lineEntry.line, lineEntry.address);
+                }
+                /* XXX ignore all line entries starting on address 0 and
+                 * do not match prologue entries */
+                if (start == 0 || j + 1 == entries.length || files[entry] == null) {
                     continue;
-                  }
-                  if (address >= startEntry &&
-                      address <= endEntry) {
-                    return new DebugInfo(lineEntry.line, null, data.sourceFiles[lineEntry.file-1], "* not available");
-                  }
+                }
+                int rs = Math.max(lineEntry.address, start);
+                int re = Math.min(entries[j + 1].address - 1, end);
+                if (rs <= re) {
+                    rangeStart[ranges] = rs;
+                    rangeEnd[ranges] = re;
+                    rangeEntry[ranges] = entry;
+                    ranges++;
                 }
             }
         }
-        return null;
-    }
 
-    public ArrayList<Integer> getExecutableAddresses() {
-        ArrayList<Integer> executableAddresses = new ArrayList<Integer>();
-        for (LineData data: lineInfo) {
-            for (LineEntry entry: data.lineEntries) {
-                executableAddresses.add(entry.address);
+        /* all points where the covering entries might change */
+        int[] points = new int[ranges * 2];
+        Integer[] byStart = new Integer[ranges];
+        for (int i = 0; i < ranges; i++) {
+            points[i * 2] = rangeStart[i];
+            points[i * 2 + 1] = rangeEnd[i] + 1;
+            byStart[i] = i;
+        }
+        Arrays.sort(points);
+        final int[] rs = rangeStart;
+        Arrays.sort(byStart, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return rs[a] < rs[b] ? -1 : (rs[a] == rs[b] ? a.compareTo(b) : 1);
+            }
+        });
+
+        int[] segStart = new int[points.length + 1];
+        int[] segEntry = new int[points.length + 1];
+        int segments = 0;
+        int next = 0;
+        /* ranges are added in table order so the queue head is the first match */
+        PriorityQueue<Integer> active = new PriorityQueue<Integer>();
+        for (int p = 0; p < points.length; p++) {
+            int point = points[p];
+            if (p > 0 && point == points[p - 1]) {
+                continue;
+            }
+            while (next < ranges && rangeStart[byStart[next]] <= point) {
+                active.add(byStart[next++]);
+            }
+            while (!active.isEmpty() && rangeEnd[active.peek()] < point) {
+                active.poll();
+            }
+            int entry = active.isEmpty() ? -1 : rangeEntry[active.peek()];
+            if (segments == 0 || segEntry[segments - 1] != entry) {
+                segStart[segments] = point;
+                segEntry[segments] = entry;
+                segments++;
             }
         }
-	return executableAddresses;
+
+        HashMap<String,int[]> lineAddresses = new HashMap<String,int[]>();
+        for (String key : reverse.keySet()) {
+            ArrayList<Integer> list = reverse.get(key);
+            int[] a = new int[list.size()];
+            for (int i = 0; i < a.length; i++) {
+                a[i] = list.get(i);
+            }
+            Arrays.sort(a);
+            lineAddresses.put(key, a);
+        }
+        lineIndex = new LineIndex(Arrays.copyOf(segStart, segments),
+                Arrays.copyOf(segEntry, segments), lines, files,
+                execAddresses, lineAddresses);
+        return lineIndex;
+    }
+
+    private static void addLineAddress(HashMap<String,ArrayList<Integer>> reverse,
+            String file, int line, int address) {
+        String key = file + ':' + line;
+        ArrayList<Integer> list = reverse.get(key);
+        if (list == null) {
+            list = new ArrayList<Integer>();
+            reverse.put(key, list);
+        }
+        if (!list.contains(address)) {
+            list.add(address);
+        }
+        String name = new File(file).getName();
+        if (!name.equals(file)) {
+            addLineAddress(reverse, name, line, address);
+        }
     }
 
     public String[] getSourceFiles() {
@@ -38,7 +38,11 @@
  */
 
 package se.sics.mspsim.debug;
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 
 import se.sics.mspsim.util.DebugInfo;
 import se.sics.mspsim.util.ELF;
@@ -50,6 +54,23 @@ public class StabDebug implements ELFDebug {
 
   private Stab[] stabs;
 
+  /* Debug info lookup index. A lookup for an address returns the outcome
+   * of the first entry with lookupKey >= address: a source line (line >= 0)
+   * or nothing (line -1). The keys are strictly increasing. */
+  private int[] lookupKey;
+  private int[] lookupLine;
+  private String[] lookupPath;
+  private String[] lookupFile;
+  private String[] lookupFunction;
+
+  /* Functions sorted by start address */
+  private StabFunction[] functions;
+  private int[] functionStart;
+
+  private int[] executableAddresses;
+  /* file:line -> sorted addresses, with and without path */
+  private HashMap<String,int[]> lineAddresses;
+
   public static final int N_FUN = 0x24;
   public static final int N_STSYM = 0x26; // Data segment file-scope variable; 
   public static final int N_LCSYM = 0x28; // BSS segment file-scope variable;
@@ -94,6 +115,7 @@ public class StabDebug implements ELFDebug {
       addr += dbgStab.getEntrySize();
     }
     // getStabFiles();
+    buildIndex();
   }
 
   public StabFile[] getStabFiles() {
@@ -121,141 +143,191 @@ public class StabDebug implements ELFDebug {
   
   /* Just pick up file + some other things */
   public DebugInfo getDebugInfo(int address) {
+    int i = Arrays.binarySearch(lookupKey, address);
+    if (i < 0) {
+      /* first key above the address */
+      i = -i - 1;
+      if (i == lookupKey.length) {
+	return null;
+      }
+    }
+    if (lookupLine[i] < 0) {
+      return null;
+    }
+    return new DebugInfo(lookupLine[i], lookupPath[i], lookupFile[i], lookupFunction[i]);
+  }
+
+  /*
+   * The stabs are walked once in the same way as a lookup would walk them.
+   * A walk for an address stops at the first N_SO/N_FUN with a value not
+   * below the address (no info) or at the first N_SLINE ending at or after
+   * it. The walk state at each entry does not depend on the address, so
+   * only entries that raise the maximum key can ever stop a walk.
+   */
+  private void buildIndex() {
+    int n = stabs.length;
+    int[] keys = new int[n];
+    int[] lines = new int[n];
+    String[] paths = new String[n];
+    String[] files = new String[n];
+    String[] funcs = new String[n];
+    int records = 0;
+    int[] execAddresses = new int[n];
+    int execCount = 0;
+    HashMap<String,ArrayList<Integer>> reverse = new HashMap<String,ArrayList<Integer>>();
+    ArrayList<StabFunction> functionList = new ArrayList<StabFunction>();
+    StabFunction lastFunction = null;
+
     String currentPath = null;
     String currentFile = null;
     String currentFunction = null;
     int lastAddress = 0;
-    int currentLine = 0;
-    int currentLineAdr = 0;
-    for (int i = 0, n = stabs.length; i < n; i++) {
-      Stab stab = stabs[i];
+    long maxKey = Long.MIN_VALUE;
+    for (Stab stab : stabs) {
+      int key;
+      boolean hasLine = false;
       switch(stab.type) {
       case N_SO:
-	if (stab.value < address) {
-	  if (stab.data != null && stab.data.endsWith("/")) {
-	    currentPath = stab.data;
-	    lastAddress = stab.value;
-	    currentFunction = null;
-	  } else {
-	    currentFile = stab.data;
-	    lastAddress = stab.value;
-	    currentFunction = null;
-	  }
+	key = stab.value;
+	if (stab.data != null && stab.data.endsWith("/")) {
+	  currentPath = stab.data;
 	} else {
-	  /* requires sorted order of all file entries in stab section */
-	  if (DEBUG) {
-	    System.out.println("FILE: Already passed address..." +
-			       currentPath + " " +
-			       currentFile + " " + currentFunction);
+	  currentFile = stab.data;
+	}
+	lastAddress = stab.value;
+	currentFunction = null;
+	execAddresses[execCount++] = lastAddress;
+	break;
+      case N_FUN:
+	key = stab.value;
+	execAddresses[execCount++] = stab.value;
+	if (stab.data != null && stab.data.length() == 0) {
+	  /* end of the last function - value is its size */
+	  if (lastFunction != null) {
+	    lastFunction.endAddress = lastFunction.startAddress + stab.value;
+	    lastFunction = null;
 	  }
-	  return null;
+	} else if (stab.data != null) {
+	  StabFunction fun = new StabFunction();
+	  int colon = stab.data.indexOf(':');
+	  fun.name = colon >= 0 ? stab.data.substring(0, colon) : stab.data;
+	  fun.returnType = colon >= 0 ? stab.data.substring(colon + 1) : null;
+	  fun.startAddress = stab.value;
+	  fun.endAddress = stab.value;
+	  fun.startLine = stab.desc;
+	  functionList.add(fun);
+	  lastFunction = fun;
 	}
+	currentFunction = stab.data;
+	lastAddress = stab.value;
 	break;
       case N_SLINE:
-	if (currentPath != null) { /* only files with path... */
-	  if (currentLineAdr < address) {
-	    currentLine = stab.desc;
-	    currentLineAdr = lastAddress + stab.value;
-	    if (currentLineAdr >= address) {
-	      // Finished!!!
-	      if (DEBUG) {
-		System.out.println("File: " + currentPath + " " + currentFile);
-		System.out.println("Function: " + currentFunction);
-		System.out.println("Line No: " + currentLine);
-	      }
-	      return new DebugInfo(currentLine, currentPath, currentFile,
-				   currentFunction);
-	    }
+	if (currentPath == null) {
+	  continue;
+	}
+	key = lastAddress + stab.value;
+	hasLine = true;
+	execAddresses[execCount++] = key;
+	if (currentFile != null) {
+	  addLineAddress(reverse, currentFile, stab.desc, key);
+	  addLineAddress(reverse, currentPath + currentFile, stab.desc, key);
+	  String name = new File(currentFile).getName();
+	  if (!name.equals(currentFile)) {
+	    addLineAddress(reverse, name, stab.desc, key);
 	  }
 	}
 	break;
-      case N_FUN:
-	if (stab.value < address) {
-	  currentFunction = stab.data;
-	  lastAddress = stab.value;
+      default:
+	continue;
+      }
+      if (key > maxKey) {
+	maxKey = key;
+	keys[records] = key;
+	if (hasLine) {
+	  lines[records] = stab.desc;
+	  paths[records] = currentPath;
+	  files[records] = currentFile;
+	  funcs[records] = currentFunction;
 	} else {
-	  if (DEBUG) {
-	    System.out.println("FUN: Already passed address...");
-	  }
-	  return null;
+	  lines[records] = -1;
 	}
-	break;
+	records++;
       }
     }
-    return null;
-  }
 
-  public ArrayList<Integer> getExecutableAddresses() {
-    ArrayList<Integer> allAddresses = new ArrayList<Integer>();
+    lookupKey = Arrays.copyOf(keys, records);
+    lookupLine = Arrays.copyOf(lines, records);
+    lookupPath = Arrays.copyOf(paths, records);
+    lookupFile = Arrays.copyOf(files, records);
+    lookupFunction = Arrays.copyOf(funcs, records);
+    executableAddresses = Arrays.copyOf(execAddresses, execCount);
 
-    int address = Integer.MAX_VALUE;
+    functions = functionList.toArray(new StabFunction[functionList.size()]);
+    Arrays.sort(functions, new Comparator<StabFunction>() {
+      public int compare(StabFunction a, StabFunction b) {
+	return a.startAddress < b.startAddress ? -1 : (a.startAddress == b.startAddress ? 0 : 1);
+      }
+    });
+    functionStart = new int[functions.length];
+    for (int i = 0; i < functions.length; i++) {
+      functionStart[i] = functions[i].startAddress;
+    }
 
-    String currentPath = null;
-    String currentFile = null;
-    String currentFunction = null;
-    int lastAddress = 0;
-//    int currentLine = 0;
-    int currentLineAdr = 0;
-    for (Stab stab : stabs) {
-      switch(stab.type) {
-      case N_SO:
-        if (stab.value < address) {
-          if (stab.data != null && stab.data.endsWith("/")) {
-            currentPath = stab.data;
-            lastAddress = stab.value;
-            allAddresses.add(new Integer(lastAddress));
-            currentFunction = null;
-          } else {
-            currentFile = stab.data;
-            lastAddress = stab.value;
-            allAddresses.add(new Integer(lastAddress));
-            currentFunction = null;
-          }
-        } else {
-          /* requires sorted order of all file entries in stab section */
-          if (DEBUG) {
-            System.out.println("FILE: Already passed address..." +
-                currentPath + " " +
-                currentFile + " " + currentFunction);
-          }
-          return allAddresses;
-        }
-        break;
-      case N_SLINE:
-        if (currentPath != null) { /* only files with path... */
-          if (currentLineAdr < address) {
-//            currentLine = stab.desc;
-            currentLineAdr = lastAddress + stab.value;
-            allAddresses.add(new Integer(currentLineAdr));
-            /*if (currentLineAdr >= address) {
-              // Finished!!!
-              if (DEBUG) {
-                System.out.println("File: " + currentPath + " " + currentFile);
-                System.out.println("Function: " + currentFunction);
-                System.out.println("Line No: " + currentLine);
-              }
-              return new DebugInfo(currentLine, currentPath, currentFile,
-                  currentFunction);
-            }*/
-          }
-        }
-        break;
-      case N_FUN:
-        if (stab.value < address) {
-          currentFunction = stab.data;
-          lastAddress = stab.value;
-          allAddresses.add(new Integer(lastAddress));
-        } else {
-          if (DEBUG) {
-            System.out.println("FUN: Already passed address...");
-          }
-          return allAddresses;
-        }
-        break;
+    lineAddresses = new HashMap<String,int[]>();
+    for (String key : reverse.keySet()) {
+      ArrayList<Integer> list = reverse.get(key);
+      int[] a = new int[list.size()];
+      for (int i = 0; i < a.length; i++) {
+	a[i] = list.get(i);
+      }
+      Arrays.sort(a);
+      lineAddresses.put(key, a);
+    }
+  }
+
+  private static void addLineAddress(HashMap<String,ArrayList<Integer>> reverse,
+      String file, int line, int address) {
+    String key = file + ':' + line;
+    ArrayList<Integer> list = reverse.get(key);
+    if (list == null) {
+      list = new ArrayList<Integer>();
+      reverse.put(key, list);
+    }
+    if (!list.contains(address)) {
+      list.add(address);
+    }
+  }
+
+  /* Returns the function containing the address or null if none */
+  public StabFunction getFunction(int address) {
+    int i = Arrays.binarySearch(functionStart, address);
+    if (i < 0) {
+      i = -i - 2;
+    } else {
+      /* the last of several functions at the same address */
+      while (i + 1 < functionStart.length && functionStart[i + 1] == address) {
+	i++;
       }
     }
-    return allAddresses;
-}
+    if (i < 0) {
+      return null;
+    }
+    StabFunction fun = functions[i];
+    return address < fun.endAddress || address == fun.startAddress ? fun : null;
+  }
+
+  public StabFunction[] getFunctions() {
+    return functions.clone();
+  }
+
+  public int[] getExecutableAddresses() {
+    return executableAddresses;
+  }
+
+  public int[] getLineAddresses(String file, int line) {
+    int[] addresses = lineAddresses.get(file + ':' + line);
+    return addresses != null ? addresses.clone() : new int[0];
+  }
 
   public String[] getSourceFiles() {
     String currentPath = null;
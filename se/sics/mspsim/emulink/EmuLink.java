@@ -38,37 +38,92 @@
 
 package se.sics.mspsim.emulink;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.io.Reader;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import se.sics.json.JSONArray;
 import se.sics.json.JSONObject;
 import se.sics.json.ParseException;
 import se.sics.mspsim.Main;
+import se.sics.mspsim.cli.CommandHandler;
 import se.sics.mspsim.core.MSP430Constants;
+import se.sics.mspsim.core.USARTSource;
+import se.sics.mspsim.core.USARTStream;
 import se.sics.mspsim.platform.GenericNode;
+import se.sics.mspsim.util.ConfigManager;
 import se.sics.mspsim.util.Utils;
 
+/**
+ * Emulation link server. Controllers connect on port 8000 and send
+ * messages to create, load, start and stop nodes and to write serial
+ * data to them. Any number of controllers can be connected and all are
+ * served by a single thread. Serial output from the nodes is sent as
+ * serial events to all connected controllers.
+ *
+ * Messages are JSON objects by default. Most commands take a single node
+ * id or an array of node ids and a "batch" event with an array of
+ * messages in "data" handles several commands in one message.
+ *
+ * A connection that does not start with '{' uses the binary protocol
+ * instead. Each frame is a 32 bit big endian length of the rest of the
+ * frame, an opcode byte, the length of the node id as one byte, the node
+ * id in UTF-8 and the payload. An empty node id means all nodes where
+ * the JSON protocol allows the node to be omitted.
+ *
+ * OP_CREATE   payload is the platform type
+ * OP_WRITE    payload is the firmware file name
+ * OP_START    payload is empty to run or a 64 bit time in microseconds
+ *             to execute
+ * OP_STOP     no payload
+ * OP_SERIAL   payload is the serial data, in both directions
+ * OP_CLOSE    no payload, closes the connection
+ *
+ * Commands that have a response in the JSON protocol are answered with
+ * a frame with opcode OP_RESPONSE | opcode, the same node id and the
+ * payload 1.
+ */
 public class EmuLink {
 
-    private Socket socket;
-    private BufferedReader in;
-    private PrintWriter out;
-    private boolean isConnected = false;
+    public static final int OP_CREATE = 0x01;
+    public static final int OP_WRITE = 0x02;
+    public static final int OP_START = 0x03;
+    public static final int OP_STOP = 0x04;
+    public static final int OP_SERIAL = 0x05;
+    public static final int OP_CLOSE = 0x06;
+    public static final int OP_RESPONSE = 0x80;
+
+    private static final boolean DEBUG = false;
+    private static final int DEFAULT_PORT = 8000;
+    private static final int BUFFER_SIZE = 4096;
+    private static final int MAX_MESSAGE_SIZE = 1024 * 1024;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final byte[] RESPONSE_OK = { 1 };
+
+    private Selector selector;
+    private final ArrayList<Connection> connections = new ArrayList<Connection>();
+    private Connection currentConnection;
     private long globalEtime = 0L;
     private long globalLastTime = 0L;
 
     private final Hashtable<String, GenericNode> nodes = new Hashtable<String, GenericNode>();
+    private final Hashtable<String, SerialLink> serialLinks = new Hashtable<String, SerialLink>();
+    private final ConcurrentLinkedQueue<SerialLink> readySerialLinks = new ConcurrentLinkedQueue<SerialLink>();
 
     public boolean isConnected() {
-        return !isConnected;
+        return !connections.isEmpty();
     }
 
     String[] getNodes(JSONObject json) {
@@ -87,7 +142,21 @@ public class EmuLink {
         }
         return nString;
     }
-    
+
+    /* Serial data is either a single byte or an array of bytes */
+    byte[] getSerialData(JSONObject json) {
+        JSONArray array = json.getJSONArray("data");
+        if (array != null) {
+            byte[] data = new byte[array.size()];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) array.getAsInt(i, 0);
+            }
+            return data;
+        }
+        int data = json.getAsInt("data", -1);
+        return data < 0 ? null : new byte[] { (byte) data };
+    }
+
     private boolean createNode(String type, String id) {
         String nt = Main.getNodeTypeByPlatform(type);
         System.out.println("EmuLink: Creating node '" + id + "' of type '" + type + "' => " + nt);
@@ -100,11 +169,10 @@ public class EmuLink {
         return true;
     }
     
-    private boolean createNodes(JSONObject json) {
-        String type = json.getAsString("type");
-        System.out.println("Should create: " + type);
-
-        String[] nodes = getNodes(json);
+    private boolean createNodes(String type, String[] nodes) {
+        if (DEBUG) {
+            System.out.println("EmuLink: Should create: " + type);
+        }
         if (nodes != null) {
             for (int i = 0; i < nodes.length; i++) {
                 createNode(type, nodes[i]);
@@ -113,116 +181,130 @@ public class EmuLink {
         return true;
     }
 
-    protected void processInput(Reader input) throws IOException, ParseException {
-        StringBuilder sb = new StringBuilder();
-        int brackets = 0;
-        boolean stuffed = false;
-        boolean quoted = false;
-        while (isConnected()) {
-            int c = input.read();
-            if (c < 0) {
-                disconnect();
-                break;
-            }
-            sb.append((char)c);
-            if (stuffed) {
-                stuffed = false;
-            } else if (c == '\\') {
-                stuffed = true;
-            } else if (quoted) {
-                if (c == '"') {
-                    quoted = false;
+    private void loadFirmware(String id, GenericNode node, String file) throws IOException {
+        node.loadFirmware(file);
+        if (node.getRegistry().getComponent("node") != null) {
+            node.getCPU().reset();
+            return;
+        }
+
+        /* First firmware for this node - setup the node without console and GUI */
+        node.getRegistry().registerComponent("commandHandler", new CommandHandler(System.out, System.err));
+        ConfigManager config = new ConfigManager();
+        config.setProperty("nogui", "true");
+        config.setProperty("firmwareFile", file);
+        node.setup(config);
+
+        USARTSource serial = node.getRegistry().getComponent(USARTSource.class, "serialio");
+        if (serial != null) {
+            SerialLink link = new SerialLink(id, serial.openStream());
+            serialLinks.put(id, link);
+            link.stream.setStreamListener(link);
+        }
+    }
+
+    private void writeFirmware(String[] nodes, String file) {
+        if (nodes == null) {
+            System.err.println("EmuLink: no node specified for write");
+        } else if (file == null) {
+            System.err.println("EmuLink: no file specified for write");
+        } else if (!new File(file).isFile()) {
+            System.err.println("EmuLink: could not find file '" + file + "' for write");
+        } else {
+            for(String id : nodes) {
+                GenericNode node = this.nodes.get(id);
+                if (node == null) {
+                    System.err.println("EmuLink: could not find node '" + id + "'");
+                    continue;
                 }
-            } else if (c == '"') {
-                quoted = true;
-            } else if (c == '{') {
-                brackets++;
-            } else if (c == '}') {
-                brackets--;
-                if (brackets == 0) {
-                    JSONObject json = JSONObject.parseJSONObject(sb.toString());
-                    sb.setLength(0);
-                    if (!handleMessage(json)) {
-                        // This connection should no longer be kept alive
-                        break;
-                    }
+                try {
+                    loadFirmware(id, node, file);
+                } catch (IOException e) {
+                    System.err.println("EmuLink: failed to load firmware '" + file + "'");
+                    e.printStackTrace();
                 }
             }
         }
-    };
-
-    protected boolean handleMessage(JSONObject json) {
-        System.out.println("EmuLink: RECV " + json.toJSONString());
-        String event = json.getAsString("event");
-        if ("emulation_control".equals(event)) {
-            String command = json.getAsString("data");
-            if ("start".equals(command)) {
-                String[] nodes = getNodes(json);
-                long etime = json.getAsLong("etime", 0);
+    }
 
-                if (etime == 0) {
-                    if (nodes == null) {
-                        for (GenericNode node : this.nodes.values()) {
-                            node.start();
-                        }
+    private void startNodes(String[] nodes, long etime) {
+        if (etime == 0) {
+            if (nodes == null) {
+                for (GenericNode node : this.nodes.values()) {
+                    node.start();
+                }
+            } else {
+                for(String id : nodes) {
+                    GenericNode node = this.nodes.get(id);
+                    if (node != null) {
+                        node.start();
                     } else {
-                        for(String id : nodes) {
-                            GenericNode node = this.nodes.get(id);
-                            if (node != null) {
-                                node.start();
-                            } else {
-                                System.err.println("EmuLink: could not find node '" + id + "'");
-                            }
-                        }
+                        System.err.println("EmuLink: could not find node '" + id + "'");
                     }
-                } else {
-                    // Execute for specified time
-                    globalEtime += etime;
-                    if (nodes == null) {
-                        for (GenericNode node : this.nodes.values()) {
-                            long t0 = System.nanoTime(), t1;
-                            node.getCPU().stepMicros(globalLastTime, etime);
-                            t1 = System.nanoTime();
-                            System.out.println("EmuLink: node " + node.getID()
-                                    + " is now at $" + Utils.hex(node.getCPU().getRegister(MSP430Constants.PC), 4)
-                                    + " " + (long)(node.getCPU().getTimeMillis() + 0.5) + "/" + (globalEtime / 1000)
-                                    + " (elapsed " + (t1 - t0) + " ns)");
-                        }
+                }
+            }
+        } else {
+            // Execute for specified time
+            globalEtime += etime;
+            if (nodes == null) {
+                for (GenericNode node : this.nodes.values()) {
+                    stepNode(node, etime);
+                }
 
+            } else {
+                for(String id : nodes) {
+                    GenericNode node = this.nodes.get(id);
+                    if (node != null) {
+                        stepNode(node, etime);
                     } else {
-                        for(String id : nodes) {
-                            GenericNode node = this.nodes.get(id);
-                            if (node != null) {
-                                long t0 = System.nanoTime(), t1;
-                                node.getCPU().stepMicros(globalLastTime, etime);
-                                t1 = System.nanoTime();
-                                System.out.println("EmuLink: node " + node.getID()
-                                        + " is now at $" + Utils.hex(node.getCPU().getRegister(MSP430Constants.PC), 4)
-                                        + " " + (long)(node.getCPU().getTimeMillis() + 0.5) + "/" + (globalEtime / 1000)
-                                        + " (elapsed " + (t1 - t0) + " ns)");
-                            } else {
-                                System.err.println("EmuLink: could not find node '" + id + "'");
-                            }
-                        }
+                        System.err.println("EmuLink: could not find node '" + id + "'");
                     }
-                    globalLastTime = etime;
                 }
-            } else if ("stop".equals(command)) {
-                String[] nodes = getNodes(json);
-                if (nodes == null) {
-                    for (GenericNode node : this.nodes.values()) {
-                        node.stop();
-                    }
+            }
+            globalLastTime = etime;
+        }
+    }
+
+    private void stepNode(GenericNode node, long etime) {
+        long t0 = System.nanoTime(), t1;
+        node.getCPU().stepMicros(globalLastTime, etime);
+        t1 = System.nanoTime();
+        if (DEBUG) {
+            System.out.println("EmuLink: node " + node.getID()
+                    + " is now at $" + Utils.hex(node.getCPU().getRegister(MSP430Constants.PC), 4)
+                    + " " + (long)(node.getCPU().getTimeMillis() + 0.5) + "/" + (globalEtime / 1000)
+                    + " (elapsed " + (t1 - t0) + " ns)");
+        }
+    }
+
+    private void stopNodes(String[] nodes) {
+        if (nodes == null) {
+            for (GenericNode node : this.nodes.values()) {
+                node.stop();
+            }
+        } else {
+            for(String id : nodes) {
+                GenericNode node = this.nodes.get(id);
+                if (node != null) {
+                    node.stop();
                 } else {
-                    for(String id : nodes) {
-                        GenericNode node = this.nodes.get(id);
-                        if (node != null) {
-                            node.stop();
-                        } else {
-                            System.err.println("EmuLink: could not find node '" + id + "'");
-                        }
-                    }
+                    System.err.println("EmuLink: could not find node '" + id + "'");
                 }
+            }
+        }
+    }
+
+    protected boolean handleMessage(JSONObject json) {
+        if (DEBUG) {
+            System.out.println("EmuLink: RECV " + json.toJSONString());
+        }
+        String event = json.getAsString("event");
+        if ("emulation_control".equals(event)) {
+            String command = json.getAsString("data");
+            if ("start".equals(command)) {
+                startNodes(getNodes(json), json.getAsLong("etime", 0));
+            } else if ("stop".equals(command)) {
+                stopNodes(getNodes(json));
             } else if ("close".equals(command)) {
                 sendToSimulator("{\"response\":\"emulation_control\",\"data\":1}");
 
@@ -232,125 +314,402 @@ public class EmuLink {
             sendToSimulator("{\"response\":\"emulation_control\",\"data\":1}");
 
         } else if ("create".equals(event)) {
-            createNodes(json);
+            createNodes(json.getAsString("type"), getNodes(json));
             sendToSimulator("{\"response\":\"create\",\"data\":1}");
         } else if ("write".equals(event)) {
-            String[] nodes = getNodes(json);
-            String file = json.getAsString("file");
-            if (nodes == null) {
-                System.err.println("EmuLink: no node specified for write");
-            } else if (file == null) {
-                System.err.println("EmuLink: no file specified for write");
-            } else if (!new File(file).isFile()) {
-                System.err.println("EmuLink: could not find file '" + file + "' for write");
-            } else {
-                for(String id : nodes) {
-                    GenericNode node = this.nodes.get(id);
-                    if (node == null) {
-                        System.err.println("EmuLink: could not find node '" + id + "'");
-                        continue;
-                    }
-                    try {
-                        node.loadFirmware(file);
-                        node.getCPU().reset();
-                    } catch (IOException e) {
-                        System.err.println("EmuLink: failed to load firmware '" + file + "'");
-                        e.printStackTrace();
-                    }
-                }
-            }
+            writeFirmware(getNodes(json), json.getAsString("file"));
             sendToSimulator("{\"response\":\"write\",\"data\":1}");
         } else if ("remove".equals(event)) {
             // TODO remove nodes
         } else if ("serial".equals(event)) {
-            int data = json.getAsInt("data", -1);
-            JSONArray nodes;
-            String node;
-            if (data < 0) {
+            byte[] data = getSerialData(json);
+            String[] nodes = getNodes(json);
+            if (data == null) {
                 // No data - ignore serial event
-            } else if ((nodes = json.getJSONArray("node")) != null) {
-                for(int i = 0, n = nodes.size(); i < n; i++) {
-                    node = nodes.getAsString(i);
+            } else if (nodes != null) {
+                for(String node : nodes) {
                     if (node != null) {
-                        sendSerialToNode(node, data);
+                        sendSerialToNode(node, ByteBuffer.wrap(data));
                     }
                 }
-            } else if ((node = json.getAsString("node")) != null) {
-                sendSerialToNode(node, data);
             } else {
                 // No target node specified
             }
+        } else if ("batch".equals(event)) {
+            JSONArray messages = json.getJSONArray("data");
+            if (messages != null) {
+                for (int i = 0, n = messages.size(); i < n; i++) {
+                    JSONObject message = messages.getJSONObject(i);
+                    if (message != null && !handleMessage(message)) {
+                        return false;
+                    }
+                }
+            }
         } else {
             System.err.println("EmuLink: ignoring unhandled event '" + event + "'");
         }
         return true;
     }
 
+    /* Binary protocol version of handleMessage with the same semantics */
+    protected boolean handleFrame(int opcode, String node, ByteBuffer payload) {
+        if (DEBUG) {
+            System.out.println("EmuLink: RECV frame " + opcode + " '" + node + "' "
+                    + payload.remaining() + " bytes");
+        }
+        String[] nodes = node == null ? null : new String[] { node };
+        switch (opcode) {
+        case OP_CREATE:
+            createNodes(UTF8.decode(payload).toString(), nodes);
+            break;
+        case OP_WRITE:
+            writeFirmware(nodes, UTF8.decode(payload).toString());
+            break;
+        case OP_START:
+            startNodes(nodes, payload.remaining() >= 8 ? payload.getLong() : 0);
+            break;
+        case OP_STOP:
+            stopNodes(nodes);
+            break;
+        case OP_SERIAL:
+            if (node != null) {
+                sendSerialToNode(node, payload);
+            }
+            /* No response to serial data */
+            return true;
+        case OP_CLOSE:
+            currentConnection.sendFrame(OP_RESPONSE | opcode, node, ByteBuffer.wrap(RESPONSE_OK));
+            return false;
+        default:
+            System.err.println("EmuLink: ignoring unhandled opcode " + opcode);
+            return true;
+        }
+        currentConnection.sendFrame(OP_RESPONSE | opcode, node, ByteBuffer.wrap(RESPONSE_OK));
+        return true;
+    }
+
     protected void sendToSimulator(String message) {
-        if (out != null) {
-            out.write(message);
-            out.flush();
+        if (currentConnection != null) {
+            currentConnection.send(message.getBytes(UTF8));
         }
     }
 
-    protected void sendSerialToNode(String node, int data) {
+    protected void sendSerialToNode(String node, ByteBuffer data) {
+        SerialLink link = serialLinks.get(node);
+        if (link == null) {
+            System.err.println("EmuLink: no serial port for node '" + node + "'");
+        } else {
+            link.stream.write(data);
+            if (data.hasRemaining()) {
+                System.err.println("EmuLink: serial input overflow for node '" + node + "'");
+            }
+        }
     }
 
-    protected void disconnect() {
-        boolean isDisconnecting = isConnected;
-        isConnected = false;
-        try {
-            if (isDisconnecting) {
-                System.err.println("EmuLink: disconnecting...");
+    /* Forward serial output from the node to all controllers */
+    private void sendSerialFromNode(SerialLink link) {
+        ByteBuffer buffer = link.buffer;
+        while (true) {
+            buffer.clear();
+            if (link.stream.read(buffer) == 0) {
+                break;
             }
-            if (out != null) {
-                out.close();
-                out = null;
+            buffer.flip();
+            byte[] json = null;
+            for (int i = 0, n = connections.size(); i < n; i++) {
+                Connection c = connections.get(i);
+                if (c.output.position() >= MAX_MESSAGE_SIZE) {
+                    if (DEBUG) {
+                        System.out.println("EmuLink: dropping serial data to slow controller");
+                    }
+                } else if (c.isBinary) {
+                    c.sendFrame(OP_SERIAL, link.id, buffer.duplicate());
+                } else {
+                    if (json == null) {
+                        json = toJSONSerial(link.id, buffer.duplicate());
+                    }
+                    c.send(json);
+                }
             }
-            if (in != null) {
-                in.close();
-                in = null;
+        }
+    }
+
+    private byte[] toJSONSerial(String node, ByteBuffer data) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"event\":\"serial\",\"node\":\"").append(node).append("\",\"data\":[");
+        for (int i = 0, n = data.remaining(); i < n; i++) {
+            if (i > 0) {
+                sb.append(',');
             }
-            if (socket != null) {
-                socket.close();
-                socket = null;
+            sb.append(data.get() & 0xff);
+        }
+        sb.append("]}");
+        return sb.toString().getBytes(UTF8);
+    }
+
+    private class SerialLink implements USARTStream.StreamListener {
+        final String id;
+        final USARTStream stream;
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        final AtomicBoolean isReady = new AtomicBoolean();
+
+        SerialLink(String id, USARTStream stream) {
+            this.id = id;
+            this.stream = stream;
+        }
+
+        public void streamReady(USARTStream stream) {
+            if (isReady.compareAndSet(false, true)) {
+                readySerialLinks.add(this);
+                selector.wakeup();
             }
-            if (isDisconnecting) {
-                System.err.println("EmuLink: disconnected");
+        }
+    }
+
+    private class Connection {
+        final SocketChannel channel;
+        final SelectionKey key;
+        ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+        ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE);
+        boolean isBinary = false;
+        boolean isDetected = false;
+
+        /* The JSON object being received */
+        byte[] message = new byte[256];
+        int messageLength;
+        int brackets = 0;
+        boolean stuffed = false;
+        boolean quoted = false;
+        boolean isClosing = false;
+
+        Connection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            channel.configureBlocking(false);
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+        }
+
+        private void ensureOutput(int size) {
+            if (output.remaining() < size) {
+                ByteBuffer b = ByteBuffer.allocate(Math.max(output.capacity() * 2, output.position() + size));
+                output.flip();
+                b.put(output);
+                output = b;
+            }
+        }
+
+        void send(byte[] data) {
+            ensureOutput(data.length);
+            output.put(data);
+        }
+
+        void sendFrame(int opcode, String node, ByteBuffer payload) {
+            byte[] id = node == null ? null : node.getBytes(UTF8);
+            int idLength = id == null ? 0 : id.length;
+            ensureOutput(6 + idLength + payload.remaining());
+            output.putInt(2 + idLength + payload.remaining());
+            output.put((byte) opcode);
+            output.put((byte) idLength);
+            if (id != null) {
+                output.put(id);
+            }
+            output.put(payload);
+        }
+
+        void read() throws IOException, ParseException {
+            if (!input.hasRemaining()) {
+                /* Only binary frames are kept in the input buffer */
+                if (input.capacity() > MAX_MESSAGE_SIZE) {
+                    throw new ParseException("message too large");
+                }
+                ByteBuffer b = ByteBuffer.allocate(input.capacity() * 2);
+                input.flip();
+                b.put(input);
+                input = b;
+            }
+            if (channel.read(input) < 0) {
+                close();
+                return;
+            }
+            input.flip();
+            if (!isDetected && input.hasRemaining()) {
+                byte c = input.get(input.position());
+                isBinary = c != '{' && c != ' ' && c != '\n' && c != '\r' && c != '\t';
+                isDetected = true;
+            }
+            if (isBinary) {
+                readFrames();
+            } else {
+                readJSON();
+            }
+            input.compact();
+        }
+
+        private void readFrames() throws ParseException {
+            while (input.remaining() >= 4 && !isClosing) {
+                int start = input.position();
+                int length = input.getInt(start);
+                if (length < 2 || length > MAX_MESSAGE_SIZE) {
+                    throw new ParseException("illegal frame length " + length);
+                }
+                if (input.remaining() < 4 + length) {
+                    break;
+                }
+                int end = start + 4 + length;
+                int opcode = input.get(start + 4) & 0xff;
+                int idLength = input.get(start + 5) & 0xff;
+                String node = null;
+                if (idLength > 0) {
+                    ByteBuffer id = input.duplicate();
+                    id.position(start + 6).limit(start + 6 + idLength);
+                    node = UTF8.decode(id).toString();
+                }
+                /* The payload is handed over without copying */
+                ByteBuffer payload = input.duplicate();
+                payload.position(start + 6 + idLength).limit(end);
+                input.position(end);
+                currentConnection = this;
+                try {
+                    if (!handleFrame(opcode, node, payload)) {
+                        isClosing = true;
+                    }
+                } finally {
+                    currentConnection = null;
+                }
+            }
+        }
+
+        private void readJSON() throws ParseException {
+            while (input.hasRemaining() && !isClosing) {
+                byte c = input.get();
+                if (brackets == 0 && c != '{') {
+                    // Skip whitespace between messages
+                    continue;
+                }
+                if (messageLength == message.length) {
+                    if (messageLength >= MAX_MESSAGE_SIZE) {
+                        throw new ParseException("message too large");
+                    }
+                    message = Arrays.copyOf(message, messageLength * 2);
+                }
+                message[messageLength++] = c;
+                if (stuffed) {
+                    stuffed = false;
+                } else if (c == '\\') {
+                    stuffed = true;
+                } else if (quoted) {
+                    if (c == '"') {
+                        quoted = false;
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == '{') {
+                    brackets++;
+                } else if (c == '}') {
+                    brackets--;
+                    if (brackets == 0) {
+                        JSONObject json = JSONObject.parseJSONObject(new String(message, 0, messageLength, UTF8));
+                        messageLength = 0;
+                        currentConnection = this;
+                        try {
+                            if (!handleMessage(json)) {
+                                // This connection should no longer be kept alive
+                                isClosing = true;
+                            }
+                        } finally {
+                            currentConnection = null;
+                        }
+                    }
+                }
+            }
+            if (isClosing) {
+                input.position(input.limit());
+            }
+        }
+
+        void flush() throws IOException {
+            if (output.position() > 0) {
+                output.flip();
+                channel.write(output);
+                output.compact();
+            }
+            if (output.position() > 0) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            } else if (isClosing) {
+                close();
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        void close() {
+            if (connections.remove(this)) {
+                System.err.println("EmuLink: disconnecting " + channel.socket().getRemoteSocketAddress());
+            }
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("EmuLink: failed to close emulation link connection");
+                e.printStackTrace();
             }
-        } catch (IOException e) {
-            System.err.println("EmuLink: failed to close emulation link connection");
-            e.printStackTrace();
         }
     }
 
     public void run() {
-        try (ServerSocket serverSocket = new ServerSocket(8000)) {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            selector = Selector.open();
+            server.socket().setReuseAddress(true);
+            server.socket().bind(new InetSocketAddress(DEFAULT_PORT));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            System.out.println("EmuLink: Waiting for connections...");
 
             while(true) {
+                selector.select();
 
-                System.out.println("EmuLink: Waiting for connection...");
-                try {
-                    socket = serverSocket.accept();
-                } catch (IOException e) {
-                    System.out.println("Accept failed: 8000");
-                    System.exit(-1);
+                SerialLink link;
+                while ((link = readySerialLinks.poll()) != null) {
+                    link.isReady.set(false);
+                    sendSerialFromNode(link);
                 }
-                System.out.println("EmuLink: Connection accepted...");
 
-                try {
-                    out = new PrintWriter(socket.getOutputStream(), true);
-                    in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                    processInput(in);
-                } catch (Exception e) {
-                    System.err.println("EmuLink: emulator link connection failed");
-                    e.printStackTrace();
-                } finally {
-                    disconnect();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        SocketChannel channel = server.accept();
+                        if (channel != null) {
+                            System.out.println("EmuLink: Connection accepted from " + channel.socket().getRemoteSocketAddress());
+                            connections.add(new Connection(channel));
+                        }
+                        continue;
+                    }
+                    Connection c = (Connection) key.attachment();
+                    try {
+                        c.read();
+                    } catch (Exception e) {
+                        System.err.println("EmuLink: emulator link connection failed");
+                        e.printStackTrace();
+                        c.close();
+                    }
+                }
+
+                /* Backwards as connections might be closed when flushed */
+                for (int i = connections.size() - 1; i >= 0; i--) {
+                    Connection c = connections.get(i);
+                    try {
+                        c.flush();
+                    } catch (IOException e) {
+                        c.close();
+                    }
                 }
             }
         } catch (IOException e) {
-            System.out.println("Could not listen on port: 8000");
+            System.out.println("Could not listen on port: " + DEFAULT_PORT);
             System.exit(-1);
         }
     }
@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2026, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ * This file is part of MSPSim.
+ *
+ * -----------------------------------------------------------------
+ * Benchmark
+ *
+ * Created : 19 oct 2026
+ */
+
+package se.sics.mspsim.platform;
+import java.io.IOException;
+
+import se.sics.mspsim.Main;
+import se.sics.mspsim.cli.CommandHandler;
+import se.sics.mspsim.core.EmulationException;
+import se.sics.mspsim.core.MSP430;
+import se.sics.mspsim.util.ConfigManager;
+
+/**
+ * Benchmark - measures the instruction throughput of the CPU emulation
+ * by running a firmware on a node for a number of rounds.
+ *
+ * Usage: Benchmark <firmware> [instructions per round] [rounds]
+ *
+ * The platform is given by the firmware file suffix as for
+ * se.sics.mspsim.Main. The first rounds include JIT warm up and are
+ * not representative.
+ */
+public class Benchmark {
+
+  public static void main(String[] args) throws IOException, EmulationException {
+    if (args.length < 1) {
+      System.err.println("Usage: Benchmark <firmware> [instructions per round] [rounds]");
+      System.exit(1);
+    }
+    String firmwareFile = args[0];
+    int instructions = args.length > 1 ? Integer.parseInt(args[1]) : 10000000;
+    int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+    String platform = firmwareFile.substring(firmwareFile.lastIndexOf('.') + 1);
+    GenericNode node = Main.createNode(Main.getNodeTypeByPlatform(platform));
+    if (node == null) {
+      System.err.println("MSPSim does not currently support the platform '" + platform + "'.");
+      System.exit(1);
+    }
+    node.getRegistry().registerComponent("commandHandler", new CommandHandler(System.out, System.err));
+    node.loadFirmware(firmwareFile);
+    ConfigManager config = new ConfigManager();
+    config.setProperty("firmwareFile", firmwareFile);
+    node.setup(config);
+
+    MSP430 cpu = node.getCPU();
+    double best = 0;
+    for (int i = 0; i < rounds; i++) {
+      long start = System.nanoTime();
+      cpu.stepInstructions(instructions);
+      long elapsed = System.nanoTime() - start;
+      double mips = instructions * 1000.0 / elapsed;
+      if (mips > best) {
+        best = mips;
+      }
+      System.out.printf("Round %2d: %7.2f MIPS  (%d ms, %d cycles)\n", i + 1, mips,
+          elapsed / 1000000, cpu.cycles);
+    }
+    System.out.printf("%s: best %.2f MIPS\n", platform, best);
+  }
+
+}
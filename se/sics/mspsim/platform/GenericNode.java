@@ -64,7 +64,9 @@ import se.sics.mspsim.ui.WindowUtils;
 import se.sics.mspsim.util.ArgumentManager;
 import se.sics.mspsim.util.ComponentRegistry;
 import se.sics.mspsim.util.ConfigManager;
+import se.sics.mspsim.util.DefaultEmulationLogger;
 import se.sics.mspsim.util.ELF;
+import se.sics.mspsim.util.FirmwareCache;
 import se.sics.mspsim.util.IHexReader;
 import se.sics.mspsim.util.MapTable;
 import se.sics.mspsim.util.OperatingModeStatistics;
@@ -214,6 +216,12 @@ public abstract class GenericNode extends Chip implements Runnable {
     registry.registerComponent("cpu", cpu);
     registry.registerComponent("node", this);
     registry.registerComponent("config", config);
+
+    cpu.configureExecution(config);
+    if (config.getPropertyAsBoolean("asyncLog", false)
+        && cpu.getLogger() instanceof DefaultEmulationLogger) {
+        ((DefaultEmulationLogger) cpu.getLogger()).setAsynchronous(true);
+    }
     
     CommandHandler ch = registry.getComponent(CommandHandler.class, "commandHandler");
 
@@ -309,9 +317,7 @@ public abstract class GenericNode extends Chip implements Runnable {
       byteStream.write(firmwareData, 0, read);
     }
     inputStream.close();
-    ELF elf = new ELF(byteStream.toByteArray());
-    elf.readAll();
-    return loadFirmware(elf, memory);
+    return loadFirmware(FirmwareCache.getELF(byteStream.toByteArray()), memory);
   }
 
   public ELF loadFirmware(String name) throws IOException {
@@ -319,7 +325,7 @@ public abstract class GenericNode extends Chip implements Runnable {
   }
 
   @Deprecated public ELF loadFirmware(String name, int[] memory) throws IOException {
-    return loadFirmware(ELF.readELF(firmwareFile = name), memory);
+    return loadFirmware(FirmwareCache.getELF(firmwareFile = name), memory);
   }
 
   public ELF loadFirmware(ELF elf) {
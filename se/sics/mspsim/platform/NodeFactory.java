@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2026, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ * This file is part of MSPSim.
+ *
+ * -----------------------------------------------------------------
+ * NodeFactory
+ *
+ * Created : 19 oct 2026
+ */
+
+package se.sics.mspsim.platform;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import se.sics.mspsim.cli.CommandHandler;
+import se.sics.mspsim.util.ConfigManager;
+import se.sics.mspsim.util.ELF;
+import se.sics.mspsim.util.FirmwareCache;
+
+/**
+ * Bulk construction of nodes running the same firmware. The nodes are
+ * created, loaded and set up in parallel on a fork-join pool while the
+ * firmware is parsed only once and shared through the firmware cache.
+ *
+ * Nodes created this way have no GUI and their command handlers write
+ * to System.out/System.err without reading commands from System.in.
+ */
+public class NodeFactory {
+
+  private static ForkJoinPool pool;
+
+  private NodeFactory() {
+  }
+
+  private static synchronized ForkJoinPool getPool() {
+    if (pool == null) {
+      pool = new ForkJoinPool();
+    }
+    return pool;
+  }
+
+  public static GenericNode[] createNodes(String nodeType, int count,
+      String firmwareFile, ConfigManager config) throws IOException {
+    Class<? extends GenericNode> nodeClass;
+    try {
+      nodeClass = Class.forName(nodeType).asSubclass(GenericNode.class);
+    } catch (ClassNotFoundException e) {
+      throw new IllegalArgumentException("unknown node type: " + nodeType, e);
+    } catch (ClassCastException e) {
+      throw new IllegalArgumentException("not a node type: " + nodeType, e);
+    }
+    return createNodes(nodeClass, count, firmwareFile, config);
+  }
+
+  public static GenericNode[] createNodes(Class<? extends GenericNode> nodeClass, int count,
+      String firmwareFile, ConfigManager config) throws IOException {
+    if (config == null) {
+      config = new ConfigManager();
+    }
+    // Parse the firmware once up front and share it between the nodes
+    ELF elf = FirmwareCache.getELF(firmwareFile);
+
+    GenericNode[] nodes = new GenericNode[count];
+    try {
+      getPool().invoke(new CreateTask(nodeClass, nodes, 0, count, firmwareFile, elf, config));
+    } catch (NodeCreationException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw e;
+    }
+    return nodes;
+  }
+
+  private static GenericNode createNode(Class<? extends GenericNode> nodeClass,
+      String firmwareFile, ELF elf, ConfigManager config) throws IOException {
+    GenericNode node;
+    try {
+      node = nodeClass.getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException e) {
+      throw new NodeCreationException(e);
+    }
+    node.getRegistry().registerComponent("commandHandler",
+        new CommandHandler(System.out, System.err));
+    node.firmwareFile = firmwareFile;
+    node.loadFirmware(elf);
+    ConfigManager nodeConfig = new ConfigManager(config);
+    nodeConfig.setProperty("firmwareFile", firmwareFile);
+    node.setup(nodeConfig);
+    return node;
+  }
+
+  private static class CreateTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Class<? extends GenericNode> nodeClass;
+    private final GenericNode[] nodes;
+    private final int from;
+    private final int to;
+    private final String firmwareFile;
+    private final ELF elf;
+    private final ConfigManager config;
+
+    CreateTask(Class<? extends GenericNode> nodeClass, GenericNode[] nodes, int from, int to,
+        String firmwareFile, ELF elf, ConfigManager config) {
+      this.nodeClass = nodeClass;
+      this.nodes = nodes;
+      this.from = from;
+      this.to = to;
+      this.firmwareFile = firmwareFile;
+      this.elf = elf;
+      this.config = config;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from == 1) {
+        try {
+          nodes[from] = createNode(nodeClass, firmwareFile, elf, config);
+        } catch (IOException e) {
+          throw new NodeCreationException(e);
+        }
+      } else if (to > from) {
+        int middle = (from + to) >>> 1;
+        invokeAll(new CreateTask(nodeClass, nodes, from, middle, firmwareFile, elf, config),
+            new CreateTask(nodeClass, nodes, middle, to, firmwareFile, elf, config));
+      }
+    }
+  }
+
+  private static class NodeCreationException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    NodeCreationException(Exception cause) {
+      super(cause);
+    }
+  }
+
+}
@@ -47,6 +47,7 @@ import se.sics.mspsim.cli.CommandHandler;
 import se.sics.mspsim.core.MSP430;
 import se.sics.mspsim.core.Memory.AccessMode;
 import se.sics.mspsim.core.MemoryMonitor;
+import se.sics.mspsim.core.MemoryWatchRange;
 import se.sics.mspsim.core.Profiler;
 import se.sics.mspsim.profiler.CallEntry;
 import se.sics.mspsim.profiler.CallListener;
@@ -62,7 +63,7 @@ public class ContikiChecker implements CallListener, ActiveComponent {
     private ComponentRegistry registry;
 
     private CommandContext context;
-    private MemoryMonitor monitor;
+    private MemoryWatchRange lowMemoryWatch;
     private MSP430 cpu;
     private Profiler profiler;
 
@@ -94,26 +95,22 @@ public class ContikiChecker implements CallListener, ActiveComponent {
                     profiler.addCallListener(ContikiChecker.this);
 
                     context.out.println("Installing watchpoints...");
-                    monitor = new MemoryMonitor.Adapter() {
+                    lowMemoryWatch = new MemoryWatchRange(0, 0x100, MemoryWatchRange.WRITE, new MemoryMonitor.Adapter() {
                         @Override
                         public void notifyWriteBefore(int dstAddress, int data, AccessMode mode) {
                             context.out.println("Warning: write to " + dstAddress +
                                     " from " + profiler.getCall(0));
                                 //profiler.printStackTrace(context.out);
                         }
-                    };
-                    for (int i = 0; i < 0x100; i++) {
-                        cpu.addWatchPoint(i, monitor);
-                    }
+                    });
+                    cpu.addWatchRange(lowMemoryWatch);
                     return 0;
                 }
 
                 public void stopCommand(CommandContext context) {
-                    if (monitor != null) {
-                        for (int i = 0; i < 0x100; i++) {
-                            cpu.removeWatchPoint(i, monitor);
-                        }
-                        monitor = null;
+                    if (lowMemoryWatch != null) {
+                        cpu.removeWatchRange(lowMemoryWatch);
+                        lowMemoryWatch = null;
                         cpu = null;
                     }
                     if (profiler != null) {
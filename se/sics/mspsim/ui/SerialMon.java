@@ -50,6 +50,9 @@ import javax.swing.JPopupMenu;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.Timer;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
 
 import se.sics.mspsim.core.StateChangeListener;
 import se.sics.mspsim.core.USARTListener;
@@ -60,6 +63,8 @@ import se.sics.mspsim.util.ServiceComponent;
 public class SerialMon implements USARTListener, StateChangeListener, ServiceComponent {
 
   private static final int MAX_LINES = 200;
+  /* Received text is shown in the window at most this many times per second */
+  private static final int UPDATES_PER_SECOND = 25;
 
   private String name;
   private ServiceComponent.Status status = Status.STOPPED;
@@ -73,14 +78,20 @@ public class SerialMon implements USARTListener, StateChangeListener, ServiceCom
   private String[] history = new String[50];
   private int historyPos = 0;
   private int historyCount = 0;
-  private String text = "*** Serial mon for MSPsim ***\n";
+
+  /* Lines received but not yet shown. Only the last MAX_LINES are kept
+   * and the first line might be the tail of a line partly shown. */
+  private final String[] lineBuffer = new String[MAX_LINES];
+  private int lineStart;
+  private int lineCount;
+  private boolean linesDropped;
+  private final StringBuilder currentLine = new StringBuilder();
+  private int currentLineShown;
+  private Timer updateTimer;
 
   private ArrayDeque<String> sendQueue = new ArrayDeque<String>(8);
   private int sendIndex;
 
-  private int lines = 1;
-  private boolean isUpdatePending = false;
-
   public SerialMon(USARTSource usart, String title) {
     this.usart = usart;
     this.title = title;
@@ -105,7 +116,7 @@ public class SerialMon implements USARTListener, StateChangeListener, ServiceCom
 			       JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED,
 			       JScrollPane.HORIZONTAL_SCROLLBAR_NEVER),
 	       BorderLayout.CENTER);
-    textArea.setText(text);
+    textArea.setText("*** Serial mon for MSPsim ***\n");
     textArea.setEditable(false);
 
     JPopupMenu popupMenu = new JPopupMenu();
@@ -114,7 +125,6 @@ public class SerialMon implements USARTListener, StateChangeListener, ServiceCom
 
       public void actionPerformed(ActionEvent e) {
         textArea.setText("");
-        lines = 0;
       }
 
     });
@@ -188,6 +198,12 @@ public class SerialMon implements USARTListener, StateChangeListener, ServiceCom
     String key = "usart." + name;
     WindowUtils.restoreWindowBounds(key, window);
     WindowUtils.addSaveOnShutdown(key, window);
+
+    updateTimer = new Timer(1000 / UPDATES_PER_SECOND, new ActionListener() {
+      public void actionPerformed(ActionEvent e) {
+        updateText();
+      }
+    });
   }
 
   public void start() {
@@ -197,6 +213,7 @@ public class SerialMon implements USARTListener, StateChangeListener, ServiceCom
       usart.addStateChangeListener(this);
     }
     window.setVisible(true);
+    updateTimer.start();
     status = Status.STARTED;
   }
 
@@ -204,36 +221,68 @@ public class SerialMon implements USARTListener, StateChangeListener, ServiceCom
     status = Status.STOPPED;
     if (window != null) {
       window.setVisible(false);
+      updateTimer.stop();
     }
     usart.removeUSARTListener(this);
     usart.removeStateChangeListener(this);
   }
 
   public void dataReceived(USARTSource source, int data) {
-    if (data == '\n') {
-      if (lines >= MAX_LINES) {
-	int index = text.indexOf('\n');
-	text = text.substring(index + 1);
-      } else {
-	lines++;
+    synchronized (lineBuffer) {
+      currentLine.append((char) data);
+      if (data == '\n') {
+        if (lineCount == MAX_LINES) {
+          /* Drop the oldest line - the window is not keeping up */
+          lineStart = (lineStart + 1) % MAX_LINES;
+          lineCount--;
+          linesDropped = true;
+        }
+        lineBuffer[(lineStart + lineCount++) % MAX_LINES] = currentLine.substring(currentLineShown);
+        currentLine.setLength(0);
+        currentLineShown = 0;
       }
     }
-    text += (char)data;
+  }
 
-    // Collapse several immediate updates
-    if (!isUpdatePending) {
-      isUpdatePending = true;
-      EventQueue.invokeLater(new Runnable() {
-	  public void run() {
-	    isUpdatePending = false;
-
-	    final String newText = text;
-	    textArea.setText(newText);
-	    textArea.setCaretPosition(newText.length());
-	    textArea.repaint();
-	  }
-	});
+  /* Appends the text received since last update to the window (called
+   * by the update timer in the event dispatch thread) */
+  private void updateText() {
+    String newText;
+    boolean clear;
+    synchronized (lineBuffer) {
+      if (lineCount == 0 && currentLineShown == currentLine.length()) {
+        return;
+      }
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < lineCount; i++) {
+        int index = (lineStart + i) % MAX_LINES;
+        sb.append(lineBuffer[index]);
+        lineBuffer[index] = null;
+      }
+      /* Lines have been lost - replace the window content since the
+       * first buffered line might not follow the shown text */
+      clear = linesDropped;
+      sb.append(currentLine, clear ? 0 : currentLineShown, currentLine.length());
+      currentLineShown = currentLine.length();
+      lineStart = lineCount = 0;
+      linesDropped = false;
+      newText = sb.toString();
+    }
+
+    Document document = textArea.getDocument();
+    try {
+      if (clear) {
+        document.remove(0, document.getLength());
+      }
+      document.insertString(document.getLength(), newText, null);
+      int excess = textArea.getLineCount() - MAX_LINES;
+      if (excess > 0) {
+        document.remove(0, textArea.getLineStartOffset(excess));
+      }
+    } catch (BadLocationException e) {
+      // Should not happen since the document is only modified in the event thread
     }
+    textArea.setCaretPosition(document.getLength());
   }
 
 
@@ -121,6 +121,10 @@ public class ArrayFIFO {
         return name + " len: " + len + " rpos: " + readPos + " wpos: " + writePos;
     }
 
+    public String toString() {
+        return stateToString();
+    }
+
 
     public boolean tailEquals(int[] data, int offset, int len) {
         return tailEquals(data, offset, len, 0);
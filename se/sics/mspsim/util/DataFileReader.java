@@ -0,0 +1,204 @@
+/**
+ * Copyright (c) 2026, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ * This file is part of MSPSim.
+ *
+ * -----------------------------------------------------------------
+ * DataFileReader
+ *
+ * Created : 19 oct 2026
+ */
+
+package se.sics.mspsim.util;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Reads the data records written by DataFileWriter. The source records
+ * are handled by the reader and next() returns the data records.
+ *
+ * Usage: java se.sics.mspsim.util.DataFileReader file
+ * prints the records as text.
+ */
+public class DataFileReader {
+
+    private final DataInputStream input;
+    private final ArrayList<String> sources = new ArrayList<String>();
+
+    private int type;
+    private int source;
+    private long cycle;
+    private long[] longs;
+    private double[] doubles;
+    private String text;
+    private byte[] data;
+
+    public DataFileReader(String file) throws IOException {
+        input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        byte[] magic = new byte[DataFileWriter.MAGIC.length];
+        input.readFully(magic);
+        int version = input.read();
+        if (!Arrays.equals(magic, DataFileWriter.MAGIC) || version != DataFileWriter.VERSION) {
+            input.close();
+            throw new IOException("not a data file: " + file);
+        }
+    }
+
+    /* Reads the next data record. Returns false at end of file. */
+    public boolean next() throws IOException {
+        try {
+            int t;
+            while ((t = input.read()) == DataFileWriter.SOURCE) {
+                int id = input.readUnsignedShort();
+                byte[] name = new byte[input.readUnsignedShort()];
+                input.readFully(name);
+                while (sources.size() <= id) {
+                    sources.add(null);
+                }
+                sources.set(id, new String(name, DataFileWriter.UTF8));
+            }
+            if (t < 0) {
+                return false;
+            }
+            type = t;
+            source = input.readUnsignedShort();
+            cycle = input.readLong();
+            longs = null;
+            doubles = null;
+            text = null;
+            data = null;
+            switch (type) {
+            case DataFileWriter.LONGS:
+                longs = new long[input.readUnsignedShort()];
+                for (int i = 0; i < longs.length; i++) {
+                    longs[i] = input.readLong();
+                }
+                break;
+            case DataFileWriter.DOUBLES:
+                doubles = new double[input.readUnsignedShort()];
+                for (int i = 0; i < doubles.length; i++) {
+                    doubles[i] = input.readDouble();
+                }
+                break;
+            case DataFileWriter.TEXT:
+            case DataFileWriter.BYTES:
+                data = new byte[input.readInt()];
+                input.readFully(data);
+                if (type == DataFileWriter.TEXT) {
+                    text = new String(data, DataFileWriter.UTF8);
+                    data = null;
+                }
+                break;
+            default:
+                throw new IOException("unknown record type " + type);
+            }
+        } catch (EOFException e) {
+            /* Last record is incomplete if the file was not closed */
+            return false;
+        }
+        return true;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public int getSourceId() {
+        return source;
+    }
+
+    public String getSource() {
+        return source < sources.size() ? sources.get(source) : null;
+    }
+
+    public long getCycle() {
+        return cycle;
+    }
+
+    public long[] getLongs() {
+        return longs;
+    }
+
+    public double[] getDoubles() {
+        return doubles;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public byte[] getBytes() {
+        return data;
+    }
+
+    public void close() throws IOException {
+        input.close();
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(cycle).append(' ').append(getSource());
+        if (longs != null) {
+            for (long v : longs) {
+                sb.append(' ').append(v);
+            }
+        } else if (doubles != null) {
+            for (double v : doubles) {
+                sb.append(' ').append(v);
+            }
+        } else if (text != null) {
+            sb.append(' ').append(text);
+        } else if (data != null) {
+            sb.append(' ');
+            for (byte b : data) {
+                sb.append(Utils.hex8(b & 0xff));
+            }
+        }
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: DataFileReader <file>");
+            System.exit(1);
+        }
+        DataFileReader reader = new DataFileReader(args[0]);
+        try {
+            while (reader.next()) {
+                System.out.println(reader);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+}
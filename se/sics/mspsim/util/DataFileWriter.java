@@ -0,0 +1,203 @@
+/**
+ * Copyright (c) 2026, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ * This file is part of MSPSim.
+ *
+ * -----------------------------------------------------------------
+ * DataFileWriter
+ *
+ * Created : 19 oct 2026
+ */
+
+package se.sics.mspsim.util;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+
+/**
+ * Writes data records (cycle, source, values) to a binary file. The
+ * records are buffered and written with a file channel when the buffer
+ * is full. Use DataFileReader or tools/mspsimdata.py to read the file.
+ *
+ * File format, all values big endian:
+ * <pre>
+ *   header:  "MSPD" u8 version
+ *   source:  u8 0, u16 id, u16 length, name (UTF-8)
+ *   longs:   u8 1, u16 id, i64 cycle, u16 count, count * i64
+ *   doubles: u8 2, u16 id, i64 cycle, u16 count, count * f64
+ *   text:    u8 3, u16 id, i64 cycle, u32 length, text (UTF-8)
+ *   bytes:   u8 4, u16 id, i64 cycle, u32 length, data
+ * </pre>
+ * A source record is written before the first record from each source.
+ */
+public class DataFileWriter {
+
+    public static final byte[] MAGIC = { 'M', 'S', 'P', 'D' };
+    public static final int VERSION = 1;
+
+    public static final int SOURCE = 0;
+    public static final int LONGS = 1;
+    public static final int DOUBLES = 2;
+    public static final int TEXT = 3;
+    public static final int BYTES = 4;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /* Type, source id and cycle */
+    private static final int RECORD_HEADER = 1 + 2 + 8;
+
+    private final String name;
+    private final FileOutputStream output;
+    private final FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final HashMap<String,Integer> sources = new HashMap<String,Integer>();
+    private long records;
+    private boolean isClosed;
+
+    public DataFileWriter(String name) throws IOException {
+        this.name = name;
+        this.output = new FileOutputStream(new File(name));
+        this.channel = output.getChannel();
+        buffer.put(MAGIC);
+        buffer.put((byte) VERSION);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized long getRecordCount() {
+        return records;
+    }
+
+    /* Returns the id of the source and defines the source if it is new */
+    public synchronized int getSourceId(String source) throws IOException {
+        Integer id = sources.get(source);
+        if (id == null) {
+            if (sources.size() > 0xffff) {
+                throw new IOException("too many data sources");
+            }
+            id = sources.size();
+            sources.put(source, id);
+            byte[] data = source.getBytes(UTF8);
+            int len = Math.min(data.length, 0xffff);
+            ensure(5 + len);
+            buffer.put((byte) SOURCE);
+            buffer.putShort((short) (int) id);
+            buffer.putShort((short) len);
+            buffer.put(data, 0, len);
+        }
+        return id;
+    }
+
+    public synchronized void write(int source, long cycle, long... values) throws IOException {
+        int count = Math.min(values.length, 0xffff);
+        putHeader(LONGS, source, cycle, 2 + count * 8);
+        buffer.putShort((short) count);
+        for (int i = 0; i < count; i++) {
+            buffer.putLong(values[i]);
+        }
+    }
+
+    public synchronized void write(int source, long cycle, double... values) throws IOException {
+        int count = Math.min(values.length, 0xffff);
+        putHeader(DOUBLES, source, cycle, 2 + count * 8);
+        buffer.putShort((short) count);
+        for (int i = 0; i < count; i++) {
+            buffer.putDouble(values[i]);
+        }
+    }
+
+    public synchronized void write(int source, long cycle, String text) throws IOException {
+        byte[] data = text.getBytes(UTF8);
+        putHeader(TEXT, source, cycle, 4 + data.length);
+        buffer.putInt(data.length);
+        buffer.put(data);
+    }
+
+    public synchronized void write(int source, long cycle, byte[] data, int offset, int len) throws IOException {
+        putHeader(BYTES, source, cycle, 4 + len);
+        buffer.putInt(len);
+        buffer.put(data, offset, len);
+    }
+
+    private void putHeader(int type, int source, long cycle, int size) throws IOException {
+        if (isClosed) {
+            throw new IOException("data file " + name + " is closed");
+        }
+        ensure(RECORD_HEADER + size);
+        buffer.put((byte) type);
+        buffer.putShort((short) source);
+        buffer.putLong(cycle);
+        records++;
+    }
+
+    private void ensure(int size) throws IOException {
+        if (buffer.remaining() < size) {
+            writeBuffer();
+            if (buffer.capacity() < size) {
+                /* Larger record than the buffer - use a temporary buffer */
+                buffer = ByteBuffer.allocate(size);
+            }
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (buffer.capacity() > BUFFER_SIZE) {
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        } else {
+            buffer.clear();
+        }
+    }
+
+    public synchronized void flush() throws IOException {
+        if (!isClosed) {
+            writeBuffer();
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        if (!isClosed) {
+            try {
+                writeBuffer();
+            } finally {
+                isClosed = true;
+                output.close();
+            }
+        }
+    }
+
+}
@@ -3,18 +3,22 @@ package se.sics.mspsim.util;
 import java.io.PrintStream;
 
 import se.sics.mspsim.core.EmulationException;
-import se.sics.mspsim.core.EmulationLogger;
+import se.sics.mspsim.core.EmulationLoggerAdapter;
 import se.sics.mspsim.core.LogListener;
 import se.sics.mspsim.core.Loggable;
 import se.sics.mspsim.core.MSP430Core;
+import se.sics.mspsim.core.TimedLogListener;
 
-public class DefaultEmulationLogger implements EmulationLogger {
+public class DefaultEmulationLogger extends EmulationLoggerAdapter implements LogRingBuffer.Sink {
+
+  public static final int DEFAULT_BUFFER_SIZE = 8192;
 
   private final MSP430Core cpu;
   private final WarningMode[] warningModes = new WarningMode[WarningType.values().length];
   private WarningMode defaultMode = WarningMode.PRINT;
   private PrintStream out;
   private LogListener[] logListeners;
+  private volatile LogRingBuffer buffer;
   
   public DefaultEmulationLogger(MSP430Core cpu, PrintStream out) {
     this.cpu = cpu;
@@ -29,13 +33,82 @@ public class DefaultEmulationLogger implements EmulationLogger {
       return mode;
   }
 
+  public boolean isAsynchronous() {
+      return buffer != null;
+  }
+
+  /* Hands log messages to a background thread instead of the listeners */
+  public synchronized void setAsynchronous(boolean async) {
+      if (async && buffer == null) {
+          LogRingBuffer b = new LogRingBuffer(DEFAULT_BUFFER_SIZE, this);
+          b.start();
+          buffer = b;
+      } else if (!async && buffer != null) {
+          LogRingBuffer b = buffer;
+          buffer = null;
+          b.stop();
+      }
+  }
+
+  public long getDroppedMessages() {
+      LogRingBuffer b = buffer;
+      return b != null ? b.getDropped() : 0;
+  }
+
+  public void flush() {
+      LogRingBuffer b = buffer;
+      if (b != null) {
+          b.flush();
+      }
+  }
+
   @Override
   public void log(Loggable source, String message) {
 //      out.println(source.getID() + ": " + message);
+      if (logListeners == null) {
+          return;
+      }
+      LogRingBuffer b = buffer;
+      if (b != null) {
+          b.put(cpu.cycles, source, message);
+      } else {
+          logRecord(cpu.cycles, source, message);
+      }
+  }
+
+  @Override
+  public void log(Loggable source, String format, long arg0, long arg1, long arg2) {
+      if (logListeners == null) {
+          // Nobody is listening - no need to format the message
+          return;
+      }
+      LogRingBuffer b = buffer;
+      if (b != null) {
+          b.put(cpu.cycles, source, format, arg0, arg1, arg2);
+      } else {
+          logRecord(cpu.cycles, source, String.format(format, arg0, arg1, arg2));
+      }
+  }
+
+  @Override
+  public void log(Loggable source, String format, Object... args) {
+      if (logListeners == null) {
+          return;
+      }
+      // The arguments might change later so format right away
+      log(source, String.format(format, args));
+  }
+
+  @Override
+  public void logRecord(long cycles, Loggable source, String message) {
       LogListener[] listeners = this.logListeners;
       if (listeners != null) {
           for (LogListener l : listeners) {
-              l.log(source, message);
+              if (l instanceof TimedLogListener) {
+                  ((TimedLogListener) l).log(cycles, source, message);
+              } else {
+                  l.log(source, message);
+              }
           }
       }
   }
@@ -43,6 +116,8 @@ public class DefaultEmulationLogger implements EmulationLogger {
   @Override
   public void logw(Loggable source, WarningType type, String message)
           throws EmulationException {
+      // Keep warnings ordered after the messages logged before them
+      flush();
       switch (getMode(type)) {
       case SILENT:
           break;
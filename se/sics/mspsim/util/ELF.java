@@ -37,12 +37,12 @@
 
 package se.sics.mspsim.util;
 import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 import se.sics.mspsim.debug.DwarfReader;
@@ -72,7 +72,8 @@ public class ELF {
   int shnum;
   int shstrndx;
 
-  byte[] elfData;
+  /* The file contents - copied into a heap buffer when read from a file */
+  final ByteBuffer elfData;
   private int pos = 0;
 
   private ELFSection sections[];
@@ -83,10 +84,18 @@ public class ELF {
   ELFSection symTable;
   ELFSection dbgStab;
   public ELFSection dbgStabStr;
+  private boolean hasDwarf;
 
-  ELFDebug debug;
+  /* Symbols and debug information are decoded on first use */
+  private ELFDebug debug;
+  private boolean debugLoaded;
+  private MapTable map;
 
   public ELF(byte[] data) {
+    this(ByteBuffer.wrap(data));
+  }
+
+  public ELF(ByteBuffer data) {
     elfData = data;
     setPos(0);
   }
@@ -110,18 +119,21 @@ public class ELF {
   }
 
   private void readHeader() throws ELFException {
+    if (elfData.limit() < 52) {
+      throw new ELFException("Not an elf file");
+    }
     for (int i = 0; i < MAGIC.length; i++) {
-      if (elfData[i] != (byte) (MAGIC[i] & 0xff)) {
+      if (elfData.get(i) != (byte) (MAGIC[i] & 0xff)) {
         throw new ELFException("Not an elf file");
       }
     }
     
-    if (elfData[EI_ENCODING] == 2) {
+    if (elfData.get(EI_ENCODING) == 2) {
       encMSB = true;
-    } else if (elfData[EI_ENCODING] == 1) {
+    } else if (elfData.get(EI_ENCODING) == 1) {
       encMSB = false;
     } else {
-      throw new ELFException("Illegal encoding: " + elfData[EI_ENCODING]);
+      throw new ELFException("Illegal encoding: " + elfData.get(EI_ENCODING));
     }
     
     setPos(getPos() + 16);
@@ -219,15 +231,15 @@ public class ELF {
   int readElf32(int pos) {
     int b = 0;
     if (encMSB) {
-      b = (elfData[pos++] & 0xff) << 24 |
-	((elfData[pos++] & 0xff) << 16) |
-	((elfData[pos++] & 0xff) << 8) |
-	(elfData[pos++] & 0xff);
+      b = (elfData.get(pos++) & 0xff) << 24 |
+	((elfData.get(pos++) & 0xff) << 16) |
+	((elfData.get(pos++) & 0xff) << 8) |
+	(elfData.get(pos++) & 0xff);
     } else {
-      b = (elfData[pos++] & 0xff) |
-	((elfData[pos++] & 0xff) << 8) |
-	((elfData[pos++] & 0xff) << 16) |
-	((elfData[pos++] & 0xff) << 24);
+      b = (elfData.get(pos++) & 0xff) |
+	((elfData.get(pos++) & 0xff) << 8) |
+	((elfData.get(pos++) & 0xff) << 16) |
+	((elfData.get(pos++) & 0xff) << 24);
     }
     return b;
   }
@@ -235,17 +247,17 @@ public class ELF {
   int readElf16(int pos) {
     int b = 0;
     if (encMSB) {
-      b = ((elfData[pos++] & 0xff) << 8) |
-	(elfData[pos++] & 0xff);
+      b = ((elfData.get(pos++) & 0xff) << 8) |
+	(elfData.get(pos++) & 0xff);
     } else {
-      b = (elfData[pos++] & 0xff) |
-	((elfData[pos++] & 0xff) << 8);
+      b = (elfData.get(pos++) & 0xff) |
+	((elfData.get(pos++) & 0xff) << 8);
     }
     return b;
   }
 
   int readElf8(int pos) {
-    return elfData[pos++] & 0xff;
+    return elfData.get(pos) & 0xff;
   }
 
   public static void printBytes(String name, byte[] data) {
@@ -270,7 +282,6 @@ public class ELF {
       }
     }
 
-    boolean readDwarf = false;
     /* Find sections */
     for (int i = 0, n = shnum; i < n; i++) {
         String name = sections[i].getSectionName();
@@ -285,15 +296,9 @@ public class ELF {
       }
       if (".debug_aranges".equals(name) || 
           ".debug_line".equals(name)) {
-          readDwarf = true;
+          hasDwarf = true;
       }
     }
-    if (readDwarf) {
-        DwarfReader dwarf = new DwarfReader(this);
-        dwarf.read();
-        debug = dwarf;
-    }
-
   }
 
   private void readPrograms() {
@@ -307,13 +312,11 @@ public class ELF {
     }
   }
 
+  /* Only reads the headers - symbols and debug sections are decoded when first used */
   public void readAll() throws ELFException {
     readHeader();
     readPrograms();
     readSections();
-    if (dbgStab != null) {
-      debug = new StabDebug(this, dbgStab, dbgStabStr);
-    }
   }
 
   public void loadPrograms(int[] memory) {
@@ -331,7 +334,7 @@ public class ELF {
              Integer.toString(addr, 16) + " fill " + fill);
     }
     for (int i = 0, n = len; i < n; i++) {
-      memory[addr++] = elfData[offset++] & 0xff;
+      memory[addr++] = elfData.get(offset++) & 0xff;
     }
     if (fill > len) {
       int n = fill - len;
@@ -344,18 +347,31 @@ public class ELF {
     }
   }
 
-  public ELFDebug getDebug() {
+  public synchronized ELFDebug getDebug() {
+    if (!debugLoaded) {
+      debugLoaded = true;
+      /* STABS are preferred over DWARF when both are available */
+      if (dbgStab != null) {
+        debug = new StabDebug(this, dbgStab, dbgStabStr);
+      } else if (hasDwarf) {
+        DwarfReader dwarf = new DwarfReader(this);
+        dwarf.read();
+        debug = dwarf;
+      }
+    }
     return debug;
   }
 
   public DebugInfo getDebugInfo(int adr) {
+      ELFDebug debug = getDebug();
       if (debug != null) {
           return debug.getDebugInfo(adr);
       }
       return null;
   }
 
-  public String lookupFile(int address) {
+  public synchronized String lookupFile(int address) {
+    ELFDebug debug = getDebug();
     if (debug != null) {
         DebugInfo di = debug.getDebugInfo(address);
         if (di != null) {
@@ -371,7 +387,14 @@ public class ELF {
     return null;
   }
 
-  public MapTable getMap() {
+  public synchronized MapTable getMap() {
+    if (map == null) {
+      map = readMap();
+    }
+    return map;
+  }
+
+  private MapTable readMap() {
     MapTable map = new MapTable();
     int sAddrHighest = -1;
 
@@ -432,19 +455,12 @@ public class ELF {
 
 
 	if (type == ELFSection.SYMTYPE_FUNCTION) {
-          String file = lookupFile(sAddr);
-          if (file == null) {
-            file = currentFile;
-          }
-	  map.setEntry(new MapEntry(MapEntry.TYPE.function, sAddr, 0, symbolName, file,
-	      bind == ELFSection.SYMBIND_LOCAL));
+          /* The file is looked up in the debug information when first asked for */
+	  map.setEntry(new MapEntry(MapEntry.TYPE.function, sAddr, 0, symbolName, currentFile,
+	      bind == ELFSection.SYMBIND_LOCAL, this));
 	} else if (type == ELFSection.SYMTYPE_OBJECT) {
-          String file = lookupFile(sAddr);
-          if (file == null) {
-            file = currentFile;
-          }
-	  map.setEntry(new MapEntry(MapEntry.TYPE.variable, sAddr, size, symbolName, file,
-	      bind == ELFSection.SYMBIND_LOCAL));
+	  map.setEntry(new MapEntry(MapEntry.TYPE.variable, sAddr, size, symbolName, currentFile,
+	      bind == ELFSection.SYMBIND_LOCAL, this));
 	} else {
 	  if (DEBUG) {
 	    System.out.println("Skipping entry: '" + symbolName + "' @ 0x" + Integer.toString(sAddr, 16) + " (" + currentFile + ")");
@@ -463,18 +479,27 @@ public class ELF {
     return map;
   }
 
-  public static ELF readELF(String file) throws IOException {
-    DataInputStream input = new DataInputStream(new FileInputStream(file));
-    ByteArrayOutputStream baous = new ByteArrayOutputStream();
-    byte[] buf = new byte[2048];
-    for(int read; (read = input.read(buf)) != -1; baous.write(buf, 0, read)) {
-      ;
+  static ByteBuffer readFile(String file) throws IOException {
+    RandomAccessFile input = new RandomAccessFile(file, "r");
+    try {
+      // Copy to the heap: sections are decoded lazily and the file might
+      // be rebuilt while the emulator is running
+      long length = input.length();
+      if (length > Integer.MAX_VALUE) {
+        throw new IOException("firmware file too large: " + file);
+      }
+      byte[] data = new byte[(int) length];
+      input.readFully(data);
+      return ByteBuffer.wrap(data);
+    } finally {
+      input.close();
     }
-    input.close();
-    buf = null;
-    byte[] data = baous.toByteArray();
+  }
+
+  public static ELF readELF(String file) throws IOException {
+    ByteBuffer data = readFile(file);
     if (DEBUG) {
-      System.out.println("Length of data: " + data.length);
+      System.out.println("Length of data: " + data.limit());
     }
 
     ELF elf = new ELF(data);
@@ -499,7 +524,7 @@ public class ELF {
           }
           for (int j = 0, m = 2000; j < m; j++) {
             if (DEBUG) {
-              System.out.print((char) elf.elfData[adr++]);
+              System.out.print((char) elf.elfData.get(adr++));
               if (i % 20 == 19) {
                 System.out.println();
               }
@@ -38,14 +38,17 @@
  */
 
 package se.sics.mspsim.util;
-import java.util.ArrayList;
 
 public interface ELFDebug {
 
   public DebugInfo getDebugInfo(int address);
 
-  public ArrayList<Integer> getExecutableAddresses();
+  /* The returned array is shared and must not be modified */
+  public int[] getExecutableAddresses();
 
   public String[] getSourceFiles();
 
+  /* Returns the addresses of a source line (file name with or without path) */
+  public int[] getLineAddresses(String file, int line);
+
 } // ELFDebug
@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2026, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ * This file is part of MSPSim.
+ *
+ * -----------------------------------------------------------------
+ * FirmwareCache
+ *
+ * Created : 19 oct 2026
+ */
+
+package se.sics.mspsim.util;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process wide cache of parsed firmware images keyed by a hash of the file
+ * contents. Files are first looked up by path, size and modification time
+ * so that a cache hit does not need to read the file again. Nodes started
+ * from the same image share one ELF instance and with it the symbol map
+ * and debug information, which are only decoded once. Entries are softly
+ * referenced and are dropped by the garbage collector when memory gets
+ * low.
+ *
+ * Set the system property mspsim.firmwareCache to false to disable.
+ */
+public class FirmwareCache {
+
+  private static final boolean ENABLED =
+      !"false".equals(System.getProperty("mspsim.firmwareCache"));
+
+  private static final ConcurrentHashMap<String, Entry> cache =
+      new ConcurrentHashMap<String, Entry>();
+  private static final ConcurrentHashMap<String, String> fileKeys =
+      new ConcurrentHashMap<String, String>();
+  private static final ReferenceQueue<ELF> queue = new ReferenceQueue<ELF>();
+
+  private static long hits;
+  private static long misses;
+
+  private static class Entry extends SoftReference<ELF> {
+    final String key;
+
+    Entry(String key, ELF elf) {
+      super(elf, queue);
+      this.key = key;
+    }
+  }
+
+  private FirmwareCache() {
+  }
+
+  public static ELF getELF(String file) throws IOException {
+    if (!ENABLED) {
+      return parse(ELF.readFile(file));
+    }
+    expunge();
+
+    // An unchanged file maps to the same contents without rehashing it
+    File f = new File(file);
+    String fileKey = f.getCanonicalPath() + ':' + f.length() + ':' + f.lastModified();
+    String key = fileKeys.get(fileKey);
+    if (key != null) {
+      Entry entry = cache.get(key);
+      ELF elf = entry != null ? entry.get() : null;
+      if (elf != null) {
+        synchronized (FirmwareCache.class) {
+          hits++;
+        }
+        return elf;
+      }
+    }
+
+    ByteBuffer data = ELF.readFile(file);
+    key = hash(data);
+    fileKeys.put(fileKey, key);
+    return getELF(key, data);
+  }
+
+  public static ELF getELF(byte[] data) throws IOException {
+    return getELF(ByteBuffer.wrap(data));
+  }
+
+  /* Precompiled firmware images are recognized by their magic */
+  private static ELF parse(ByteBuffer data) throws IOException {
+    if (FirmwareImage.isImage(data)) {
+      return new FirmwareImage(data);
+    }
+    ELF elf = new ELF(data);
+    elf.readAll();
+    return elf;
+  }
+
+  public static ELF getELF(ByteBuffer data) throws IOException {
+    if (!ENABLED) {
+      return parse(data);
+    }
+    expunge();
+    return getELF(hash(data), data);
+  }
+
+  private static ELF getELF(String key, ByteBuffer data) throws IOException {
+    Entry entry = cache.get(key);
+    ELF elf = entry != null ? entry.get() : null;
+    if (elf != null) {
+      synchronized (FirmwareCache.class) {
+        hits++;
+      }
+      return elf;
+    }
+
+    elf = parse(data);
+    synchronized (FirmwareCache.class) {
+      misses++;
+      // Another thread might have parsed the same image meanwhile
+      entry = cache.get(key);
+      ELF other = entry != null ? entry.get() : null;
+      if (other != null) {
+        return other;
+      }
+      cache.put(key, new Entry(key, elf));
+    }
+    return elf;
+  }
+
+  public static synchronized void clear() {
+    cache.clear();
+    fileKeys.clear();
+  }
+
+  public static int size() {
+    expunge();
+    return cache.size();
+  }
+
+  public static synchronized String info() {
+    return "Firmware cache: " + size() + " images, " + hits + " hits, " + misses + " misses";
+  }
+
+  private static void expunge() {
+    Reference<? extends ELF> ref;
+    while ((ref = queue.poll()) != null) {
+      Entry entry = (Entry) ref;
+      cache.remove(entry.key, entry);
+    }
+  }
+
+  static String hash(ByteBuffer data) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    // Use a duplicate so that the position of the shared buffer is untouched
+    digest.update(data.duplicate());
+    byte[] sum = digest.digest();
+    StringBuilder sb = new StringBuilder(sum.length * 2);
+    for (byte b : sum) {
+      sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,488 @@
+/**
+ * Copyright (c) 2026, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ * This file is part of MSPSim.
+ *
+ * -----------------------------------------------------------------
+ * FirmwareImage
+ *
+ * Created : 19 oct 2026
+ */
+
+package se.sics.mspsim.util;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * Precompiled firmware image that is loaded with a single read of the file.
+ *
+ * The image holds the memory contents as flat segments, the symbol table
+ * sorted on address with files already resolved and a line index mapping
+ * address ranges to source lines. Line lookups and source line addresses
+ * are binary searches directly in the loaded image, as the line addresses
+ * are sorted on line. Images are created from ELF or Intel HEX files with
+ *
+ *   java se.sics.mspsim.util.FirmwareImage firmware.sky firmware.mspimg
+ *
+ * Format (big endian): magic "MSPI", version, heap start, stack start,
+ * string table, memory segments, symbols, line index, line addresses,
+ * executable addresses and source files. Strings are referenced by
+ * index, -1 is null.
+ */
+public class FirmwareImage extends ELF {
+
+  private static final int MAGIC = ('M' << 24) | ('S' << 16) | ('P' << 8) | 'I';
+  private static final int VERSION = 2;
+  private static final int MAX_MEMORY = 0x100000;
+  private static final int LINE_RECORD_SIZE = 5 * 4;
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final String[] strings;
+  private final int heapStart;
+  private final int stackStart;
+  private final int segmentsOffset;
+  private final int segmentCount;
+  private final int symbolsOffset;
+  private final int symbolCount;
+  private final int linesOffset;
+  private final int lineCount;
+  private final int lineAddressesOffset;
+  private final int lineAddressCount;
+  private final int[] executableAddresses;
+  private final String[] sourceFiles;
+
+  private MapTable map;
+  private final ELFDebug debug = new ELFDebug() {
+
+    public DebugInfo getDebugInfo(int address) {
+      return FirmwareImage.this.getDebugInfo(address);
+    }
+
+    public int[] getExecutableAddresses() {
+      return executableAddresses;
+    }
+
+    public String[] getSourceFiles() {
+      return sourceFiles.clone();
+    }
+
+    public int[] getLineAddresses(String file, int line) {
+      /* First record for the line */
+      int low = 0;
+      int high = lineAddressCount;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (elfData.getInt(lineAddressesOffset + mid * 16 + 8) < line) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      int[] addresses = new int[16];
+      int count = 0;
+      for (int i = low; i < lineAddressCount; i++) {
+        int pos = lineAddressesOffset + i * 16;
+        if (elfData.getInt(pos + 8) != line) {
+          break;
+        }
+        if (matchesFile(file, elfData.getInt(pos), elfData.getInt(pos + 4))) {
+          if (count == addresses.length) {
+            addresses = Arrays.copyOf(addresses, count * 2);
+          }
+          addresses[count++] = elfData.getInt(pos + 12);
+        }
+      }
+      return Arrays.copyOf(addresses, count);
+    }
+  };
+
+  public FirmwareImage(ByteBuffer data) throws ELFException {
+    super(data);
+    if (!isImage(data)) {
+      throw new ELFException("Not a firmware image");
+    }
+    int version = data.getInt(4);
+    if (version != VERSION) {
+      throw new ELFException("Unsupported firmware image version: " + version);
+    }
+    ByteBuffer in = data.duplicate();
+    in.position(8);
+    heapStart = in.getInt();
+    stackStart = in.getInt();
+
+    strings = new String[in.getInt()];
+    for (int i = 0; i < strings.length; i++) {
+      byte[] buf = new byte[in.getInt()];
+      in.get(buf);
+      strings[i] = new String(buf, UTF8);
+    }
+
+    segmentCount = in.getInt();
+    segmentsOffset = in.position();
+    for (int i = 0; i < segmentCount; i++) {
+      in.getInt();
+      int length = in.getInt();
+      in.position(in.position() + ((length + 3) & ~3));
+    }
+
+    symbolCount = in.getInt();
+    symbolsOffset = in.position();
+    in.position(symbolsOffset + symbolCount * 20);
+
+    lineCount = in.getInt();
+    linesOffset = in.position();
+    in.position(linesOffset + lineCount * LINE_RECORD_SIZE);
+
+    lineAddressCount = in.getInt();
+    lineAddressesOffset = in.position();
+    in.position(lineAddressesOffset + lineAddressCount * 16);
+
+    executableAddresses = new int[in.getInt()];
+    in.asIntBuffer().get(executableAddresses);
+    in.position(in.position() + executableAddresses.length * 4);
+
+    sourceFiles = new String[in.getInt()];
+    for (int i = 0; i < sourceFiles.length; i++) {
+      sourceFiles[i] = getString(in.getInt());
+    }
+  }
+
+  public static boolean isImage(ByteBuffer data) {
+    return data.limit() >= 8 && data.getInt(0) == MAGIC;
+  }
+
+  public static FirmwareImage readImage(String file) throws IOException {
+    return new FirmwareImage(readFile(file));
+  }
+
+  private String getString(int index) {
+    return index >= 0 ? strings[index] : null;
+  }
+
+  private boolean matchesFile(String file, int pathIndex, int fileIndex) {
+    String name = getString(fileIndex);
+    if (name == null) {
+      return false;
+    }
+    String path = getString(pathIndex);
+    return file.equals(name) || (path != null && file.equals(path + name))
+        || file.equals(new java.io.File(name).getName());
+  }
+
+  @Override
+  public void readAll() {
+    // Everything needed is read by the constructor
+  }
+
+  @Override
+  public void loadPrograms(int[] memory) {
+    int pos = segmentsOffset;
+    for (int i = 0; i < segmentCount; i++) {
+      int address = elfData.getInt(pos);
+      int length = elfData.getInt(pos + 4);
+      pos += 8;
+      for (int j = 0; j < length; j++) {
+        memory[address + j] = elfData.get(pos + j) & 0xff;
+      }
+      pos += (length + 3) & ~3;
+    }
+  }
+
+  @Override
+  public synchronized MapTable getMap() {
+    if (map == null) {
+      MapTable map = new MapTable();
+      MapEntry.TYPE[] types = MapEntry.TYPE.values();
+      for (int i = 0; i < symbolCount; i++) {
+        int pos = symbolsOffset + i * 20;
+        int type = elfData.get(pos + 8);
+        boolean isLocal = elfData.get(pos + 9) != 0;
+        map.setEntry(new MapEntry(types[type], elfData.getInt(pos), elfData.getInt(pos + 4),
+            getString(elfData.getInt(pos + 12)), getString(elfData.getInt(pos + 16)), isLocal));
+      }
+      map.setHeapStart(heapStart);
+      map.setStackStart(stackStart);
+      this.map = map;
+    }
+    return map;
+  }
+
+  @Override
+  public ELFDebug getDebug() {
+    return lineCount > 0 ? debug : null;
+  }
+
+  @Override
+  public DebugInfo getDebugInfo(int address) {
+    /* last record starting at or before the address */
+    int low = 0;
+    int high = lineCount - 1;
+    int found = -1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (elfData.getInt(linesOffset + mid * LINE_RECORD_SIZE) <= address) {
+        found = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    if (found < 0) {
+      return null;
+    }
+    int pos = linesOffset + found * LINE_RECORD_SIZE;
+    int line = elfData.getInt(pos + 12);
+    if (line < 0) {
+      return null;
+    }
+    return new DebugInfo(line, getString(elfData.getInt(pos + 4)), getString(elfData.getInt(pos + 8)),
+        getString(elfData.getInt(pos + 16)));
+  }
+
+  @Override
+  public String lookupFile(int address) {
+    DebugInfo di = getDebugInfo(address);
+    return di != null ? di.getFile() : null;
+  }
+
+  // -------------------------------------------------------------------
+  // Image creation
+  // -------------------------------------------------------------------
+
+  private static class StringTable {
+    final ArrayList<String> strings = new ArrayList<String>();
+    final HashMap<String,Integer> index = new HashMap<String,Integer>();
+
+    int get(String s) {
+      if (s == null) {
+        return -1;
+      }
+      Integer i = index.get(s);
+      if (i == null) {
+        i = strings.size();
+        strings.add(s);
+        index.put(s, i);
+      }
+      return i;
+    }
+  }
+
+  /* Writes an image of the firmware. The ELF is null for Intel HEX files. */
+  public static void writeImage(String file, int[] memory, ELF elf) throws IOException {
+    StringTable strings = new StringTable();
+
+    /* Memory segments - runs of loaded (non negative) memory */
+    ArrayList<int[]> segments = new ArrayList<int[]>();
+    for (int i = 0; i < memory.length; i++) {
+      if (memory[i] >= 0) {
+        int start = i;
+        while (i < memory.length && memory[i] >= 0) {
+          i++;
+        }
+        segments.add(new int[] { start, i - start });
+      }
+    }
+
+    /* Symbols sorted on address */
+    MapEntry[] symbols = new MapEntry[0];
+    int heapStart = -1;
+    int stackStart = -1;
+    if (elf != null) {
+      MapTable map = elf.getMap();
+      symbols = map.getAllEntries();
+      heapStart = map.getHeapStart();
+      stackStart = map.getStackStart();
+      Arrays.sort(symbols, new Comparator<MapEntry>() {
+        public int compare(MapEntry a, MapEntry b) {
+          return a.getAddress() < b.getAddress() ? -1 : (a.getAddress() == b.getAddress() ? 0 : 1);
+        }
+      });
+    }
+
+    /* Line index - run length encoded debug info over the loaded memory */
+    ArrayList<int[]> lines = new ArrayList<int[]>();
+    ELFDebug debug = elf != null ? elf.getDebug() : null;
+    if (debug != null) {
+      int[] last = null;
+      int end = -1;
+      for (int[] segment : segments) {
+        if (last != null && last[3] >= 0 && segment[0] > end) {
+          // Nothing known between segments
+          lines.add(last = new int[] { end, -1, -1, -1, -1 });
+        }
+        for (int adr = segment[0], n = segment[0] + segment[1]; adr < n; adr++) {
+          DebugInfo di = debug.getDebugInfo(adr);
+          int[] record = di == null ? new int[] { adr, -1, -1, -1, -1 }
+              : new int[] { adr, strings.get(di.getPath()), strings.get(di.getFile()),
+                            di.getLine(), strings.get(di.getFunction()) };
+          if (last == null || last[1] != record[1] || last[2] != record[2]
+              || last[3] != record[3] || last[4] != record[4]) {
+            lines.add(last = record);
+          }
+        }
+        end = segment[0] + segment[1];
+      }
+      if (last != null && last[3] >= 0) {
+        lines.add(new int[] { end, -1, -1, -1, -1 });
+      }
+    }
+
+    /* Addresses of each source line as reported by the debug info */
+    ArrayList<int[]> lineAddresses = new ArrayList<int[]>();
+    HashMap<String,Boolean> seen = new HashMap<String,Boolean>();
+    for (int[] record : lines) {
+      if (record[2] >= 0 && record[3] >= 0 && seen.put(record[2] + ":" + record[3], Boolean.TRUE) == null) {
+        for (int address : debug.getLineAddresses(strings.strings.get(record[2]), record[3])) {
+          lineAddresses.add(new int[] { record[1], record[2], record[3], address });
+        }
+      }
+    }
+    /* Sorted on line, file and address for binary search on line */
+    Collections.sort(lineAddresses, new Comparator<int[]>() {
+      public int compare(int[] a, int[] b) {
+        if (a[2] != b[2]) {
+          return a[2] < b[2] ? -1 : 1;
+        }
+        if (a[1] != b[1]) {
+          return a[1] < b[1] ? -1 : 1;
+        }
+        if (a[0] != b[0]) {
+          return a[0] < b[0] ? -1 : 1;
+        }
+        return a[3] < b[3] ? -1 : (a[3] == b[3] ? 0 : 1);
+      }
+    });
+
+    int[] executable = debug != null ? debug.getExecutableAddresses() : new int[0];
+    String[] sourceFiles = debug != null ? debug.getSourceFiles() : new String[0];
+    int[] symbolNames = new int[symbols.length];
+    int[] symbolFiles = new int[symbols.length];
+    for (int i = 0; i < symbols.length; i++) {
+      symbolNames[i] = strings.get(symbols[i].getName());
+      symbolFiles[i] = strings.get(symbols[i].getFile());
+    }
+    int[] sourceFileIndex = new int[sourceFiles.length];
+    for (int i = 0; i < sourceFiles.length; i++) {
+      sourceFileIndex[i] = strings.get(sourceFiles[i]);
+    }
+
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(heapStart);
+      out.writeInt(stackStart);
+
+      out.writeInt(strings.strings.size());
+      for (String s : strings.strings) {
+        byte[] data = s.getBytes(UTF8);
+        out.writeInt(data.length);
+        out.write(data);
+      }
+
+      out.writeInt(segments.size());
+      for (int[] segment : segments) {
+        out.writeInt(segment[0]);
+        out.writeInt(segment[1]);
+        for (int i = 0; i < segment[1]; i++) {
+          out.writeByte(memory[segment[0] + i]);
+        }
+        for (int i = segment[1]; (i & 3) != 0; i++) {
+          out.writeByte(0);
+        }
+      }
+
+      out.writeInt(symbols.length);
+      for (int i = 0; i < symbols.length; i++) {
+        out.writeInt(symbols[i].getAddress());
+        out.writeInt(symbols[i].getSize());
+        out.writeByte(symbols[i].getType().ordinal());
+        out.writeByte(symbols[i].isLocal() ? 1 : 0);
+        out.writeShort(0);
+        out.writeInt(symbolNames[i]);
+        out.writeInt(symbolFiles[i]);
+      }
+
+      out.writeInt(lines.size());
+      for (int[] record : lines) {
+        for (int v : record) {
+          out.writeInt(v);
+        }
+      }
+
+      out.writeInt(lineAddresses.size());
+      for (int[] record : lineAddresses) {
+        for (int v : record) {
+          out.writeInt(v);
+        }
+      }
+
+      out.writeInt(executable.length);
+      for (int address : executable) {
+        out.writeInt(address);
+      }
+
+      out.writeInt(sourceFileIndex.length);
+      for (int index : sourceFileIndex) {
+        out.writeInt(index);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: FirmwareImage <firmware.elf | firmware.ihex> <image>");
+      System.exit(1);
+    }
+    int[] memory = new int[MAX_MEMORY];
+    Arrays.fill(memory, -1);
+    ELF elf = null;
+    if (args[0].endsWith("ihex")) {
+      if (!new IHexReader().readFile(memory, args[0])) {
+        System.err.println("Failed to read " + args[0]);
+        System.exit(1);
+      }
+    } else {
+      elf = ELF.readELF(args[0]);
+      elf.loadPrograms(memory);
+    }
+    writeImage(args[1], memory, elf);
+    System.out.println("Wrote firmware image " + args[1]);
+  }
+
+}
@@ -0,0 +1,832 @@
+/**
+ * Copyright (c) 2026, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ * This file is part of MSPSim.
+ *
+ * -----------------------------------------------------------------
+ * GDBServer
+ *
+ * Created : 19 oct 2026
+ */
+
+package se.sics.mspsim.util;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import se.sics.mspsim.core.EmulationException;
+import se.sics.mspsim.core.MSP430;
+import se.sics.mspsim.core.MSP430Core;
+import se.sics.mspsim.core.Memory.AccessMode;
+import se.sics.mspsim.core.Memory.AccessType;
+import se.sics.mspsim.core.MemoryMonitor;
+
+/**
+ * GDB remote serial protocol server for any number of CPUs. Each CPU is
+ * shown to GDB as a thread and all CPUs and connections on the same port
+ * are served by one selector thread.
+ *
+ * Breakpoints are set in all CPUs. A CPU that hits a breakpoint stops
+ * and is reported to GDB while the other CPUs continue to execute. A
+ * stop that occurs while GDB is not waiting is queued and reported as
+ * soon as GDB resumes.
+ * Memory and register packets use the CPU selected with Hg and steps
+ * use the CPU given in vCont or selected with Hc.
+ */
+public class GDBServer implements Runnable {
+
+    private final static boolean DEBUG = false;
+    private final static String OK = "OK";
+
+    /* Largest packet accepted from GDB */
+    private final static int PACKET_SIZE = 0x4000;
+    private final static byte[] HEX = "0123456789abcdef".getBytes();
+
+    private static final HashMap<Integer, GDBServer> servers = new HashMap<Integer, GDBServer>();
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final AtomicInteger lastTargetId = new AtomicInteger();
+    private final ArrayList<Target> targets = new ArrayList<Target>();
+    private final ArrayList<Connection> connections = new ArrayList<Connection>();
+    private final ArrayList<Integer> breakpoints = new ArrayList<Integer>();
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private final ConcurrentLinkedQueue<Target> stoppedTargets = new ConcurrentLinkedQueue<Target>();
+
+    /* Returns the server for the port and opens it if needed */
+    public static synchronized GDBServer getServer(int port) throws IOException {
+        GDBServer server = servers.get(port);
+        if (server == null) {
+            server = new GDBServer(port);
+            servers.put(port, server);
+        }
+        return server;
+    }
+
+    private GDBServer(int port) throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().setReuseAddress(true);
+        serverChannel.socket().bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        Thread thread = new Thread(this, "GDBServer " + port);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public Target addTarget(MSP430Core cpu, String name) {
+        final Target target = new Target(lastTargetId.incrementAndGet(), cpu, name);
+        invoke(new Runnable() {
+            public void run() {
+                targets.add(target);
+                for (int addr : breakpoints) {
+                    target.cpu.addWatchPoint(addr, target.monitor);
+                }
+            }
+        });
+        return target;
+    }
+
+    public void removeTarget(final Target target) {
+        invoke(new Runnable() {
+            public void run() {
+                if (targets.remove(target)) {
+                    for (int addr : breakpoints) {
+                        target.cpu.removeWatchPoint(addr, target.monitor);
+                    }
+                    for (Connection c : connections) {
+                        if (c.current == target) {
+                            c.current = null;
+                        }
+                        if (c.stepTarget == target) {
+                            c.stepTarget = null;
+                        }
+                        c.pendingStops.remove(target);
+                    }
+                }
+            }
+        });
+    }
+
+    private void invoke(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    public class Target {
+
+        public final int id;
+        public final MSP430Core cpu;
+        public final String name;
+
+        private boolean isStepping;
+        private boolean isResumed;
+        private volatile Thread thread;
+
+        private final MemoryMonitor monitor = new MemoryMonitor.Adapter() {
+            @Override
+            public void notifyReadBefore(int address, AccessMode mode, AccessType type) {
+                if (type == AccessType.EXECUTE && !isStepping && cpu instanceof MSP430) {
+                    ((MSP430) cpu).triggBreakpoint();
+                    if (thread == null) {
+                        /* Not executed by the server - report the stop now */
+                        stoppedTargets.add(Target.this);
+                        selector.wakeup();
+                    }
+                }
+            }
+        };
+
+        private Target(int id, MSP430Core cpu, String name) {
+            this.id = id;
+            this.cpu = cpu;
+            this.name = name;
+        }
+
+        public boolean isRunning() {
+            return cpu instanceof MSP430 && ((MSP430) cpu).isRunning();
+        }
+
+        private void step() throws EmulationException {
+            if (cpu instanceof MSP430 && !isRunning()) {
+                isStepping = true;
+                try {
+                    ((MSP430) cpu).stepInstructions(1);
+                } finally {
+                    isStepping = false;
+                }
+            }
+        }
+
+        private void resume() throws EmulationException {
+            isResumed = true;
+            if (!(cpu instanceof MSP430) || isRunning()) {
+                return;
+            }
+            if (breakpoints.contains(cpu.getPC())) {
+                /* Step over the breakpoint at the current position */
+                step();
+            }
+            final MSP430 msp = (MSP430) cpu;
+            thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        msp.cpuloop();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                    stoppedTargets.add(Target.this);
+                    selector.wakeup();
+                }
+            }, "GDBServer " + name);
+            thread.start();
+        }
+
+        /* Only requests the stop - use waitForStop() to wait for it */
+        private void stop() {
+            isResumed = false;
+            if (cpu instanceof MSP430) {
+                ((MSP430) cpu).stop();
+            }
+        }
+
+        private void waitForStop() {
+            Thread t = thread;
+            thread = null;
+            try {
+                if (t != null) {
+                    t.join(1000);
+                } else {
+                    for (int i = 0; i < 100 && isRunning(); i++) {
+                        Thread.sleep(1);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Target getTarget(int id) {
+        for (Target t : targets) {
+            if (t.id == id) {
+                return t;
+            }
+        }
+        return null;
+    }
+
+    private void addBreakpoint(int addr) {
+        if (!breakpoints.contains(addr)) {
+            breakpoints.add(addr);
+            for (Target t : targets) {
+                t.cpu.addWatchPoint(addr, t.monitor);
+            }
+        }
+    }
+
+    private void removeBreakpoint(int addr) {
+        if (breakpoints.remove((Integer) addr)) {
+            for (Target t : targets) {
+                t.cpu.removeWatchPoint(addr, t.monitor);
+            }
+        }
+    }
+
+    public void run() {
+        while (true) {
+            try {
+                selector.select();
+
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+
+                Target target;
+                while ((target = stoppedTargets.poll()) != null) {
+                    if (target.isResumed) {
+                        target.isResumed = false;
+                        target.waitForStop();
+                        for (Connection c : connections) {
+                            if (c.isWaiting) {
+                                c.isWaiting = false;
+                                c.current = target;
+                                c.sendStop(5, target);
+                            } else if (!c.pendingStops.contains(target)) {
+                                /* GDB is at another stop - report this one when it resumes */
+                                c.pendingStops.add(target);
+                            }
+                        }
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        SocketChannel channel = serverChannel.accept();
+                        if (channel != null) {
+                            System.out.println("GDBServer: connection from " + channel.socket().getRemoteSocketAddress());
+                            connections.add(new Connection(channel));
+                        }
+                        continue;
+                    }
+                    Connection c = (Connection) key.attachment();
+                    try {
+                        c.read();
+                    } catch (IOException e) {
+                        c.close();
+                    } catch (EmulationException e) {
+                        e.printStackTrace();
+                    } catch (RuntimeException e) {
+                        /* Most likely a malformed packet - only drop this client */
+                        System.out.println("GDBServer: closing connection after error: " + e);
+                        c.close();
+                    }
+                }
+
+                /* Backwards as connections might be closed when flushed */
+                for (int i = connections.size() - 1; i >= 0; i--) {
+                    connections.get(i).flush();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private class Connection {
+
+        final SocketChannel channel;
+        final SelectionKey key;
+        final ByteBuffer input = ByteBuffer.allocate(PACKET_SIZE);
+        ByteBuffer output = ByteBuffer.allocate(PACKET_SIZE);
+
+        boolean noAckMode;
+        boolean isWaiting;
+        boolean isClosing;
+        /* Target for memory and registers and the target to step */
+        Target current;
+        Target stepTarget;
+        /* Targets that stopped while this client was not waiting */
+        final ArrayDeque<Target> pendingStops = new ArrayDeque<Target>();
+
+        /* 0 = between packets, 1 = in packet, 2-3 = in checksum */
+        int state;
+        int checksum;
+        int receivedChecksum;
+        byte[] packet = new byte[PACKET_SIZE];
+        int packetLen;
+
+        Connection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+        }
+
+        void read() throws IOException, EmulationException {
+            if (channel.read(input) < 0) {
+                close();
+                return;
+            }
+            input.flip();
+            while (input.hasRemaining() && !isClosing) {
+                int c = input.get() & 0xff;
+                switch (state) {
+                case 0:
+                    if (c == '$') {
+                        state = 1;
+                        checksum = 0;
+                        packetLen = 0;
+                    } else if (c == 3) {
+                        interrupt();
+                    }
+                    /* Acks are ignored */
+                    break;
+                case 1:
+                    if (c == '#') {
+                        state = 2;
+                    } else {
+                        if (packetLen == packet.length) {
+                            packet = Arrays.copyOf(packet, packetLen * 2);
+                        }
+                        packet[packetLen++] = (byte) c;
+                        checksum += c;
+                    }
+                    break;
+                case 2:
+                    receivedChecksum = Character.digit(c, 16) << 4;
+                    state = 3;
+                    break;
+                default:
+                    receivedChecksum += Character.digit(c, 16);
+                    state = 0;
+                    if (noAckMode) {
+                        handlePacket();
+                    } else if (receivedChecksum == (checksum & 0xff)) {
+                        send('+');
+                        handlePacket();
+                    } else {
+                        send('-');
+                    }
+                }
+            }
+            input.clear();
+        }
+
+        void flush() {
+            try {
+                if (output.position() > 0) {
+                    output.flip();
+                    channel.write(output);
+                    output.compact();
+                }
+                if (output.position() > 0) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                } else if (isClosing) {
+                    close();
+                } else {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void close() {
+            if (!connections.remove(this)) {
+                return;
+            }
+            System.out.println("GDBServer: connection closed");
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Ignore close errors
+            }
+            if (connections.isEmpty()) {
+                for (Integer addr : breakpoints.toArray(new Integer[breakpoints.size()])) {
+                    removeBreakpoint(addr);
+                }
+            }
+        }
+
+        private void ensureOutput(int size) {
+            if (output.remaining() < size) {
+                ByteBuffer b = ByteBuffer.allocate(Math.max(output.capacity() * 2, output.position() + size));
+                output.flip();
+                b.put(output);
+                output = b;
+            }
+        }
+
+        private void send(char c) {
+            ensureOutput(1);
+            output.put((byte) c);
+        }
+
+        void sendResponse(String resp) {
+            ensureOutput(resp.length() + 4);
+            int cs = 0;
+            output.put((byte) '$');
+            for (int i = 0, n = resp.length(); i < n; i++) {
+                char c = resp.charAt(i);
+                output.put((byte) c);
+                cs += c;
+            }
+            output.put((byte) '#');
+            output.put(HEX[(cs >> 4) & 0xf]);
+            output.put(HEX[cs & 0xf]);
+            if (DEBUG) {
+                System.out.println("GDBServer: response: " + resp);
+            }
+        }
+
+        void sendStop(int signal, Target target) {
+            sendResponse("T" + Utils.hex8(signal) + (target != null ? "thread:" + Integer.toHexString(target.id) + ";" : ""));
+        }
+
+        private Target getCurrent() {
+            if (current == null && !targets.isEmpty()) {
+                current = targets.get(0);
+            }
+            return current;
+        }
+
+        private String getCommand(int end) {
+            StringBuilder sb = new StringBuilder(end);
+            for (int i = 0; i < end; i++) {
+                sb.append((char) (packet[i] & 0xff));
+            }
+            return sb.toString();
+        }
+
+        private int indexOf(char c, int start) {
+            for (int i = start; i < packetLen; i++) {
+                if (packet[i] == c) {
+                    return i;
+                }
+            }
+            return packetLen;
+        }
+
+        private int parseHex(int start, int end) {
+            int value = 0;
+            for (int i = start; i < end; i++) {
+                value = (value << 4) + Character.digit(packet[i], 16);
+            }
+            return value;
+        }
+
+        /* Thread ids are hex, -1 means all threads and 0 any thread */
+        private int parseThreadId(String id) {
+            return "-1".equals(id) ? -1 : Integer.parseInt(id, 16);
+        }
+
+        private void handlePacket() throws EmulationException {
+            if (DEBUG) {
+                System.out.println("GDBServer: cmd: " + getCommand(packetLen));
+            }
+            if (packetLen == 0) {
+                sendResponse("");
+                return;
+            }
+            Target target = getCurrent();
+            char c = (char) packet[0];
+            switch (c) {
+            case 'H': {
+                int id = parseThreadId(getCommand(packetLen).substring(2));
+                Target t = id > 0 ? getTarget(id) : null;
+                if (id > 0 && t == null) {
+                    sendResponse("E01");
+                } else {
+                    if (packet[1] == 'g') {
+                        if (t != null) {
+                            current = t;
+                        }
+                    } else {
+                        stepTarget = t;
+                    }
+                    sendResponse(OK);
+                }
+                break;
+            }
+            case 'T':
+                sendResponse(getTarget(parseThreadId(getCommand(packetLen).substring(1))) != null ? OK : "E01");
+                break;
+            case 'q':
+                handleQuery(getCommand(packetLen));
+                break;
+            case 'Q':
+                if ("QStartNoAckMode".equals(getCommand(packetLen))) {
+                    sendResponse(OK);
+                    noAckMode = true;
+                } else {
+                    sendResponse("");
+                }
+                break;
+            case 'v':
+                handleV(getCommand(packetLen));
+                break;
+            case '?':
+                sendStop(5, target);
+                break;
+            case 'g':
+                if (target == null) {
+                    sendResponse("E01");
+                } else {
+                    StringBuilder regs = new StringBuilder(64);
+                    for (int i = 0; i < 16; i++) {
+                        regs.append(Utils.hex8(target.cpu.reg[i] & 0xff)).append(Utils.hex8(target.cpu.reg[i] >> 8));
+                    }
+                    sendResponse(regs.toString());
+                }
+                break;
+            case 'D':
+                sendResponse(OK);
+                isClosing = true;
+                break;
+            case 'k': // kill
+                sendResponse(OK);
+                break;
+            case 'm':
+            case 'M':
+            case 'X':
+                handleMemory(c, target);
+                break;
+            case 'Z':
+            case 'z':
+                if (packet[1] != '0' && packet[1] != '1') {
+                    /* Only software and hardware breakpoints */
+                    sendResponse("");
+                } else {
+                    int comma = indexOf(',', 2);
+                    int addr = parseHex(comma + 1, indexOf(',', comma + 1));
+                    if (c == 'Z') {
+                        addBreakpoint(addr);
+                    } else {
+                        removeBreakpoint(addr);
+                    }
+                    sendResponse(OK);
+                }
+                break;
+            case 's':
+                step(stepTarget != null ? stepTarget : target);
+                break;
+            case 'c':
+                resume(null);
+                break;
+            default:
+                if (DEBUG) System.out.println("GDBServer: command unknown");
+                sendResponse("");
+            }
+        }
+
+        private void handleQuery(String cmd) {
+            int colon = cmd.indexOf(':');
+            String query = colon > 0 ? cmd.substring(0, colon) : cmd;
+            Target target = getCurrent();
+            if ("qC".equals(query)) {
+                sendResponse(target != null ? "QC" + Integer.toHexString(target.id) : "");
+            } else if ("qSupported".equals(query)) {
+                sendResponse("PacketSize=" + Integer.toHexString(PACKET_SIZE) + ";QStartNoAckMode+");
+            } else if ("qAttached".equals(query)) {
+                sendResponse("1");
+            } else if ("qOffsets".equals(query)) {
+                sendResponse("Text=0;Data=0;Bss=0");
+            } else if ("qfThreadInfo".equals(query)) {
+                StringBuilder sb = new StringBuilder("m");
+                for (Target t : targets) {
+                    if (sb.length() > 1) {
+                        sb.append(',');
+                    }
+                    sb.append(Integer.toHexString(t.id));
+                }
+                sendResponse(sb.length() > 1 ? sb.toString() : "l");
+            } else if ("qsThreadInfo".equals(query)) {
+                sendResponse("l");
+            } else if (cmd.startsWith("qThreadExtraInfo,")) {
+                Target t = getTarget(parseThreadId(cmd.substring(17)));
+                if (t == null) {
+                    sendResponse("E01");
+                } else {
+                    String info = t.name + (t.isRunning() ? " (running)" : "");
+                    StringBuilder sb = new StringBuilder();
+                    for (int i = 0; i < info.length(); i++) {
+                        sb.append(Utils.hex8(info.charAt(i)));
+                    }
+                    sendResponse(sb.toString());
+                }
+            } else if ("qSymbol".equals(query)) {
+                sendResponse(OK);
+            } else {
+                if (DEBUG) System.out.println("GDBServer: query unknown");
+                sendResponse("");
+            }
+        }
+
+        private void handleV(String cmd) throws EmulationException {
+            if ("vCont?".equals(cmd)) {
+                sendResponse("vCont;c;C;s;S");
+            } else if (cmd.startsWith("vCont;")) {
+                Target step = null;
+                ArrayList<Target> resume = new ArrayList<Target>();
+                boolean resumeAll = false;
+                for (String action : cmd.substring(6).split(";")) {
+                    if (action.length() == 0) {
+                        continue;
+                    }
+                    char type = action.charAt(0);
+                    int colon = action.indexOf(':');
+                    int id = colon > 0 ? parseThreadId(action.substring(colon + 1)) : -1;
+                    Target t = id > 0 ? getTarget(id) : null;
+                    if (type == 's' || type == 'S') {
+                        if (step == null) {
+                            step = t != null ? t : getCurrent();
+                        }
+                    } else if (type == 'c' || type == 'C') {
+                        if (t != null) {
+                            resume.add(t);
+                        } else {
+                            resumeAll = true;
+                        }
+                    }
+                }
+                if (step != null) {
+                    /* Only the stepped thread is moved when stepping */
+                    step(step);
+                } else {
+                    resume(resumeAll ? null : resume);
+                }
+            } else {
+                sendResponse("");
+            }
+        }
+
+        private void handleMemory(char c, Target target) {
+            int comma = indexOf(',', 1);
+            int colon = indexOf(':', comma);
+            int addr = parseHex(1, comma);
+            int len = parseHex(comma + 1, colon);
+            if (target == null || addr < 0 || len < 0 || addr + len > target.cpu.MAX_MEM) {
+                sendResponse("E01");
+            } else if (c == 'm') {
+                int[] memory = target.cpu.memory;
+                ensureOutput(len * 2 + 4);
+                int cs = 0;
+                output.put((byte) '$');
+                for (int i = 0; i < len; i++) {
+                    int b = memory[addr + i];
+                    byte h = HEX[(b >> 4) & 0xf];
+                    byte l = HEX[b & 0xf];
+                    output.put(h);
+                    output.put(l);
+                    cs += h + l;
+                }
+                output.put((byte) '#');
+                output.put(HEX[(cs >> 4) & 0xf]);
+                output.put(HEX[cs & 0xf]);
+            } else if (c == 'M') {
+                int[] memory = target.cpu.memory;
+                for (int i = 0, pos = colon + 1; i < len && pos + 1 < packetLen; i++, pos += 2) {
+                    memory[addr++] = parseHex(pos, pos + 2);
+                }
+                sendResponse(OK);
+            } else {
+                /* Binary data with '}' as escape character */
+                int[] memory = target.cpu.memory;
+                for (int i = 0, pos = colon + 1; i < len && pos < packetLen; i++) {
+                    int b = packet[pos++] & 0xff;
+                    if (b == '}' && pos < packetLen) {
+                        b = (packet[pos++] & 0xff) ^ 0x20;
+                    }
+                    memory[addr++] = b;
+                }
+                sendResponse(OK);
+            }
+        }
+
+        private void step(Target target) throws EmulationException {
+            if (target != null) {
+                pendingStops.remove(target);
+                target.step();
+                current = target;
+            }
+            sendStop(5, target);
+        }
+
+        /* Returns the next queued stop of a target that is still stopped */
+        private Target pollPendingStop() {
+            Target t;
+            while ((t = pendingStops.poll()) != null) {
+                if (targets.contains(t) && !t.isResumed && !t.isRunning()) {
+                    return t;
+                }
+            }
+            return null;
+        }
+
+        /* Resumes the targets, or all targets if null, until one of them stops */
+        private void resume(ArrayList<Target> list) throws EmulationException {
+            Target pending = pollPendingStop();
+            boolean isResumed = false;
+            for (Target t : list == null ? targets : list) {
+                /* Targets with queued stops stay at their breakpoints */
+                if (t != pending && !pendingStops.contains(t)) {
+                    t.resume();
+                    isResumed = true;
+                }
+            }
+            if (pending != null) {
+                current = pending;
+                sendStop(5, pending);
+            } else if (isResumed) {
+                isWaiting = true;
+            } else {
+                sendStop(5, getCurrent());
+            }
+        }
+
+        private void interrupt() {
+            if (!isWaiting) {
+                return;
+            }
+            isWaiting = false;
+            final ArrayList<Target> stopped = new ArrayList<Target>();
+            for (Target t : targets) {
+                if (t.isResumed) {
+                    t.stop();
+                    stopped.add(t);
+                }
+            }
+            if (stopped.isEmpty()) {
+                sendStop(2, getCurrent());
+                return;
+            }
+            /* Wait for the CPUs to stop without blocking the other clients */
+            Thread waiter = new Thread(new Runnable() {
+                public void run() {
+                    for (Target t : stopped) {
+                        t.waitForStop();
+                    }
+                    invoke(new Runnable() {
+                        public void run() {
+                            if (connections.contains(Connection.this)) {
+                                sendStop(2, getCurrent());
+                            }
+                        }
+                    });
+                }
+            }, "GDBServer stop");
+            waiter.setDaemon(true);
+            waiter.start();
+        }
+    }
+
+}
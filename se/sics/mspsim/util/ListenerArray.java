@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2026, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ * This file is part of MSPSim.
+ *
+ * -----------------------------------------------------------------
+ * ListenerArray
+ *
+ * Created : 19 oct 2026
+ */
+
+package se.sics.mspsim.util;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Copy-on-write array of listeners that can be updated from any thread
+ * without locking.
+ *
+ * Updates replace the whole array using compare-and-set and the new array
+ * is then handed to publish(), typically to be stored in a plain field of
+ * the owner. The dispatching thread only reads that field, so dispatch
+ * costs one field read and a null check when there are no listeners. An
+ * array is never modified after it has been published and null is
+ * published when the last listener is removed.
+ */
+public class ListenerArray<T> {
+
+  private final Class<T> type;
+  private final AtomicReference<T[]> listeners = new AtomicReference<T[]>();
+
+  public ListenerArray(Class<T> type) {
+    this.type = type;
+  }
+
+  /* Override to store the listeners where the dispatching thread reads them */
+  protected void publish(T[] listeners) {
+  }
+
+  public T[] get() {
+    return listeners.get();
+  }
+
+  public boolean isEmpty() {
+    return listeners.get() == null;
+  }
+
+  public void add(T listener) {
+    T[] old, tmp;
+    do {
+      old = listeners.get();
+      tmp = ArrayUtils.add(type, old, listener);
+    } while (!listeners.compareAndSet(old, tmp));
+    update();
+  }
+
+  public boolean remove(T listener) {
+    T[] old, tmp;
+    do {
+      old = listeners.get();
+      tmp = ArrayUtils.remove(old, listener);
+      if (tmp == old) {
+        return false;
+      }
+    } while (!listeners.compareAndSet(old, tmp));
+    update();
+    return true;
+  }
+
+  public void clear() {
+    listeners.set(null);
+    update();
+  }
+
+  private void update() {
+    T[] current;
+    // Concurrent updates might publish in any order. Repeat until the
+    // latest array is known to have been published last.
+    do {
+      current = listeners.get();
+      publish(current);
+    } while (listeners.get() != current);
+  }
+
+}
@@ -0,0 +1,245 @@
+/**
+ * Copyright (c) 2026, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ * This file is part of MSPSim.
+ *
+ * -----------------------------------------------------------------
+ * LogRingBuffer
+ *
+ * Created : 19 oct 2026
+ */
+
+package se.sics.mspsim.util;
+import java.util.IllegalFormatException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import se.sics.mspsim.core.Loggable;
+
+/**
+ * Preallocated ring buffer of log records (cycle, source, format and
+ * arguments) drained by a background thread.
+ *
+ * Producers claim a slot with compare-and-set and never block: when the
+ * buffer is full the record is dropped and counted. Messages given as a
+ * format are only formatted by the drain thread. One drain thread is
+ * shared by all ring buffers so large simulations do not get one thread
+ * per node.
+ */
+public class LogRingBuffer {
+
+  public interface Sink {
+    public void logRecord(long cycles, Loggable source, String message);
+  }
+
+  private static final CopyOnWriteArrayList<LogRingBuffer> buffers =
+      new CopyOnWriteArrayList<LogRingBuffer>();
+  private static volatile Thread drainThread;
+  /* Set while the drain thread is parked waiting for new records */
+  private static final AtomicBoolean drainIdle = new AtomicBoolean();
+
+  private final Sink sink;
+  private final int mask;
+
+  private final long[] cycles;
+  private final Loggable[] sources;
+  private final String[] messages;
+  private final boolean[] formatted;
+  private final long[] args;
+  /* Holds sequence + 1 for slots that have been filled */
+  private final AtomicLongArray published;
+
+  private final AtomicLong next = new AtomicLong();
+  private volatile long consumed;
+  private final AtomicLong dropped = new AtomicLong();
+
+  public LogRingBuffer(int capacity, Sink sink) {
+    int size = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+    this.sink = sink;
+    this.mask = size - 1;
+    this.cycles = new long[size];
+    this.sources = new Loggable[size];
+    this.messages = new String[size];
+    this.formatted = new boolean[size];
+    this.args = new long[size * 3];
+    this.published = new AtomicLongArray(size);
+  }
+
+  public int getCapacity() {
+    return mask + 1;
+  }
+
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  public int size() {
+    return (int) (next.get() - consumed);
+  }
+
+  public void start() {
+    synchronized (buffers) {
+      if (!buffers.contains(this)) {
+        buffers.add(this);
+      }
+      if (drainThread == null) {
+        drainThread = new Thread(new Runnable() {
+          public void run() {
+            drainLoop();
+          }
+        }, "log drain");
+        drainThread.setDaemon(true);
+        drainThread.start();
+      }
+    }
+  }
+
+  /* Stops draining this buffer after delivering the pending records */
+  public void stop() {
+    flush();
+    buffers.remove(this);
+  }
+
+  public boolean put(long cycles, Loggable source, String message) {
+    return put(cycles, source, message, false, 0, 0, 0);
+  }
+
+  public boolean put(long cycles, Loggable source, String format,
+      long arg0, long arg1, long arg2) {
+    return put(cycles, source, format, true, arg0, arg1, arg2);
+  }
+
+  private boolean put(long c, Loggable source, String message, boolean isFormat,
+      long arg0, long arg1, long arg2) {
+    long seq;
+    do {
+      seq = next.get();
+      if (seq - consumed > mask) {
+        dropped.incrementAndGet();
+        return false;
+      }
+    } while (!next.compareAndSet(seq, seq + 1));
+
+    int i = (int) seq & mask;
+    cycles[i] = c;
+    sources[i] = source;
+    messages[i] = message;
+    formatted[i] = isFormat;
+    args[i * 3] = arg0;
+    args[i * 3 + 1] = arg1;
+    args[i * 3 + 2] = arg2;
+    published.set(i, seq + 1);
+    if (drainIdle.get() && drainIdle.compareAndSet(true, false)) {
+      LockSupport.unpark(drainThread);
+    }
+    return true;
+  }
+
+  /* Waits until all records added before the call have been delivered */
+  public void flush() {
+    long target = next.get();
+    Thread t = drainThread;
+    if (t == null || t == Thread.currentThread() || !buffers.contains(this)) {
+      drain();
+      return;
+    }
+    while (consumed < target && t.isAlive()) {
+      LockSupport.unpark(t);
+      LockSupport.parkNanos(100000);
+    }
+  }
+
+  private synchronized int drain() {
+    int count = 0;
+    long seq = consumed;
+    int i = (int) seq & mask;
+    while (published.get(i) == seq + 1) {
+      long c = cycles[i];
+      Loggable source = sources[i];
+      String message = messages[i];
+      boolean isFormat = formatted[i];
+      long arg0 = args[i * 3];
+      long arg1 = args[i * 3 + 1];
+      long arg2 = args[i * 3 + 2];
+      sources[i] = null;
+      messages[i] = null;
+      // Hand the slot back to the producers before the slow part
+      consumed = ++seq;
+
+      if (isFormat) {
+        message = format(message, arg0, arg1, arg2);
+      }
+      try {
+        sink.logRecord(c, source, message);
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+      count++;
+      i = (int) seq & mask;
+    }
+    return count;
+  }
+
+  private static String format(String format, long arg0, long arg1, long arg2) {
+    try {
+      return String.format(format, arg0, arg1, arg2);
+    } catch (IllegalFormatException e) {
+      return format + " [" + arg0 + ", " + arg1 + ", " + arg2 + ']';
+    }
+  }
+
+  private boolean hasPending() {
+    long seq = consumed;
+    return published.get((int) seq & mask) == seq + 1;
+  }
+
+  private static void drainLoop() {
+    while (true) {
+      int count = 0;
+      for (LogRingBuffer buffer : buffers) {
+        count += buffer.drain();
+      }
+      if (count == 0) {
+        /* Producers unpark the thread when they see the idle flag. Check
+         * again after setting it to not miss a record added meanwhile. */
+        drainIdle.set(true);
+        boolean pending = false;
+        for (LogRingBuffer buffer : buffers) {
+          pending |= buffer.hasPending();
+        }
+        if (!pending) {
+          LockSupport.park();
+        }
+        drainIdle.set(false);
+      }
+    }
+  }
+
+}
@@ -48,7 +48,8 @@ public class MapEntry {
   private final TYPE type;
   private final int address;
   private final String name;
-  private final String file;
+  private String file;
+  private ELF elf;
   private final boolean isLocal;
   private int size;
   private int dataAddr;
@@ -65,6 +66,12 @@ public class MapEntry {
     this.size = size;
   }
 
+  /* The file is resolved from the ELF debug information on first use */
+  MapEntry(TYPE type, int address, int size, String name, String file, boolean isLocal, ELF elf) {
+    this(type, address, size, name, file, isLocal);
+    this.elf = elf;
+  }
+
   void setData(int dataAddr, int dataSize) {
     this.dataAddr = dataAddr;
     this.dataSize = dataSize;
@@ -112,6 +119,14 @@ public class MapEntry {
   }
 
   public String getFile() {
+    ELF elf = this.elf;
+    if (elf != null) {
+      String f = elf.lookupFile(address);
+      if (f != null) {
+        file = f;
+      }
+      this.elf = null;
+    }
     return file;
   }
   
@@ -122,6 +137,7 @@ public class MapEntry {
   public String getInfo() {
     StringBuilder sb = new StringBuilder();
     sb.append(name);
+    String file = getFile();
     if (file != null) {
       sb.append(" (");
       if (isLocal) sb.append("local in ");
@@ -135,6 +151,7 @@ public class MapEntry {
   public String toString() {
     StringBuilder sb = new StringBuilder();
     sb.append('$').append(Utils.hex(address, 4)).append(' ').append(type).append(' ').append(name);
+    String file = getFile();
     if (file != null) {
       sb.append(" (");
       if (isLocal) sb.append("local in ");
@@ -55,6 +55,9 @@ import java.util.regex.Pattern;
  * WS Adress WS function_name
  * WS Adress WS function_name
  * ...
+ *
+ * A table is filled in when the firmware is loaded and is not modified
+ * after that, so it can be shared by several nodes without locking.
  */
 public class MapTable {
 
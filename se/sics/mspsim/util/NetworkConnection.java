@@ -36,17 +36,29 @@
  */
 package se.sics.mspsim.util;
 
-import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.UnknownHostException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import se.sics.mspsim.chip.PacketListener;
 
 /**
+ * Connects the radios of nodes in different simulators. The first node
+ * sets up a server and the following nodes connect to it. The server
+ * forwards every packet to all other connected nodes.
+ *
+ * Packets are sent as is, framed by their leading length byte. All
+ * connections are handled by a single thread using non-blocking channels
+ * and pooled direct buffers.
+ *
  * @author joakim
  *
  */
@@ -55,19 +67,33 @@ public class NetworkConnection implements Runnable {
   private final static boolean DEBUG = false;
   private final static int DEFAULT_PORT = 4711;
 
-  private ServerSocket serverSocket = null;
-  private SendThread sendThread = null;
-  private ConnectionThread[] connections = null;
+  private final static int BUFFER_SIZE = 4096;
+  /* Max buffers queued per connection before packets are dropped */
+  private final static int MAX_QUEUED_BUFFERS = 64;
+
+  private Selector selector;
+  private ServerSocketChannel serverChannel = null;
+  private final ArrayList<Connection> connections = new ArrayList<Connection>();
+  private final ConcurrentLinkedQueue<byte[]> sendQueue = new ConcurrentLinkedQueue<byte[]>();
+  private final ArrayDeque<ByteBuffer> bufferPool = new ArrayDeque<ByteBuffer>();
   private PacketListener packetListener;
 
   public NetworkConnection() {
+    try {
+      selector = Selector.open();
+    } catch (IOException e) {
+      e.printStackTrace();
+      return;
+    }
     if (connect(DEFAULT_PORT)) {
       System.out.println("NetworkConnection: Connected to network...");
     } else {
       setupServer(DEFAULT_PORT);
       System.out.println("NetworkConnection: Setup network server...");
     }
-    sendThread = new SendThread();
+    Thread thread = new Thread(this, "NetworkConnection");
+    thread.setDaemon(true);
+    thread.start();
   }
   
   public synchronized void addPacketListener(PacketListener listener) {
@@ -80,30 +106,86 @@ public class NetworkConnection implements Runnable {
 
   private void setupServer(int port) {
     try {
-      serverSocket = new ServerSocket(port);
+      serverChannel = ServerSocketChannel.open();
+      serverChannel.socket().setReuseAddress(true);
+      serverChannel.socket().bind(new InetSocketAddress(port));
+      serverChannel.configureBlocking(false);
+      serverChannel.register(selector, SelectionKey.OP_ACCEPT);
       if (DEBUG) System.out.println("NetworkConnection: setup of server socket finished... ");
-      new Thread(this).start();
     } catch (IOException e) {
       e.printStackTrace();
     }
   }
 
+  private boolean connect(int port) {
+    try {
+      SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", port));
+      addConnection(channel);
+    } catch (IOException e) {
+      return false;
+    }
+    return true;
+  }
+
+  private void addConnection(SocketChannel channel) throws IOException {
+    channel.configureBlocking(false);
+    channel.socket().setTcpNoDelay(true);
+    Connection c = new Connection(channel);
+    c.key = channel.register(selector, SelectionKey.OP_READ, c);
+    connections.add(c);
+  }
+
   public void run() {
     System.out.println("NetworkConnection: Accepting new connections...");
     while (true) {
       try {
-        Socket s = serverSocket.accept();
-        if (DEBUG) System.out.println("NetworkConnection: New connection from " + s.getRemoteSocketAddress());
-        connections = ArrayUtils.add(ConnectionThread.class, connections, new ConnectionThread(s));
+        selector.select();
+
+        byte[] data;
+        while ((data = sendQueue.poll()) != null) {
+          send(data, null);
+        }
+
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            SocketChannel channel = serverChannel.accept();
+            if (channel != null) {
+              if (DEBUG) System.out.println("NetworkConnection: New connection from " + channel.socket().getRemoteSocketAddress());
+              addConnection(channel);
+            }
+            continue;
+          }
+          Connection c = (Connection) key.attachment();
+          if (key.isReadable()) {
+            c.read();
+          }
+          if (key.isValid() && key.isWritable()) {
+            c.flush();
+          }
+        }
+
+        /* Backwards as connections might be closed when flushed */
+        for (int i = connections.size() - 1; i >= 0; i--) {
+          Connection c = connections.get(i);
+          if (c.hasPendingOutput) {
+            c.flush();
+          }
+        }
       } catch (IOException e) {
         e.printStackTrace();
       }
     }
   }
-  
+
   // Data incoming from the network!!! - forward to radio and if server, to
   // all other nodes
-  private void dataReceived(byte[] data, ConnectionThread source) {
+  private void dataReceived(byte[] data, Connection source) {
     PacketListener listener = this.packetListener;
     if (listener != null) {
       // Send this data to the transmitter in this node!
@@ -112,23 +194,44 @@ public class NetworkConnection implements Runnable {
     }
 
     // And if this is the server, propagate to the others
-    if (serverSocket != null) {
-      dataSent(data, source);
+    if (serverChannel != null) {
+      send(data, source);
     }
   }
 
-  // Data was sent from the radio in the node (or other node) and should
-  // be sent out to other nodes!!!
+  // Data was sent from the radio in the node and should be sent out to
+  // other nodes!!!
   public void dataSent(byte[] receivedData) {
-    dataSent(receivedData, null);
+    if (selector != null) {
+      sendQueue.add(receivedData);
+      selector.wakeup();
+    }
+  }
+
+  // Queue the data on all connections except the one it came from
+  private void send(byte[] data, Connection source) {
+    for (int i = 0, n = connections.size(); i < n; i++) {
+      Connection c = connections.get(i);
+      if (c != source) {
+        c.queue(data);
+      }
+    }
+    if (DEBUG) {
+      printPacket("sent", data);
+    }
   }
 
-  // Data was sent either from radio, or came from another "radio" -
-  // and if so it should be propagated to all others.
-  public void dataSent(byte[] receivedData, ConnectionThread source) {
-    if (connections != null && sendThread != null) {
-      sendThread.send(receivedData, source);
+  private ByteBuffer allocateBuffer() {
+    ByteBuffer buffer = bufferPool.poll();
+    if (buffer == null) {
+      buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
     }
+    return buffer;
+  }
+
+  private void releaseBuffer(ByteBuffer buffer) {
+    buffer.clear();
+    bufferPool.add(buffer);
   }
 
   private void printPacket(String prefix, byte[] data) {
@@ -138,133 +241,100 @@ public class NetworkConnection implements Runnable {
     }
     System.out.println();
   }
-  
-  private boolean connect(int port) {
-    try {
-      Socket socket = new Socket("127.0.0.1", port);
-      connections = ArrayUtils.add(ConnectionThread.class, connections, new ConnectionThread(socket));
-    } catch (UnknownHostException e) {
-      return false;
-    } catch (IOException e) {
-      return false;
-    }    
-    return true;
-  }
 
-  private static class SendEvent {
-    public final byte[] data;
-    public final ConnectionThread source;
-    public SendEvent(byte[] data, ConnectionThread source) {
-      this.data = data;
-      this.source = source;
-    }
-  }
-
-  class SendThread implements Runnable {
+  class Connection {
+    final SocketChannel channel;
+    SelectionKey key;
+    final ByteBuffer input;
+    /* Buffers in fill mode - only the first may be partly written */
+    final ArrayDeque<ByteBuffer> output = new ArrayDeque<ByteBuffer>();
+    boolean hasPendingOutput;
 
-    private ArrayList<SendEvent> queue = new ArrayList<SendEvent>();
-
-    public SendThread() {
-      new Thread(this).start();
+    Connection(SocketChannel channel) {
+      this.channel = channel;
+      this.input = allocateBuffer();
     }
 
-    public synchronized void send(byte[] receivedData, ConnectionThread source) {
-      queue.add(new SendEvent(receivedData, source));
-      notifyAll();
-    }
-
-    public synchronized SendEvent getNext() throws InterruptedException {
-      while (queue.isEmpty()) {
-        wait();
+    void close() {
+      key.cancel();
+      try {
+        channel.close();
+      } catch (IOException e) {
+        e.printStackTrace();
       }
-      return queue.remove(0);
+      connections.remove(this);
+      releaseBuffer(input);
+      while (!output.isEmpty()) {
+        releaseBuffer(output.remove());
+      }
+      hasPendingOutput = false;
     }
 
-    private void sendPacket(SendEvent event) {
-      ConnectionThread[] cthr = connections;
-      if (cthr != null) {
-        for (int i = 0; i < cthr.length; i++) {
-          if (cthr[i].isClosed()) {
-            connections = ArrayUtils.remove(connections, cthr[i]);
-            // Do not write back to the source
-          } else if (cthr[i] != event.source){
-            try {
-              cthr[i].output.write(event.data, 0, event.data.length);
-              cthr[i].output.flush();
-            } catch (IOException e) {
-              e.printStackTrace();
-              cthr[i].close();
-            }
-          }
-        }
-        if (DEBUG) {
-//              System.out.println("NetworkConnection: wrote " + receivedData.length + " bytes");
-          printPacket("sent", event.data);
+    void queue(byte[] data) {
+      ByteBuffer buffer = output.peekLast();
+      if (buffer == null || buffer.remaining() < data.length) {
+        if (output.size() >= MAX_QUEUED_BUFFERS) {
+          /* The other side is not reading - drop the packet */
+          if (DEBUG) printPacket("dropped", data);
+          return;
         }
+        buffer = allocateBuffer();
+        output.add(buffer);
       }
+      buffer.put(data);
+      hasPendingOutput = true;
     }
 
-    public void run() {
+    void flush() {
       try {
-        SendEvent event;
-        do {
-          event = getNext();
-          if (event != null) {
-            sendPacket(event);
+        while (!output.isEmpty()) {
+          ByteBuffer buffer = output.peek();
+          buffer.flip();
+          channel.write(buffer);
+          if (buffer.hasRemaining()) {
+            buffer.compact();
+            break;
           }
-        } while (event != null);
-      } catch (InterruptedException e) {
+          releaseBuffer(output.remove());
+        }
+      } catch (IOException e) {
         e.printStackTrace();
+        close();
+        return;
       }
+      hasPendingOutput = false;
+      key.interestOps(output.isEmpty() ? SelectionKey.OP_READ
+          : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
     }
-  }
 
-  class ConnectionThread implements Runnable {
-    Socket socket;
-    DataInputStream input;
-    OutputStream output;
-    
-    public ConnectionThread(Socket socket) throws IOException {
-      this.socket = socket;
-      input = new DataInputStream(socket.getInputStream());
-      output = socket.getOutputStream();
-      new Thread(this).start();
-    }
-    
-    public void close() {
+    void read() {
       try {
-        input.close();
-        socket.close();
+        if (channel.read(input) < 0) {
+          close();
+          return;
+        }
       } catch (IOException e) {
         e.printStackTrace();
+        close();
+        return;
       }
-      socket = null;
-    }
-    
-    public boolean isClosed() {
-      return socket == null;
-    }
-    
-    public void run() {
-      if (DEBUG) System.out.println("NetworkConnection: Started connection thread...");
-      try {
-        while (socket != null) {
-          int len = input.read();
-          if (len > 0) {
-            byte[] buffer = new byte[len + 1];
-            buffer[0] = (byte) (len & 0xff);
-            input.readFully(buffer, 1, len);
-            if (DEBUG) {
-//              System.out.println("NetworkConnection: Read packet with " + len + " bytes");
-              printPacket("read", buffer);
-            }
-            dataReceived(buffer, this);
+      input.flip();
+      while (input.hasRemaining()) {
+        int len = input.get(input.position()) & 0xff;
+        if (len == 0) {
+          input.get();
+        } else if (input.remaining() > len) {
+          byte[] buffer = new byte[len + 1];
+          input.get(buffer);
+          if (DEBUG) {
+            printPacket("read", buffer);
           }
+          dataReceived(buffer, this);
+        } else {
+          break;
         }
-      } catch (IOException e) {
-        e.printStackTrace();
-        close();
       }
+      input.compact();
     }
   }
 }
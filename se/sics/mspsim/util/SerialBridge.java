@@ -0,0 +1,314 @@
+/**
+ * Copyright (c) 2026, Swedish Institute of Computer Science.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the Institute nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE INSTITUTE AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE INSTITUTE OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ * This file is part of MSPSim.
+ *
+ * -----------------------------------------------------------------
+ * SerialBridge
+ *
+ * Created : 19 oct 2026
+ */
+
+package se.sics.mspsim.util;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import se.sics.mspsim.core.USARTSource;
+import se.sics.mspsim.core.USARTStream;
+
+/**
+ * Exposes UARTs of simulated nodes as TCP sockets on the loopback
+ * interface so that host tools such as tunslip or a serial terminal can
+ * be attached without the GUI. All UARTs in the JVM are served by one
+ * selector thread with bounded buffers and one client per port.
+ *
+ * Node output is discarded while no client is connected. When a client
+ * is connected but does not read, the UART transmitter is held by the
+ * stream flow control.
+ */
+public class SerialBridge implements Runnable {
+
+  private static final boolean DEBUG = false;
+  private static final int BUFFER_SIZE = 4096;
+
+  private static SerialBridge defaultBridge;
+
+  private final Selector selector;
+  private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+  private final ConcurrentLinkedQueue<Port> readyPorts = new ConcurrentLinkedQueue<Port>();
+  private final ArrayList<Port> ports = new ArrayList<Port>();
+
+  public static synchronized SerialBridge getDefault() throws IOException {
+    if (defaultBridge == null) {
+      defaultBridge = new SerialBridge();
+    }
+    return defaultBridge;
+  }
+
+  public SerialBridge() throws IOException {
+    selector = Selector.open();
+    Thread thread = new Thread(this, "SerialBridge");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public class Port implements USARTStream.StreamListener {
+
+    private final String name;
+    private final USARTStream stream;
+    private final ServerSocketChannel server;
+    private SocketChannel client;
+    private SelectionKey clientKey;
+
+    /* Socket to node data in fill mode, node to socket data in drain mode */
+    private final ByteBuffer input = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer output = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final AtomicBoolean isReady = new AtomicBoolean();
+
+    private Port(String name, USARTStream stream, ServerSocketChannel server) {
+      this.name = name;
+      this.stream = stream;
+      this.server = server;
+      output.limit(0);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getPort() {
+      return server.socket().getLocalPort();
+    }
+
+    public synchronized boolean isConnected() {
+      return client != null;
+    }
+
+    public void close() {
+      invoke(new Runnable() {
+        public void run() {
+          closePort(Port.this);
+        }
+      });
+    }
+
+    public void streamReady(USARTStream stream) {
+      if (isReady.compareAndSet(false, true)) {
+        readyPorts.add(this);
+        selector.wakeup();
+      }
+    }
+
+    private void accept() throws IOException {
+      SocketChannel channel = server.accept();
+      if (channel == null) {
+        return;
+      }
+      if (client != null) {
+        /* Only one client per port */
+        channel.close();
+        return;
+      }
+      channel.configureBlocking(false);
+      channel.socket().setTcpNoDelay(true);
+      synchronized (this) {
+        client = channel;
+      }
+      input.clear();
+      output.clear();
+      output.limit(0);
+      clientKey = channel.register(selector, SelectionKey.OP_READ, this);
+      System.out.println("SerialBridge: " + name + " connected to " + channel.socket().getRemoteSocketAddress());
+      transfer();
+    }
+
+    private void disconnect() {
+      if (client != null) {
+        System.out.println("SerialBridge: " + name + " disconnected");
+        clientKey.cancel();
+        try {
+          client.close();
+        } catch (IOException e) {
+          // Ignore close errors
+        }
+        synchronized (this) {
+          client = null;
+        }
+        clientKey = null;
+      }
+      /* The stream only notifies when its output becomes non-empty, so
+       * drain it here or the UART stays held until the next client */
+      discardOutput();
+    }
+
+    private void discardOutput() {
+      output.clear();
+      while (stream.read(output) > 0) {
+        output.clear();
+      }
+      output.limit(0);
+    }
+
+    private void transfer() {
+      if (client == null) {
+        /* Nobody listening - discard the node output */
+        discardOutput();
+        return;
+      }
+      try {
+        if (input.hasRemaining() && client.read(input) < 0) {
+          disconnect();
+          return;
+        }
+        input.flip();
+        stream.write(input);
+        input.compact();
+
+        output.compact();
+        stream.read(output);
+        output.flip();
+        if (output.hasRemaining()) {
+          client.write(output);
+        }
+        if (DEBUG) {
+          System.out.println("SerialBridge: " + name + " pending in: " + input.position()
+              + " out: " + output.remaining());
+        }
+        int ops = 0;
+        if (input.hasRemaining()) {
+          ops |= SelectionKey.OP_READ;
+        }
+        if (output.hasRemaining()) {
+          ops |= SelectionKey.OP_WRITE;
+        }
+        clientKey.interestOps(ops);
+      } catch (IOException e) {
+        disconnect();
+      }
+    }
+  }
+
+  /**
+   * Opens a TCP port on the loopback interface for the specified UART. Use
+   * port 0 to bind to any free port.
+   */
+  public Port open(String name, USARTSource source, int port) throws IOException {
+    ServerSocketChannel server = ServerSocketChannel.open();
+    try {
+      server.socket().setReuseAddress(true);
+      server.socket().bind(new InetSocketAddress(InetAddress.getByName(null), port));
+      server.configureBlocking(false);
+    } catch (IOException e) {
+      server.close();
+      throw e;
+    }
+    final Port p = new Port(name, source.openStream(), server);
+    invoke(new Runnable() {
+      public void run() {
+        try {
+          p.server.register(selector, SelectionKey.OP_ACCEPT, p);
+          ports.add(p);
+          p.stream.setStreamListener(p);
+          p.transfer();
+        } catch (ClosedChannelException e) {
+          // Closed before registration
+        }
+      }
+    });
+    return p;
+  }
+
+  private void closePort(Port p) {
+    if (ports.remove(p)) {
+      p.stream.setStreamListener(null);
+      p.disconnect();
+    }
+    /* Detach from the UART so it does not hold its transmitter when the
+     * output is no longer read */
+    p.stream.close();
+    try {
+      p.server.close();
+    } catch (IOException e) {
+      // Ignore close errors
+    }
+  }
+
+  private void invoke(Runnable task) {
+    tasks.add(task);
+    selector.wakeup();
+  }
+
+  public void run() {
+    while (true) {
+      try {
+        selector.select();
+
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+          task.run();
+        }
+
+        Port p;
+        while ((p = readyPorts.poll()) != null) {
+          p.isReady.set(false);
+          if (ports.contains(p)) {
+            p.transfer();
+          }
+        }
+
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          p = (Port) key.attachment();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            p.accept();
+          } else {
+            p.transfer();
+          }
+        }
+      } catch (IOException e) {
+        System.err.println("SerialBridge: " + e.getMessage());
+      }
+    }
+  }
+
+}
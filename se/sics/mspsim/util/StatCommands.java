@@ -39,6 +39,7 @@
  *           $Rev$
  */
 package se.sics.mspsim.util;
+import java.io.IOException;
 import java.io.PrintStream;
 
 import se.sics.mspsim.cli.BasicAsyncCommand;
@@ -138,6 +139,8 @@ public class StatCommands implements CommandBundle {
         "<frequency> <chip> [chips...]") {
 
       private PrintStream out;
+      private DataFileWriter data;
+      private int[] sourceIds;
       private Object[] sources;
       private double frequency;
       private boolean isRunning = true;
@@ -167,12 +170,27 @@ public class StatCommands implements CommandBundle {
           }
         }
         this.out = context.out;
+        this.data = context.getDataOutput();
+        if (data != null) {
+          sourceIds = new int[sources.length];
+          try {
+            for (int i = 0, n = sources.length; i < n; i++) {
+              sourceIds[i] = data.getSourceId("duty " + context.getArgument(i + 1));
+            }
+          } catch (IOException e) {
+            e.printStackTrace(context.err);
+            return 1;
+          }
+        }
 
         cpu.scheduleTimeEventMillis(new TimeEvent(0) {
 
           @Override
           public void execute(long t) {
-            if (isRunning) {
+            if (isRunning && data != null) {
+              cpu.scheduleTimeEventMillis(this, 1000.0 / frequency);
+              writeData();
+            } else if (isRunning) {
               cpu.scheduleTimeEventMillis(this, 1000.0 / frequency);
               for (int j = 0, n = sources.length; j < n; j++) {
                 Object s = sources[j];
@@ -194,6 +212,27 @@ public class StatCommands implements CommandBundle {
         return 0;
       }
 
+      private void writeData() {
+        try {
+          for (int j = 0, n = sources.length; j < n; j++) {
+            Object s = sources[j];
+            if (s instanceof MultiDataSource) {
+              MultiDataSource ds = (MultiDataSource) s;
+              double[] values = new double[ds.getModeMax() + 1];
+              for (int k = 0; k < values.length; k++) {
+                values[k] = ds.getDoubleValue(k);
+              }
+              data.write(sourceIds[j], cpu.cycles, values);
+            } else {
+              data.write(sourceIds[j], cpu.cycles, ((DataSource) s).getDoubleValue());
+            }
+          }
+        } catch (IOException e) {
+          e.printStackTrace();
+          isRunning = false;
+        }
+      }
+
       public void stopCommand(CommandContext context) {
         isRunning = false;
         context.exit(0);
@@ -0,0 +1,114 @@
+#!/usr/bin/env python3
+"""Reader for binary data files written by the MSPSim "export" command.
+
+Usage as a module:
+
+    import mspsimdata
+    for cycle, source, values in mspsimdata.read("duty.bin"):
+        ...
+    columns = mspsimdata.columns("duty.bin")   # source -> (cycles, values)
+
+Usage from the command line prints the records as text:
+
+    python3 mspsimdata.py duty.bin
+
+See se/sics/mspsim/util/DataFileWriter.java for the file format.
+"""
+import struct
+import sys
+
+MAGIC = b"MSPD"
+VERSION = 1
+SOURCE, LONGS, DOUBLES, TEXT, BYTES = range(5)
+
+_HEADER = struct.Struct(">Hq")
+_BUFFER_SIZE = 1 << 16
+
+
+def _read_exactly(f, size):
+    """Returns the next size bytes or None if the file ends before."""
+    data = f.read(size)
+    return data if len(data) == size else None
+
+
+def read(filename):
+    """Yields (cycle, source, values) for each data record in the file.
+
+    values is a tuple of ints for long records, a tuple of floats for
+    double records, a str for text records and bytes for byte records.
+    The records are read incrementally so files of any size can be read.
+    A last record that is incomplete, as when the file was not closed,
+    is ignored.
+    """
+    with open(filename, "rb", buffering=_BUFFER_SIZE) as f:
+        if f.read(5) != MAGIC + bytes([VERSION]):
+            raise ValueError("not a data file: " + filename)
+        sources = {}
+        while True:
+            rtype = f.read(1)
+            if not rtype:
+                break
+            rtype = rtype[0]
+            if rtype == SOURCE:
+                head = _read_exactly(f, 4)
+                if head is None:
+                    break
+                sid, length = struct.unpack(">HH", head)
+                name = _read_exactly(f, length)
+                if name is None:
+                    break
+                sources[sid] = name.decode("utf-8")
+                continue
+            if rtype > BYTES:
+                raise ValueError("unknown record type %d" % rtype)
+            head = _read_exactly(f, _HEADER.size)
+            if head is None:
+                break
+            sid, cycle = _HEADER.unpack(head)
+            if rtype == LONGS or rtype == DOUBLES:
+                head = _read_exactly(f, 2)
+                if head is None:
+                    break
+                count, = struct.unpack(">H", head)
+                data = _read_exactly(f, count * 8)
+                if data is None:
+                    break
+                fmt = ">%d%s" % (count, "q" if rtype == LONGS else "d")
+                values = struct.unpack(fmt, data)
+            else:
+                head = _read_exactly(f, 4)
+                if head is None:
+                    break
+                length, = struct.unpack(">I", head)
+                values = _read_exactly(f, length)
+                if values is None:
+                    break
+                if rtype == TEXT:
+                    values = values.decode("utf-8")
+            yield cycle, sources.get(sid), values
+
+
+def columns(filename):
+    """Returns a dict mapping each source to a (cycles, values) pair of lists."""
+    result = {}
+    for cycle, source, values in read(filename):
+        cycles, vals = result.setdefault(source, ([], []))
+        cycles.append(cycle)
+        vals.append(values)
+    return result
+
+
+def main():
+    if len(sys.argv) != 2:
+        sys.stderr.write("Usage: mspsimdata.py <file>\n")
+        sys.exit(1)
+    for cycle, source, values in read(sys.argv[1]):
+        if isinstance(values, tuple):
+            values = " ".join(str(v) for v in values)
+        elif isinstance(values, bytes):
+            values = values.hex()
+        print("%d %s %s" % (cycle, source, values))
+
+
+if __name__ == "__main__":
+    main()